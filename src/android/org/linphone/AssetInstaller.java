@@ -0,0 +1,254 @@
+package org.linphone;
+
+/*
+AssetInstaller.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.os.SystemClock;
+
+import org.linphone.mediastream.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies raw resources to the application files, in parallel on background threads.<br />
+ * Files that are overwritten at each start are fingerprinted (application version and install time, resource
+ * and file size), and only copied again when the fingerprint changed. The others are only copied if missing.
+ * Copies go through a temporary file, renamed once complete, so a file is never seen half written.
+ * Started as early as possible, then awaited right before the files are needed.
+ */
+public class AssetInstaller {
+    private static final String PREFERENCES = "asset_installer";
+    private static final int THREADS = 2;
+    private static final int TRANSFER_CHUNK = 64 * 1024;
+
+    private static class Asset {
+        final int mResourceId;
+        final File mTarget;
+        final boolean mOverwrite; // else only copied if missing
+
+        Asset(int resourceId, File target, boolean overwrite) {
+            mResourceId = resourceId;
+            mTarget = target;
+            mOverwrite = overwrite;
+        }
+    }
+
+    private final Context mContext;
+    private final ArrayList<Asset> mAssets = new ArrayList<>();
+    private CountDownLatch mDone;
+    private volatile IOException mFailure;
+
+    public AssetInstaller(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public AssetInstaller add(int resourceId, String target, boolean overwrite) {
+        if (mDone != null) throw new IllegalStateException("Installation already started");
+        mAssets.add(new Asset(resourceId, new File(target), overwrite));
+        return this;
+    }
+
+    /**
+     * Starts copying the assets in the background, if not already started.
+     */
+    public synchronized void start() {
+        if (mDone != null) return;
+        mDone = new CountDownLatch(mAssets.size());
+
+        final long start = SystemClock.elapsedRealtime();
+        final String version = getVersion();
+        final SharedPreferences fingerprints = mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "AssetInstaller-" + mCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        for (final Asset asset : mAssets) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        install(asset, version, fingerprints);
+                    } catch (IOException e) {
+                        Log.e(e, "[Asset Installer] Couldn't copy " + asset.mTarget.getName());
+                        mFailure = e;
+                    } finally {
+                        mDone.countDown();
+                        if (mDone.getCount() == 0) {
+                            Log.i("[Asset Installer] " + mAssets.size() + " assets installed in " + (SystemClock.elapsedRealtime() - start) + " ms");
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Starts the installation if needed, and waits for it to complete.
+     *
+     * @throws IOException if an asset couldn't be copied
+     */
+    public void await() throws IOException {
+        start();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mFailure != null) throw mFailure;
+    }
+
+    private void install(Asset asset, String version, SharedPreferences fingerprints) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        String name = asset.mTarget.getName();
+        if (!asset.mOverwrite) {
+            if (asset.mTarget.exists()) return;
+            long size = copy(mContext.getResources(), asset.mResourceId, asset.mTarget);
+            Log.i("[Asset Installer] " + name + " copied (" + size + " bytes) in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            return;
+        }
+
+        long resourceSize = getResourceSize(mContext.getResources(), asset.mResourceId);
+        String expected = version + ":" + resourceSize;
+        String fingerprint = fingerprints.getString(name, null);
+        if (fingerprint != null && asset.mTarget.exists() && fingerprint.equals(expected + ":" + asset.mTarget.length())) {
+            Log.i("[Asset Installer] " + name + " is up to date, checked in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            return;
+        }
+
+        long size = copy(mContext.getResources(), asset.mResourceId, asset.mTarget);
+        fingerprints.edit().putString(name, expected + ":" + size).apply();
+        Log.i("[Asset Installer] " + name + " copied (" + size + " bytes) in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Copies a raw resource to a file, through a temporary file.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(Resources resources, int resourceId, File target) throws IOException {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        FileOutputStream output = new FileOutputStream(tmp);
+        long size = 0;
+        try {
+            FileChannel out = output.getChannel();
+            AssetFileDescriptor afd = openFd(resources, resourceId);
+            if (afd != null) {
+                // Stored uncompressed in the APK, the channel can transfer it directly
+                FileInputStream input = afd.createInputStream();
+                try {
+                    FileChannel in = input.getChannel();
+                    long length = afd.getLength();
+                    long start = afd.getStartOffset();
+                    while (size < length) {
+                        long transferred = in.transferTo(start + size, length - size, out);
+                        if (transferred <= 0) break;
+                        size += transferred;
+                    }
+                } finally {
+                    input.close();
+                    afd.close();
+                }
+            } else {
+                InputStream input = resources.openRawResource(resourceId);
+                ReadableByteChannel in = Channels.newChannel(input);
+                try {
+                    long transferred;
+                    while ((transferred = out.transferFrom(in, size, TRANSFER_CHUNK)) > 0) {
+                        size += transferred;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Couldn't rename " + tmp + " to " + target);
+        }
+        return size;
+    }
+
+    private static long getResourceSize(Resources resources, int resourceId) {
+        AssetFileDescriptor afd = openFd(resources, resourceId);
+        if (afd == null) return -1; // compressed, the size isn't known without reading it
+        long length = afd.getLength();
+        try {
+            afd.close();
+        } catch (IOException e) {
+            Log.w(e);
+        }
+        return length;
+    }
+
+    private static AssetFileDescriptor openFd(Resources resources, int resourceId) {
+        try {
+            return resources.openRawResourceFd(resourceId);
+        } catch (Resources.NotFoundException e) {
+            return null; // compressed in the APK
+        }
+    }
+
+    private String getVersion() {
+        try {
+            PackageInfo info = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0);
+            // The update time changes with each install, even when the version code doesn't (development builds)
+            return info.versionCode + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(e);
+            return "unknown:" + SystemClock.elapsedRealtime(); // never matches, always copied
+        }
+    }
+}
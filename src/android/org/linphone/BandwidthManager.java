@@ -19,18 +19,60 @@ along with this program; if not, write to the Free Software
 Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 */
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+
+import org.linphone.call.CallStatsSampler;
+import org.linphone.core.Call;
 import org.linphone.core.CallParams;
 import org.linphone.core.Core;
+import org.linphone.core.Factory;
+import org.linphone.core.VideoDefinition;
+import org.linphone.mediastream.Log;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
 
-public class BandwidthManager {
+/**
+ * Adapts the running calls to the network: a BandwidthPolicy per call is fed with the call statistics and the
+ * connectivity changes, and the profile it chooses is applied with a call update.
+ * Must be used from the main thread, like the Core.
+ */
+public class BandwidthManager implements CallStatsSampler.Listener {
 
-    public static final int HIGH_RESOLUTION = 0;
-    public static final int LOW_RESOLUTION = 1;
-    public static final int LOW_BANDWIDTH = 2;
+    public static final int HIGH_RESOLUTION = BandwidthPolicy.HIGH_RESOLUTION;
+    public static final int LOW_RESOLUTION = BandwidthPolicy.LOW_RESOLUTION;
+    public static final int LOW_BANDWIDTH = BandwidthPolicy.LOW_BANDWIDTH;
+
+    private static final int LOW_BANDWIDTH_AUDIO_LIMIT = 40; // in kbits/s
+    private static final String LOW_RESOLUTION_VIDEO_SIZE = "qvga";
 
     private static BandwidthManager instance;
 
+    private class CallAdaptation {
+        final BandwidthPolicy mPolicy = new BandwidthPolicy();
+        int mAppliedProfile = HIGH_RESOLUTION;
+        boolean mVideoDropped; // video was removed by the low bandwidth profile, to be added back when leaving it
+    }
+
     private int currentProfile = HIGH_RESOLUTION;
+    private Context mContext;
+    private int mNetwork = BandwidthPolicy.NETWORK_UNKNOWN;
+    private final IdentityHashMap<Call, CallAdaptation> mCalls = new IdentityHashMap<>();
+    private String mUserVideoSize; // the preferred video size to restore, if lowered
+    private boolean mReceiverRegistered;
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onNetworkChanged(readNetwork());
+        }
+    };
 
     public static final synchronized BandwidthManager getInstance() {
         if (instance == null) instance = new BandwidthManager();
@@ -39,19 +81,28 @@ public class BandwidthManager {
 
 
     private BandwidthManager() {
-        // FIXME register a listener on NetworkManager to get notified of network state
-        // FIXME register a listener on Preference to get notified of change in video enable value
+    }
 
-        // FIXME initially get those values
+    public void init(Context context) {
+        mContext = context.getApplicationContext();
+        mNetwork = readNetwork();
+        currentProfile = mNetwork == BandwidthPolicy.NETWORK_SLOW ? LOW_BANDWIDTH : HIGH_RESOLUTION;
     }
 
+    /**
+     * Puts back the preferred video size if the application was killed while a call had it lowered.
+     */
+    public void onCoreStarted() {
+        if (mUserVideoSize != null) return; // Lowered by a call of this run
+        restoreVideoSize(LinphonePreferences.instance().getVideoSizeToRestore());
+    }
 
     public void updateWithProfileSettings(Core lc, CallParams callParams) {
         if (callParams != null) { // in call
             // Update video parm if
             if (!isVideoPossible()) { // NO VIDEO
                 callParams.enableVideo(false);
-                callParams.setAudioBandwidthLimit(40);
+                callParams.setAudioBandwidthLimit(LOW_BANDWIDTH_AUDIO_LIMIT);
             } else {
                 callParams.enableVideo(true);
                 callParams.setAudioBandwidthLimit(0); // disable limitation
@@ -62,4 +113,170 @@ public class BandwidthManager {
     public boolean isVideoPossible() {
         return currentProfile != LOW_BANDWIDTH;
     }
+
+    /**
+     * Starts adapting a call once its streams are running, and stops when it ends.
+     */
+    public void onCallStateChanged(Call call, Call.State state) {
+        if (state == Call.State.StreamsRunning) {
+            CallAdaptation adaptation = mCalls.get(call);
+            if (adaptation == null) {
+                adaptation = new CallAdaptation();
+                adaptation.mPolicy.onNetworkChanged(mNetwork, SystemClock.uptimeMillis());
+                mCalls.put(call, adaptation);
+                if (mCalls.size() == 1) start();
+            }
+            apply(call, adaptation);
+        } else if (state == Call.State.End || state == Call.State.Error || state == Call.State.Released) {
+            if (mCalls.remove(call) != null && mCalls.isEmpty()) {
+                stop();
+            }
+        }
+    }
+
+    @Override
+    public void onCallStatsSampled(Call call, CallStatsSampler.Sample sample) {
+        CallAdaptation adaptation = mCalls.get(call);
+        if (adaptation == null) return;
+
+        CallStatsSampler.StreamSample audio = sample.getAudio();
+        CallStatsSampler.StreamSample video = sample.getVideo();
+        float loss = Math.max(audio.getSenderLossRate(), audio.getReceiverLossRate());
+        float estimatedBandwidth = 0;
+        if (video.isActive()) {
+            loss = Math.max(loss, Math.max(video.getSenderLossRate(), video.getReceiverLossRate()));
+            estimatedBandwidth = video.getEstimatedDownloadBandwidth();
+        }
+        if (adaptation.mPolicy.onSample(sample.getTime(), loss, audio.getRoundTripDelay(), estimatedBandwidth)) {
+            Log.i("[Bandwidth] Call profile changed to " + BandwidthPolicy.getProfileName(adaptation.mPolicy.getProfile())
+                    + " (loss " + loss + "%, rtt " + audio.getRoundTripDelay() + " ms, estimated " + estimatedBandwidth + " kbits/s)");
+        }
+        apply(call, adaptation);
+    }
+
+    private void onNetworkChanged(int network) {
+        if (network == mNetwork) return;
+        Log.i("[Bandwidth] Network changed from " + mNetwork + " to " + network);
+        mNetwork = network;
+        long now = SystemClock.uptimeMillis();
+        for (Map.Entry<Call, CallAdaptation> entry : mCalls.entrySet()) {
+            CallAdaptation adaptation = entry.getValue();
+            if (adaptation.mPolicy.onNetworkChanged(network, now)) {
+                Log.i("[Bandwidth] Call profile changed to " + BandwidthPolicy.getProfileName(adaptation.mPolicy.getProfile()) + " (network)");
+            }
+            apply(entry.getKey(), adaptation);
+        }
+        if (mCalls.isEmpty()) {
+            currentProfile = network == BandwidthPolicy.NETWORK_SLOW ? LOW_BANDWIDTH : HIGH_RESOLUTION;
+        }
+    }
+
+    private void start() {
+        CallStatsSampler.getInstance().addListener(this);
+        if (mContext != null && !mReceiverRegistered) {
+            mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mReceiverRegistered = true;
+        }
+    }
+
+    private void stop() {
+        CallStatsSampler.getInstance().removeListener(this);
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mReceiverRegistered = false;
+        }
+        restoreVideoSize();
+        mNetwork = readNetwork();
+        currentProfile = mNetwork == BandwidthPolicy.NETWORK_SLOW ? LOW_BANDWIDTH : HIGH_RESOLUTION;
+    }
+
+    /**
+     * Updates the call if its profile changed since it was last applied. Postponed while the call can't be updated,
+     * retried on the next sample.
+     */
+    private void apply(Call call, CallAdaptation adaptation) {
+        int profile = adaptation.mPolicy.getProfile();
+        if (call == CallStatsSampler.getInstance().getCall() || mCalls.size() == 1) {
+            currentProfile = profile;
+        }
+        if (profile == adaptation.mAppliedProfile) return;
+
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc == null || call.getState() != Call.State.StreamsRunning) return;
+
+        CallParams params = lc.createCallParams(call);
+        if (profile == LOW_BANDWIDTH) {
+            if (params.videoEnabled()) {
+                params.enableVideo(false);
+                adaptation.mVideoDropped = true;
+            }
+            params.setAudioBandwidthLimit(LOW_BANDWIDTH_AUDIO_LIMIT);
+        } else {
+            if (adaptation.mVideoDropped) {
+                params.enableVideo(true);
+                adaptation.mVideoDropped = false;
+            }
+            params.setAudioBandwidthLimit(0); // disable limitation
+        }
+
+        if (profile == LOW_RESOLUTION) {
+            lowerVideoSize(lc);
+        } else if (profile == HIGH_RESOLUTION && !isAnyCallLowResolution(call)) {
+            restoreVideoSize();
+        }
+
+        Log.i("[Bandwidth] Applying " + BandwidthPolicy.getProfileName(profile) + " profile to call, was "
+                + BandwidthPolicy.getProfileName(adaptation.mAppliedProfile));
+        adaptation.mAppliedProfile = profile;
+        lc.updateCall(call, params);
+    }
+
+    /**
+     * The video definition can only be set on the Core, so it's lowered there while a call needs it.
+     */
+    private void lowerVideoSize(Core lc) {
+        if (mUserVideoSize != null) return; // Already lowered
+        VideoDefinition current = lc.getPreferredVideoDefinition();
+        VideoDefinition low = Factory.instance().createVideoDefinitionFromName(LOW_RESOLUTION_VIDEO_SIZE);
+        if (current == null || low == null || current.getWidth() * current.getHeight() <= low.getWidth() * low.getHeight()) {
+            return;
+        }
+        mUserVideoSize = LinphonePreferences.instance().getPreferredVideoSize();
+        // The Core saves the size in its config, remember the user's one in case we don't get to restore it
+        LinphonePreferences.instance().setVideoSizeToRestore(mUserVideoSize);
+        lc.setPreferredVideoSizeByName(LOW_RESOLUTION_VIDEO_SIZE);
+    }
+
+    private void restoreVideoSize() {
+        if (mUserVideoSize == null) return;
+        restoreVideoSize(mUserVideoSize);
+        mUserVideoSize = null;
+    }
+
+    private void restoreVideoSize(String size) {
+        if (size == null) return;
+        LinphonePreferences prefs = LinphonePreferences.instance();
+        if (LOW_RESOLUTION_VIDEO_SIZE.equals(prefs.getPreferredVideoSize())) {
+            Log.i("[Bandwidth] Restoring preferred video size " + size);
+            prefs.setPreferredVideoSize(size);
+        } else {
+            Log.i("[Bandwidth] Preferred video size changed since it was lowered, keeping it");
+        }
+        prefs.setVideoSizeToRestore(null);
+    }
+
+    private boolean isAnyCallLowResolution(Call except) {
+        for (Map.Entry<Call, CallAdaptation> entry : mCalls.entrySet()) {
+            if (entry.getKey() != except && entry.getValue().mAppliedProfile == LOW_RESOLUTION) return true;
+        }
+        return false;
+    }
+
+    private int readNetwork() {
+        if (mContext == null) return BandwidthPolicy.NETWORK_UNKNOWN;
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm != null ? cm.getActiveNetworkInfo() : null;
+        if (info == null || !info.isConnected()) return BandwidthPolicy.NETWORK_UNKNOWN;
+        return LinphoneUtils.isConnectionFast(info.getType(), info.getSubtype()) ? BandwidthPolicy.NETWORK_FAST : BandwidthPolicy.NETWORK_SLOW;
+    }
 }
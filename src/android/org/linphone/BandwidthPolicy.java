@@ -0,0 +1,148 @@
+package org.linphone;
+
+/*
+BandwidthPolicy.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+/**
+ * Chooses the bandwidth profile of a call from its statistics and the kind of network it goes through.<br />
+ * Each profile change costs a re-INVITE, so a call only moves to a lower profile after DEGRADE_SAMPLES bad samples
+ * in a row, moves back up one profile at a time after UPGRADE_SAMPLES good ones, and never changes more often
+ * than every MIN_CHANGE_INTERVAL. Switching to a slow network lowers the profile right away.
+ * <p>
+ * Plain Java with no Core nor Android dependency, so recorded traces can be replayed through it
+ * in the unit tests (see BandwidthPolicyTest).
+ */
+public class BandwidthPolicy {
+    public static final int HIGH_RESOLUTION = 0;
+    public static final int LOW_RESOLUTION = 1;
+    public static final int LOW_BANDWIDTH = 2;
+
+    public static final int NETWORK_UNKNOWN = 0;
+    public static final int NETWORK_SLOW = 1; // 2G
+    public static final int NETWORK_FAST = 2;
+
+    static final float LOW_RESOLUTION_LOSS = 3; // in %
+    static final float LOW_BANDWIDTH_LOSS = 10;
+    static final float LOW_RESOLUTION_ROUND_TRIP = 400; // in ms
+    static final float LOW_BANDWIDTH_ROUND_TRIP = 800;
+    static final float LOW_RESOLUTION_ESTIMATED_BANDWIDTH = 500; // in kbits/s
+    static final float LOW_BANDWIDTH_ESTIMATED_BANDWIDTH = 150;
+    static final int DEGRADE_SAMPLES = 4;
+    static final int UPGRADE_SAMPLES = 15;
+    static final long MIN_CHANGE_INTERVAL = 10000; // in ms
+
+    private int mProfile = HIGH_RESOLUTION;
+    private int mNetwork = NETWORK_UNKNOWN;
+    private int mWorseSamples, mBetterSamples; // consecutive samples asking for a lower / higher profile
+    private int mWorseTarget; // the highest profile all the consecutive worse samples asked for
+    private long mLastChange = -MIN_CHANGE_INTERVAL;
+
+    public static String getProfileName(int profile) {
+        switch (profile) {
+            case HIGH_RESOLUTION:
+                return "high resolution";
+            case LOW_RESOLUTION:
+                return "low resolution";
+            case LOW_BANDWIDTH:
+                return "low bandwidth";
+        }
+        return String.valueOf(profile);
+    }
+
+    /**
+     * The profile a single sample asks for, before any hysteresis.
+     *
+     * @param lossRate           in %
+     * @param roundTripDelay     in ms, 0 if unknown
+     * @param estimatedBandwidth in kbits/s, 0 if unknown
+     */
+    public static int evaluate(int network, float lossRate, float roundTripDelay, float estimatedBandwidth) {
+        if (network == NETWORK_SLOW
+                || lossRate >= LOW_BANDWIDTH_LOSS
+                || roundTripDelay >= LOW_BANDWIDTH_ROUND_TRIP
+                || (estimatedBandwidth > 0 && estimatedBandwidth < LOW_BANDWIDTH_ESTIMATED_BANDWIDTH)) {
+            return LOW_BANDWIDTH;
+        }
+        if (lossRate >= LOW_RESOLUTION_LOSS
+                || roundTripDelay >= LOW_RESOLUTION_ROUND_TRIP
+                || (estimatedBandwidth > 0 && estimatedBandwidth < LOW_RESOLUTION_ESTIMATED_BANDWIDTH)) {
+            return LOW_RESOLUTION;
+        }
+        return HIGH_RESOLUTION;
+    }
+
+    public int getProfile() {
+        return mProfile;
+    }
+
+    public int getNetwork() {
+        return mNetwork;
+    }
+
+    /**
+     * @param time in ms, on the same clock as the samples
+     * @return true if the profile changed
+     */
+    public boolean onNetworkChanged(int network, long time) {
+        if (network == mNetwork) return false;
+        mNetwork = network;
+        // Statistics gathered on the previous network don't tell anything about this one
+        mWorseSamples = mBetterSamples = 0;
+        if (network == NETWORK_SLOW && mProfile != LOW_BANDWIDTH) {
+            return change(LOW_BANDWIDTH, time);
+        }
+        return false;
+    }
+
+    /**
+     * @param time in ms
+     * @return true if the profile changed
+     * @see #evaluate(int, float, float, float)
+     */
+    public boolean onSample(long time, float lossRate, float roundTripDelay, float estimatedBandwidth) {
+        int target = evaluate(mNetwork, lossRate, roundTripDelay, estimatedBandwidth);
+
+        if (target > mProfile) {
+            mWorseTarget = mWorseSamples == 0 ? target : Math.min(mWorseTarget, target);
+            mWorseSamples += 1;
+            mBetterSamples = 0;
+        } else if (target < mProfile) {
+            mBetterSamples += 1;
+            mWorseSamples = 0;
+        } else {
+            mWorseSamples = mBetterSamples = 0;
+        }
+
+        if (time - mLastChange < MIN_CHANGE_INTERVAL) return false;
+        if (mWorseSamples >= DEGRADE_SAMPLES) {
+            return change(mWorseTarget, time);
+        }
+        if (mBetterSamples >= UPGRADE_SAMPLES) {
+            return change(mProfile - 1, time);
+        }
+        return false;
+    }
+
+    private boolean change(int profile, long time) {
+        mProfile = profile;
+        mLastChange = time;
+        mWorseSamples = mBetterSamples = 0;
+        return true;
+    }
+}
@@ -0,0 +1,209 @@
+package org.linphone;
+
+/*
+ChatNotificationAggregator.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.linphone.compatibility.Compatibility;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Chat messages notifications, one per chat room.<br />
+ * A room's notification is posted a short while after its first unread message, so a burst of messages
+ * (history received after a reconnection for instance) ends up as a single post per room showing the last one.
+ * Posts are spaced to stay below the rate at which the platform starts dropping a package's notifications.
+ * Avatars are decoded by the ImageLoader, off the main thread and cached.
+ * Must be used from the main thread.
+ */
+public class ChatNotificationAggregator {
+    private static final int COALESCE_DELAY = 500; // in ms, how long a room waits for more messages before posting
+    private static final int MAX_POSTS_PER_SECOND = 5; // the platform drops updates above 10 per second
+    private static final int MIN_POST_INTERVAL = 1000 / MAX_POSTS_PER_SECOND;
+    private static final int STATS_LOG_INTERVAL = 50; // in posts
+
+    private class RoomNotification {
+        final String mKey;
+        final int mNotificationId;
+        int mUnreadCount;
+        String mTitle, mText;
+        String mFirstMessageId; // oldest unread message, the room opens on it
+        Uri mPictureUri;
+        Intent mIntent;
+        boolean mPending;
+        long mReadyTime;
+
+        RoomNotification(String key, int notificationId) {
+            mKey = key;
+            mNotificationId = notificationId;
+        }
+    }
+
+    private final LinphoneService mService;
+    private final NotificationManager mNM;
+    private final Handler mHandler = new Handler();
+    private final HashMap<String, RoomNotification> mRooms = new HashMap<>();
+    private final ArrayDeque<RoomNotification> mQueue = new ArrayDeque<>(); // ready time order
+    private int mNextNotificationId;
+    private long mLastPostTime;
+    private Bitmap mDefaultAvatar;
+
+    private int mMessages, mPosts, mMerged, mSuppressed, mRateLimited;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ChatNotificationAggregator(LinphoneService service, NotificationManager nm, int firstNotificationId) {
+        mService = service;
+        mNM = nm;
+        mNextNotificationId = firstNotificationId;
+    }
+
+    /**
+     * @param key the chat room peer address
+     */
+    public void addMessage(String key, String title, String text, Uri pictureUri, Intent intent) {
+        RoomNotification room = mRooms.get(key);
+        if (room == null) {
+            room = new RoomNotification(key, mNextNotificationId++);
+            mRooms.put(key, room);
+        }
+        if (room.mUnreadCount == 0) {
+            room.mFirstMessageId = intent.getStringExtra("MessageId");
+        }
+        room.mUnreadCount += 1;
+        room.mTitle = title;
+        room.mText = text;
+        room.mPictureUri = pictureUri;
+        room.mIntent = intent;
+        mMessages += 1;
+
+        if (room.mPending) {
+            mMerged += 1;
+            return;
+        }
+        room.mPending = true;
+        room.mReadyTime = SystemClock.uptimeMillis() + COALESCE_DELAY;
+        mQueue.add(room);
+        scheduleFlush();
+    }
+
+    /**
+     * Removes the room notification (and drops the pending one), as its messages have been read.
+     */
+    public void reset(String key) {
+        RoomNotification room = mRooms.get(key);
+        if (room == null) return;
+        room.mUnreadCount = 0;
+        if (room.mPending) {
+            room.mPending = false;
+            mQueue.remove(room);
+            mSuppressed += 1;
+        }
+        mNM.cancel(room.mNotificationId);
+    }
+
+    public void cancelAll() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mQueue.clear();
+        for (RoomNotification room : mRooms.values()) {
+            room.mPending = false;
+            mNM.cancel(room.mNotificationId);
+        }
+        logStats();
+    }
+
+    public void logStats() {
+        Log.i("[Chat Notifications] Messages " + mMessages + ", posts " + mPosts + ", merged " + mMerged
+                + ", suppressed " + mSuppressed + ", rate limited " + mRateLimited);
+    }
+
+    private void scheduleFlush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        RoomNotification next = mQueue.peek();
+        if (next == null) return;
+        long time = Math.max(next.mReadyTime, mLastPostTime + MIN_POST_INTERVAL);
+        mHandler.postAtTime(mFlushRunnable, time);
+    }
+
+    private void flush() {
+        long now = SystemClock.uptimeMillis();
+        RoomNotification room = mQueue.peek();
+        if (room != null && room.mReadyTime <= now) {
+            if (now < mLastPostTime + MIN_POST_INTERVAL) {
+                mRateLimited += 1;
+            } else {
+                mQueue.poll();
+                mLastPostTime = now;
+                post(room);
+            }
+        }
+        scheduleFlush();
+    }
+
+    private void post(final RoomNotification room) {
+        if (room.mPictureUri == null) {
+            notify(room, getDefaultAvatar());
+            return;
+        }
+        ImageLoader.getInstance(mService).load(room.mPictureUri, ImageLoader.THUMBNAIL_SIZE, new ImageLoader.Callback() {
+            @Override
+            public void onImageLoaded(Bitmap bitmap) {
+                notify(room, bitmap != null ? bitmap : getDefaultAvatar());
+            }
+        });
+    }
+
+    private void notify(RoomNotification room, Bitmap avatar) {
+        if (!room.mPending) return; // Read while the avatar was loading
+        room.mPending = false;
+
+        room.mIntent.putExtra("MessageId", room.mFirstMessageId);
+        PendingIntent contentIntent = PendingIntent.getActivity(mService, 0, room.mIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+        Notification notification = Compatibility.createMessageNotification(mService.getApplicationContext(), room.mUnreadCount, room.mTitle, room.mText, avatar, contentIntent);
+        mService.notifyWrapper(room.mNotificationId, notification);
+
+        mPosts += 1;
+        if (mPosts % STATS_LOG_INTERVAL == 0) {
+            logStats();
+        }
+    }
+
+    private Bitmap getDefaultAvatar() {
+        if (mDefaultAvatar == null) {
+            mDefaultAvatar = BitmapFactory.decodeResource(mService.getResources(), R.drawable.topbar_avatar);
+        }
+        return mDefaultAvatar;
+    }
+}
@@ -0,0 +1,286 @@
+package org.linphone;
+
+/*
+CoreScheduler.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.linphone.core.Call;
+import org.linphone.core.ChatMessage;
+import org.linphone.core.ChatRoom;
+import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
+import org.linphone.core.GlobalState;
+import org.linphone.core.ProxyConfig;
+import org.linphone.core.RegistrationState;
+import org.linphone.mediastream.Log;
+
+/**
+ * Drives Core.iterate() from the looper the Core is used on.<br />
+ * The Core is not thread safe, so the looper given here must be the one every other Core call is made from
+ * (the main looper for the application). Next iteration is only scheduled once the current one has returned,
+ * so a busy looper delays iterations instead of queuing them and running them in burst afterwards.
+ * <p>
+ * The iteration period adapts to what the Core is doing: full rate while there are calls (or while someone
+ * holds the full rate, like the echo tester), for a few seconds after any Core event or explicit wake up
+ * (file transfers progress keep it awake), and while a registration is in progress. Otherwise it slows down.
+ * <p>
+ * Iterations still run on the main looper, not on a dedicated Core thread: the application calls the Core
+ * from the UI thread everywhere, which would all have to be marshalled first. What it costs the main thread is
+ * logged with the stats, next to the number of iterations the former fixed 20 ms timer would have done.
+ */
+public class CoreScheduler {
+    public static final int ITERATE_PERIOD = 20;
+    public static final int IDLE_ITERATE_PERIOD = 200;
+    private static final int WAKE_UP_DURATION = 3000;
+    private static final int STATS_LOG_INTERVAL = 3000; // in ticks
+
+    public enum Cadence {
+        IN_CALL(ITERATE_PERIOD),
+        WOKEN_UP(ITERATE_PERIOD),
+        REGISTERING(ITERATE_PERIOD),
+        IDLE(IDLE_ITERATE_PERIOD);
+
+        private final int mPeriod;
+
+        Cadence(int period) {
+            mPeriod = period;
+        }
+
+        public int getPeriod() {
+            return mPeriod;
+        }
+    }
+
+    private final Handler mHandler;
+    private Core mCore;
+    private boolean mRunning;
+    private boolean mIterating;
+    private long mExpectedTick;
+    private long mWakeUpDeadline;
+    private int mFullRateHolds;
+    private Cadence mCadence = Cadence.WOKEN_UP;
+    private CoreListenerStub mListener;
+
+    private long mTicks;
+    private long mStatsStart;
+    private long[] mTicksPerCadence = new long[Cadence.values().length];
+    private long mIterateTime;
+    private long mMaxIterateTime;
+    private long mLateness;
+    private long mMaxLateness;
+
+    private final Runnable mIterateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            iterate();
+        }
+    };
+
+    public CoreScheduler(Looper looper) {
+        mHandler = new Handler(looper);
+        mListener = new CoreListenerStub() {
+            @Override
+            public void onGlobalStateChanged(Core lc, GlobalState state, String message) {
+                wakeUp();
+            }
+
+            @Override
+            public void onCallStateChanged(Core lc, Call call, Call.State state, String message) {
+                wakeUp();
+            }
+
+            @Override
+            public void onRegistrationStateChanged(Core lc, ProxyConfig cfg, RegistrationState state, String message) {
+                wakeUp();
+            }
+
+            @Override
+            public void onMessageReceived(Core lc, ChatRoom cr, ChatMessage message) {
+                wakeUp();
+            }
+
+            @Override
+            public void onIsComposingReceived(Core lc, ChatRoom cr) {
+                wakeUp();
+            }
+
+            @Override
+            public void onChatRoomStateChanged(Core lc, ChatRoom cr, ChatRoom.State state) {
+                wakeUp();
+            }
+
+            @Override
+            public void onNetworkReachable(Core lc, boolean enable) {
+                wakeUp();
+            }
+        };
+    }
+
+    public void start(Core core) {
+        if (mRunning) stop();
+        mCore = core;
+        mCore.addListener(mListener);
+        mRunning = true;
+        resetStats();
+        mWakeUpDeadline = SystemClock.uptimeMillis() + WAKE_UP_DURATION;
+        mCadence = Cadence.WOKEN_UP;
+        scheduleNextIterate(0);
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mIterateRunnable);
+        if (mRunning) {
+            logStats();
+        }
+        if (mCore != null) {
+            mCore.removeListener(mListener);
+        }
+        mRunning = false;
+        mCore = null;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public Cadence getCadence() {
+        return mCadence;
+    }
+
+    /**
+     * Switches to full rate for a few seconds, iterating as soon as possible if the scheduler was idle.
+     * Must be called from the scheduler looper.
+     */
+    public void wakeUp() {
+        mWakeUpDeadline = SystemClock.uptimeMillis() + WAKE_UP_DURATION;
+        refreshCadence();
+    }
+
+    /**
+     * Keeps the full rate until the matching releaseFullRate() call, for activities using the Core
+     * without any call running (echo tester, echo canceller calibration).
+     */
+    public void acquireFullRate() {
+        mFullRateHolds++;
+        refreshCadence();
+    }
+
+    public void releaseFullRate() {
+        if (mFullRateHolds > 0) mFullRateHolds--;
+        refreshCadence();
+    }
+
+    private void refreshCadence() {
+        if (!mRunning || mCore == null) return;
+
+        Cadence previous = mCadence;
+        mCadence = computeCadence();
+        if (mCadence != previous) {
+            Log.d("[Core Scheduler] Cadence changed from " + previous + " to " + mCadence);
+        }
+        if (!mIterating && mCadence.getPeriod() < previous.getPeriod()) {
+            // Next tick was planned at the slower rate, bring it closer
+            scheduleNextIterate(0);
+        }
+    }
+
+    private Cadence computeCadence() {
+        if (mFullRateHolds > 0 || mCore.getCallsNb() > 0) {
+            return Cadence.IN_CALL;
+        }
+        if (SystemClock.uptimeMillis() < mWakeUpDeadline) {
+            return Cadence.WOKEN_UP;
+        }
+        for (ProxyConfig lpc : mCore.getProxyConfigList()) {
+            if (lpc.getState() == RegistrationState.Progress) {
+                return Cadence.REGISTERING;
+            }
+        }
+        return Cadence.IDLE;
+    }
+
+    private void scheduleNextIterate(int delay) {
+        mHandler.removeCallbacks(mIterateRunnable);
+        mExpectedTick = SystemClock.uptimeMillis() + delay;
+        mHandler.postAtTime(mIterateRunnable, mExpectedTick);
+    }
+
+    private void iterate() {
+        if (!mRunning || mCore == null) return;
+
+        long start = SystemClock.uptimeMillis();
+        long lateness = start - mExpectedTick;
+        mIterating = true;
+        try {
+            mCore.iterate();
+        } finally {
+            mIterating = false;
+        }
+        long duration = SystemClock.uptimeMillis() - start;
+
+        mTicks++;
+        mTicksPerCadence[mCadence.ordinal()]++;
+        mIterateTime += duration;
+        mLateness += Math.max(lateness, 0);
+        if (duration > mMaxIterateTime) mMaxIterateTime = duration;
+        if (lateness > mMaxLateness) mMaxLateness = lateness;
+        if (mTicks % STATS_LOG_INTERVAL == 0) {
+            logStats();
+        }
+
+        if (mRunning) {
+            if (mCadence == Cadence.WOKEN_UP && SystemClock.uptimeMillis() >= mWakeUpDeadline) {
+                refreshCadence();
+            }
+            scheduleNextIterate(mCadence.getPeriod());
+        }
+    }
+
+    private void resetStats() {
+        mStatsStart = SystemClock.uptimeMillis();
+        mTicks = 0;
+        for (int i = 0; i < mTicksPerCadence.length; i++) {
+            mTicksPerCadence[i] = 0;
+        }
+        mIterateTime = 0;
+        mMaxIterateTime = 0;
+        mLateness = 0;
+        mMaxLateness = 0;
+    }
+
+    private void logStats() {
+        if (mTicks == 0) return;
+        StringBuilder sb = new StringBuilder();
+        sb.append("[Core Scheduler] ").append(mTicks).append(" iterations (");
+        for (Cadence cadence : Cadence.values()) {
+            sb.append(cadence).append("=").append(mTicksPerCadence[cadence.ordinal()]).append(" ");
+        }
+        sb.append("), iterate avg ").append(mIterateTime / mTicks).append("ms max ").append(mMaxIterateTime)
+                .append("ms, jitter avg ").append(mLateness / mTicks).append("ms max ").append(mMaxLateness).append("ms");
+        long elapsed = SystemClock.uptimeMillis() - mStatsStart;
+        if (elapsed > 0) {
+            sb.append(", main thread busy ").append(mIterateTime * 100 / elapsed).append("% over ").append(elapsed / 1000)
+                    .append("s, fixed timer would have done ").append(elapsed / ITERATE_PERIOD).append(" iterations");
+        }
+        Log.i(sb.toString());
+    }
+}
@@ -0,0 +1,439 @@
+package org.linphone;
+
+/*
+ImageLoader.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.app.ActivityManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import org.linphone.contacts.ContactsManager;
+import org.linphone.mediastream.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads avatars and pictures into ImageViews without blocking the UI thread.<br />
+ * Bitmaps are decoded downsampled to the requested size on a small pool of threads and kept in a memory LRU cache
+ * sized from the heap class. Network and file images are also kept downsampled on disk; contacts photos are not,
+ * as their URI doesn't change with the photo, they are evicted from memory when contacts change instead.
+ * Binding a view again (or recycling it) cancels the request it had in flight.
+ * Must be used from the main thread.
+ */
+public class ImageLoader {
+    public static final int THUMBNAIL_SIZE = 256;
+    public static final int PICTURE_SIZE = 1024;
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "images";
+    private static final int STATS_LOG_INTERVAL = 100; // in decodes
+
+    public interface Callback {
+        /**
+         * @param bitmap null if the image couldn't be decoded
+         */
+        void onImageLoaded(Bitmap bitmap);
+    }
+
+    private static ImageLoader sInstance;
+
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDir;
+    private final ThreadPoolExecutor mDecodePool;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final WeakHashMap<ImageView, Request> mRequests = new WeakHashMap<>();
+
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+    private final AtomicInteger mDecodes = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private final AtomicInteger mCancelled = new AtomicInteger();
+    private final AtomicLong mDecodeTime = new AtomicLong();
+
+    private ImageLoader(Context context) {
+        mContext = context;
+
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int cacheSize = am.getMemoryClass() * 1024 * 1024 / 8;
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        if (!mDiskCacheDir.exists() && !mDiskCacheDir.mkdirs()) {
+            Log.w("[Image Loader] Couldn't create disk cache directory " + mDiskCacheDir);
+        }
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+        mDecodePool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ImageLoader-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mDecodePool.allowCoreThreadTimeOut(true);
+        mDecodePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                trimDiskCache();
+            }
+        });
+        Log.i("[Image Loader] Memory cache size is " + cacheSize / 1024 + "kB, " + threads + " decoding threads");
+    }
+
+    /**
+     * Displays uri (or fallbackUri if uri can't be decoded) into view, showing the default avatar until it's ready.
+     * @param size the largest dimension needed, the bitmap won't be decoded bigger than twice this size
+     */
+    public void load(ImageView view, Uri uri, Uri fallbackUri, int size) {
+        cancel(view);
+        if (uri == null) {
+            uri = fallbackUri;
+            fallbackUri = null;
+        }
+        if (uri == null) {
+            view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
+            return;
+        }
+
+        String key = uri.toString() + "#" + size;
+        Bitmap bm = mMemoryCache.get(key);
+        if (bm != null) {
+            mMemoryHits.incrementAndGet();
+            view.setImageBitmap(bm);
+            return;
+        }
+
+        view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
+        Request request = new Request(view, key, uri, fallbackUri, size);
+        mRequests.put(view, request);
+        request.mFuture = mDecodePool.submit(request);
+    }
+
+    /**
+     * Loads uri for something else than a view (a notification icon for instance).
+     * The callback is called on the main thread, right away if the bitmap is in memory.
+     */
+    public void load(final Uri uri, final int size, final Callback callback) {
+        final String key = uri.toString() + "#" + size;
+        Bitmap bm = mMemoryCache.get(key);
+        if (bm != null) {
+            mMemoryHits.incrementAndGet();
+            callback.onImageLoaded(bm);
+            return;
+        }
+
+        mDecodePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = loadBitmap(uri, size);
+                if (bitmap != null) {
+                    mMemoryCache.put(key, bitmap);
+                } else {
+                    mFailures.incrementAndGet();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onImageLoaded(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the request in flight for this view, if any. To be called when the view is recycled.
+     */
+    public void cancel(ImageView view) {
+        Request request = mRequests.remove(view);
+        if (request != null && request.mFuture != null && !request.mFuture.isDone()) {
+            request.mFuture.cancel(false);
+            mCancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Contacts photos URIs stay the same when the photo changes, so they can't be trusted once contacts changed.
+     */
+    public void evictContactsPhotos() {
+        String prefix = ContactsContract.AUTHORITY_URI.toString();
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+    }
+
+    public void logStats() {
+        int decodes = mDecodes.get();
+        Log.i("[Image Loader] Memory hits " + mMemoryHits.get() + ", disk hits " + mDiskHits.get() + ", misses " + mMisses.get()
+                + ", cancelled " + mCancelled.get() + ", failures " + mFailures.get() + ", decodes " + decodes
+                + " avg " + (decodes > 0 ? mDecodeTime.get() / decodes : 0) + "ms, memory cache "
+                + mMemoryCache.size() / 1024 + "/" + mMemoryCache.maxSize() / 1024 + "kB");
+    }
+
+    private class Request implements Runnable {
+        private final WeakReference<ImageView> mView;
+        private final String mKey;
+        private final Uri mUri, mFallbackUri;
+        private final int mSize;
+        private Future<?> mFuture;
+
+        Request(ImageView view, String key, Uri uri, Uri fallbackUri, int size) {
+            mView = new WeakReference<>(view);
+            mKey = key;
+            mUri = uri;
+            mFallbackUri = fallbackUri;
+            mSize = size;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bm = loadBitmap(mUri, mSize);
+            if (bm == null && mFallbackUri != null) {
+                bm = loadBitmap(mFallbackUri, mSize);
+            }
+            if (bm != null) {
+                mMemoryCache.put(mKey, bm);
+            } else {
+                mFailures.incrementAndGet();
+            }
+
+            final Bitmap bitmap = bm;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView view = mView.get();
+                    if (view == null || mRequests.get(view) != Request.this) return;
+                    mRequests.remove(view);
+                    if (bitmap != null) {
+                        view.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    private Bitmap loadBitmap(Uri uri, int size) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.US) : "";
+        boolean isRemote = scheme.startsWith("http");
+        File diskFile = null;
+        if (isRemote || scheme.equals(ContentResolver.SCHEME_FILE)) {
+            String diskKey = uri.toString() + "#" + size;
+            if (!isRemote) {
+                diskKey += "#" + new File(uri.getPath()).lastModified();
+            }
+            diskFile = new File(mDiskCacheDir, hash(diskKey));
+            if (diskFile.exists()) {
+                Bitmap bm = BitmapFactory.decodeFile(diskFile.getPath());
+                if (bm != null) {
+                    mDiskHits.incrementAndGet();
+                    diskFile.setLastModified(System.currentTimeMillis());
+                    return bm;
+                }
+            }
+        }
+        mMisses.incrementAndGet();
+
+        long start = SystemClock.uptimeMillis();
+        Bitmap bm = null;
+        try {
+            if (isRemote) {
+                byte[] data = download(uri);
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                options.inSampleSize = computeSampleSize(options, size);
+                options.inJustDecodeBounds = false;
+                bm = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            } else {
+                ContentResolver resolver = mContext.getContentResolver();
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                decodeStream(resolver, uri, options);
+                options.inSampleSize = computeSampleSize(options, size);
+                options.inJustDecodeBounds = false;
+                bm = decodeStream(resolver, uri, options);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.w("[Image Loader] Couldn't load " + uri + ": " + e);
+        }
+        if (bm == null) return null;
+
+        long duration = SystemClock.uptimeMillis() - start;
+        mDecodeTime.addAndGet(duration);
+        if (mDecodes.incrementAndGet() % STATS_LOG_INTERVAL == 0) {
+            logStats();
+        }
+
+        if (diskFile != null) {
+            writeToDisk(bm, diskFile);
+        }
+        return bm;
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream is = resolver.openInputStream(uri);
+        if (is == null) return null;
+        try {
+            return BitmapFactory.decodeStream(is, null, options);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static byte[] download(Uri uri) throws IOException {
+        InputStream is = new URL(uri.toString()).openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return the largest power of 2 sample size keeping the smallest side of the decoded bitmap at least size pixels
+     */
+    public static int computeSampleSize(BitmapFactory.Options options, int size) {
+        int sampleSize = 1;
+        if (size <= 0 || options.outWidth <= 0 || options.outHeight <= 0) return sampleSize;
+        while (Math.min(options.outWidth, options.outHeight) / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void writeToDisk(Bitmap bm, File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                bm.compress(bm.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, 90, out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            Log.w("[Image Loader] Couldn't write disk cache entry: " + e);
+            tmp.delete();
+        }
+        if (mDecodes.get() % 20 == 0) {
+            trimDiskCache();
+        }
+    }
+
+    private void trimDiskCache() {
+        trimDirectory(mDiskCacheDir, DISK_CACHE_SIZE);
+    }
+
+    /**
+     * Deletes the least recently used files of dir until it's back under 3/4 of maxSize, if it is over maxSize.
+     */
+    public static synchronized void trimDirectory(File dir, long maxSize) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxSize) return;
+
+        // Oldest used first, disk hits touch the file
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long diff = f1.lastModified() - f2.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (total <= maxSize * 3 / 4) break;
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    public static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes());
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
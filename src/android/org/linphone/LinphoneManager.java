@@ -36,15 +36,16 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.provider.Settings;
 import android.provider.Settings.SettingNotFoundException;
@@ -58,6 +59,7 @@ import org.linphone.assistant.AssistantActivity;
 import org.linphone.call.CallActivity;
 import org.linphone.call.CallIncomingActivity;
 import org.linphone.call.CallManager;
+import org.linphone.call.CallQualityRecorder;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.LinphoneContact;
 import org.linphone.core.AccountCreator;
@@ -112,16 +114,10 @@ import org.linphone.receivers.OutgoingCallReceiver;
 import org.linphone.ui.LinphoneMediaScanner;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashSet;
 
 import static android.media.AudioManager.MODE_RINGTONE;
 import static android.media.AudioManager.STREAM_RING;
@@ -151,6 +147,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     private OpenH264DownloadHelperListener mCodecListener;
     private String basePath;
     private static boolean sExited;
+    private static AssetInstaller sAssetInstaller; // started early, not yet used by a Core start
     private boolean mAudioFocused;
     private boolean echoTesterIsRunning;
     private boolean callGsmON;
@@ -176,15 +173,18 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     public String wizardLoginViewDomain = null;
 
     protected LinphoneManager(final Context c) {
-        mUnreadChatsPerRoom = new HashMap();
+        mUnreadCounts = new UnreadCountStore(c);
+        mCallQualityRecorder = new CallQualityRecorder(c);
+        mRinger = new Ringer(c);
+        BandwidthManager.getInstance().init(c);
         sExited = false;
         echoTesterIsRunning = false;
         mServiceContext = c;
         basePath = c.getFilesDir().getAbsolutePath();
-        mLPConfigXsd = basePath + "/lpconfig.xsd";
-        mLinphoneFactoryConfigFile = basePath + "/linphonerc";
-        mConfigFile = basePath + "/.linphonerc";
-        mDynamicConfigFile = basePath + "/assistant_create.rc";
+        mLPConfigXsd = basePath + "/" + LPCONFIG_XSD;
+        mLinphoneFactoryConfigFile = basePath + "/" + FACTORY_CONFIG_FILE;
+        mConfigFile = basePath + "/" + CONFIG_FILE;
+        mDynamicConfigFile = basePath + "/" + DYNAMIC_CONFIG_FILE;
         mChatDatabaseFile = basePath + "/linphone-history.db";
         mCallLogDatabaseFile = basePath + "/linphone-log-history.db";
         mFriendsDatabaseFile = basePath + "/linphone-friends.db";
@@ -212,6 +212,10 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     private static final int LINPHONE_VOLUME_STREAM = STREAM_VOICE_CALL;
     private static final int dbStep = 4;
+    private static final String LPCONFIG_XSD = "lpconfig.xsd";
+    private static final String FACTORY_CONFIG_FILE = "linphonerc";
+    private static final String CONFIG_FILE = ".linphonerc";
+    private static final String DYNAMIC_CONFIG_FILE = "assistant_create.rc";
     /**
      * Called when the activity is first created.
      */
@@ -224,8 +228,10 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     private final String mCallLogDatabaseFile;
     private final String mFriendsDatabaseFile;
     private final String mUserCertsPath;
-    private Timer mTimer;
-    private Map<String, Integer> mUnreadChatsPerRoom;
+    private TaskScheduler.Task mAutoAnswerTask;
+    private CoreScheduler mCoreScheduler = new CoreScheduler(Looper.getMainLooper());
+    private UnreadCountStore mUnreadCounts;
+    private CallQualityRecorder mCallQualityRecorder;
     private LinphoneMediaScanner mMediaScanner;
 
     private void routeAudioToSpeakerHelper(boolean speakerOn) {
@@ -313,6 +319,10 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         return mCodecDownloader;
     }
 
+    public CoreScheduler getCoreScheduler() {
+        return mCoreScheduler;
+    }
+
     public void routeAudioToSpeaker() {
         routeAudioToSpeakerHelper(true);
     }
@@ -579,7 +589,15 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         ContactsManagerDestroy();
         BluetoothManagerDestroy();
         try {
-            mTimer.cancel();
+            mCoreScheduler.stop();
+            mCallQualityRecorder.stop();
+            mRinger.release();
+            if (mAutoAnswerTask != null) {
+                mAutoAnswerTask.cancel();
+                mAutoAnswerTask = null;
+            }
+            RegisterRefresher.getInstance().stop();
+            TaskScheduler.getInstance().logStats();
             destroyLinphoneCore();
         } catch (RuntimeException e) {
             Log.e(e);
@@ -619,27 +637,18 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     private synchronized void startLibLinphone(Context c) {
         try {
-            copyAssetsFromPackage();
+            long start = StartupTrace.begin();
+            takeAssetInstaller(c).await();
+            StartupTrace.end("Assets copy", start);
             //traces alway start with traces enable to not missed first initialization
+            start = StartupTrace.begin();
             mLc = Factory.instance().createCore(mConfigFile, mLinphoneFactoryConfigFile, c);
+            StartupTrace.end("Core creation", start);
             mLc.addListener(this);
-            mLc.start();
-            TimerTask lTask = new TimerTask() {
-                @Override
-                public void run() {
-                    LinphoneUtils.dispatchOnUIThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (mLc != null) {
-                                mLc.iterate();
-                            }
-                        }
-                    });
-                }
-            };
-            /*use schedule instead of scheduleAtFixedRate to avoid iterate from being call in burst after cpu wake up*/
-            mTimer = new Timer("Linphone scheduler");
-            mTimer.schedule(lTask, 0, 20);
+            start = StartupTrace.begin();
+            mLc.start(); // Calls initLiblinphone once the global state is On, through onGlobalStateChanged
+            StartupTrace.end("Core start", start);
+            mCoreScheduler.start(mLc);
         } catch (Exception e) {
             Log.e(e, "Cannot start linphone");
         }
@@ -711,6 +720,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         mLc.setUserCertificatesPath(mUserCertsPath);
         //mLc.setCallErrorTone(Reason.NotFound, mErrorToneFile);
         enableDeviceRingtone(mPrefs.isDeviceRingtoneEnabled());
+        BandwidthManager.getInstance().onCoreStarted();
 
         int availableCores = Runtime.getRuntime().availableProcessors();
         Log.w("MediaStreamer : " + availableCores + " cores detected and configured");
@@ -785,11 +795,34 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         return handsetON;
     }
 
-    private void copyAssetsFromPackage() throws IOException {
-        copyIfNotExist(R.raw.linphonerc_default, mConfigFile);
-        copyFromPackage(R.raw.linphonerc_factory, new File(mLinphoneFactoryConfigFile).getName());
-        copyIfNotExist(R.raw.lpconfig, mLPConfigXsd);
-        copyFromPackage(R.raw.assistant_create, new File(mDynamicConfigFile).getName());
+    /**
+     * Starts copying the raw resources the Core needs to the application files, in the background.
+     * Called early at startup, the next Core start waits for it to complete.
+     */
+    public static synchronized void installAssets(Context c) {
+        if (sAssetInstaller == null) {
+            sAssetInstaller = createAssetInstaller(c);
+            sAssetInstaller.start();
+        }
+    }
+
+    /**
+     * @return the installation started early if any, else a new one: each Core start checks the files again,
+     * so a deleted file or a failed copy is retried
+     */
+    private static synchronized AssetInstaller takeAssetInstaller(Context c) {
+        AssetInstaller installer = sAssetInstaller;
+        sAssetInstaller = null;
+        return installer != null ? installer : createAssetInstaller(c);
+    }
+
+    private static AssetInstaller createAssetInstaller(Context c) {
+        String basePath = c.getFilesDir().getAbsolutePath();
+        return new AssetInstaller(c)
+                .add(R.raw.linphonerc_default, basePath + "/" + CONFIG_FILE, false)
+                .add(R.raw.linphonerc_factory, basePath + "/" + FACTORY_CONFIG_FILE, true)
+                .add(R.raw.lpconfig, basePath + "/" + LPCONFIG_XSD, false)
+                .add(R.raw.assistant_create, basePath + "/" + DYNAMIC_CONFIG_FILE, true);
     }
 
     public void copyIfNotExist(int ressourceId, String target) throws IOException {
@@ -800,16 +833,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     }
 
     public void copyFromPackage(int ressourceId, String target) throws IOException {
-        FileOutputStream lOutputStream = mServiceContext.openFileOutput(target, 0);
-        InputStream lInputStream = mR.openRawResource(ressourceId);
-        int readByte;
-        byte[] buff = new byte[8048];
-        while ((readByte = lInputStream.read(buff)) != -1) {
-            lOutputStream.write(buff, 0, readByte);
-        }
-        lOutputStream.flush();
-        lOutputStream.close();
-        lInputStream.close();
+        AssetInstaller.copy(mR, ressourceId, new File(mServiceContext.getFilesDir(), target));
     }
 
     //public void loadConfig(){
@@ -913,7 +937,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     private Call ringingCall;
 
-    private MediaPlayer mRingerPlayer;
+    private Ringer mRinger;
     private Vibrator mVibrator;
 
     public void onNewSubscriptionRequested(Core lc, Friend lf, String url) {
@@ -962,16 +986,16 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         if (!mServiceContext.getResources().getBoolean(R.bool.disable_chat_message_notification) && !message.isOutgoing()) {
             if (cr.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
                 if (contact != null) {
-                    LinphoneService.instance().displayMessageNotification(cr.getPeerAddress().asStringUriOnly(), contact.getFullName(), contact.getThumbnailUri(), textMessage, cr.getLocalAddress().asString());
+                    LinphoneService.instance().displayMessageNotification(cr.getPeerAddress().asStringUriOnly(), contact.getFullName(), contact.getThumbnailUri(), textMessage, cr.getLocalAddress().asString(), message.getMessageId());
                 } else {
-                    LinphoneService.instance().displayMessageNotification(cr.getPeerAddress().asStringUriOnly(), from.getUsername(), null, textMessage, cr.getLocalAddress().asString());
+                    LinphoneService.instance().displayMessageNotification(cr.getPeerAddress().asStringUriOnly(), from.getUsername(), null, textMessage, cr.getLocalAddress().asString(), message.getMessageId());
                 }
             } else {
                 String subject = cr.getSubject();
                 if (contact != null) {
-                    LinphoneService.instance().displayGroupChatMessageNotification(subject, cr.getPeerAddress().asStringUriOnly(), contact.getFullName(), contact.getThumbnailUri(), textMessage, cr.getLocalAddress().asString());
+                    LinphoneService.instance().displayGroupChatMessageNotification(subject, cr.getPeerAddress().asStringUriOnly(), contact.getFullName(), contact.getThumbnailUri(), textMessage, cr.getLocalAddress().asString(), message.getMessageId());
                 } else {
-                    LinphoneService.instance().displayGroupChatMessageNotification(subject, cr.getPeerAddress().asStringUriOnly(), from.getUsername(), null, textMessage, cr.getLocalAddress().asString());
+                    LinphoneService.instance().displayGroupChatMessageNotification(subject, cr.getPeerAddress().asStringUriOnly(), from.getUsername(), null, textMessage, cr.getLocalAddress().asString(), message.getMessageId());
                 }
             }
         }
@@ -984,6 +1008,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     @Override
     public void onEcCalibrationResult(Core lc, EcCalibratorStatus status, int delay_ms) {
+        mCoreScheduler.releaseFullRate();
         ((AudioManager) getContext().getSystemService(Context.AUDIO_SERVICE)).setMode(AudioManager.MODE_NORMAL);
         mAudioManager.abandonAudioFocus(null);
         Log.i("Set audio mode on 'Normal'");
@@ -994,7 +1019,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         if (state == GlobalState.On) {
             try {
                 Log.e("LinphoneManager", " onGlobalStateChanged ON");
+                long start = StartupTrace.begin();
                 initLiblinphone(lc);
+                StartupTrace.end("initLiblinphone", start);
 
             } catch (IllegalArgumentException iae) {
                 Log.e(iae);
@@ -1006,6 +1033,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     public void onRegistrationStateChanged(final Core lc, final ProxyConfig proxy, final RegistrationState state, final String message) {
         Log.i("New registration state [" + state + "]");
+        if (state == RegistrationState.Ok) {
+            StartupTrace.markFirstRegistration();
+        }
         if (LinphoneManager.getLc().getDefaultProxyConfig() == null) {
             subscribeFriendList(false);
         }
@@ -1042,6 +1072,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     @SuppressLint("Wakelock")
     public void onCallStateChanged(final Core lc, final Call call, final State state, final String message) {
         Log.i("New call state [", state, "]");
+        mCallQualityRecorder.onCallStateChanged(call, state);
+        BandwidthManager.getInstance().onCallStateChanged(call, state);
+        PushWakeUp.onCallStateChanged(call, state);
         if (state == State.IncomingReceived && !call.equals(lc.getCurrentCall())) {
             if (call.getReplacedCall() != null) {
                 // attended transfer
@@ -1055,7 +1088,10 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
                 mLc.declineCall(call, Reason.Busy);
             }
         } else if (state == State.IncomingReceived && (LinphonePreferences.instance().isAutoAnswerEnabled()) && !getCallGsmON()) {
-            TimerTask lTask = new TimerTask() {
+            if (mAutoAnswerTask != null) {
+                mAutoAnswerTask.cancel();
+            }
+            mAutoAnswerTask = TaskScheduler.getInstance().schedule("Auto answer", new Runnable() {
                 @Override
                 public void run() {
                     if (mLc != null) {
@@ -1069,16 +1105,15 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
                         }
                     }
                 }
-            };
-            mTimer = new Timer("Auto answer");
-            mTimer.schedule(lTask, mPrefs.getAutoAnswerTime());
+            }, mPrefs.getAutoAnswerTime());
         } else if (state == State.IncomingReceived || (state == State.IncomingEarlyMedia && mR.getBoolean(R.bool.allow_ringing_while_early_media))) {
             // Brighten screen for at least 10 seconds
             if (mLc.getCallsNb() == 1) {
+                long incomingTime = SystemClock.elapsedRealtime();
                 requestAudioFocus(STREAM_RING);
 
                 ringingCall = call;
-                startRinging();
+                startRinging(incomingTime);
                 // otherwise there is the beep
             }
         } else if (call == ringingCall && isRinging) {
@@ -1158,7 +1193,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     @Override
     public void onChatRoomStateChanged(Core lc, ChatRoom cr, ChatRoom.State state) {
-
+        if (state == ChatRoom.State.Deleted) {
+            removeUnreadCountForChatRoom(cr);
+        }
     }
 
     public void onCallEncryptionChanged(Core lc, Call call,
@@ -1173,7 +1210,15 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         int oldVolume = mAudioManager.getStreamVolume(STREAM_VOICE_CALL);
         int maxVolume = mAudioManager.getStreamMaxVolume(STREAM_VOICE_CALL);
         mAudioManager.setStreamVolume(STREAM_VOICE_CALL, maxVolume, 0);
-        mLc.startEchoCancellerCalibration();
+        mCoreScheduler.acquireFullRate();
+        try {
+            mLc.startEchoCancellerCalibration();
+        } catch (CoreException e) {
+            // onEcCalibrationResult won't be called to release it
+            mCoreScheduler.releaseFullRate();
+            mAudioManager.setStreamVolume(STREAM_VOICE_CALL, oldVolume, 0);
+            throw e;
+        }
         mAudioManager.setStreamVolume(STREAM_VOICE_CALL, oldVolume, 0);
     }
 
@@ -1190,8 +1235,15 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
             String sampleRateProperty = mAudioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
             sampleRate = Integer.parseInt(sampleRateProperty);
         }
-        /*int status = */
-        mLc.startEchoTester(sampleRate);
+        mCoreScheduler.acquireFullRate();
+        try {
+            /*int status = */
+            mLc.startEchoTester(sampleRate);
+        } catch (CoreException e) {
+            // stopEchoTester only releases it once the tester is running
+            mCoreScheduler.releaseFullRate();
+            throw e;
+        }
         /*if (status > 0)*/
         echoTesterIsRunning = true;
 		/*else {
@@ -1206,6 +1258,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     }
 
     public int stopEchoTester() throws CoreException {
+        if (echoTesterIsRunning) {
+            mCoreScheduler.releaseFullRate();
+        }
         echoTesterIsRunning = false;
         /*int status = */
         mLc.stopEchoTester();
@@ -1232,12 +1287,14 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     public void enableDeviceRingtone(boolean use) {
         if (use) {
             mLc.setRing(null);
+            mRinger.prepare();
         } else {
             mLc.setRing(mRingSoundFile);
+            mRinger.release();
         }
     }
 
-    private synchronized void startRinging() {
+    private synchronized void startRinging(long incomingTime) {
         if (!LinphonePreferences.instance().isDeviceRingtoneEnabled()) {
             // Enable speaker audio route, linphone library will do the ringing itself automatically
             routeAudioToSpeaker();
@@ -1257,27 +1314,9 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
                 long[] patern = {0, 1000, 1000};
                 mVibrator.vibrate(patern, 1);
             }
-            if (mRingerPlayer == null) {
+            if (!mRinger.isRinging()) {
                 requestAudioFocus(STREAM_RING);
-                mRingerPlayer = new MediaPlayer();
-                mRingerPlayer.setAudioStreamType(STREAM_RING);
-
-                String ringtone = LinphonePreferences.instance().getRingtone(Settings.System.DEFAULT_RINGTONE_URI.toString());
-                try {
-                    if (ringtone.startsWith("content://")) {
-                        mRingerPlayer.setDataSource(mServiceContext, Uri.parse(ringtone));
-                    } else {
-                        FileInputStream fis = new FileInputStream(ringtone);
-                        mRingerPlayer.setDataSource(fis.getFD());
-                        fis.close();
-                    }
-                } catch (IOException e) {
-                    Log.e(e, "Cannot set ringtone");
-                }
-
-                mRingerPlayer.prepare();
-                mRingerPlayer.setLooping(true);
-                mRingerPlayer.start();
+                mRinger.start(incomingTime);
             } else {
                 Log.w("already ringing");
             }
@@ -1288,11 +1327,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     }
 
     private synchronized void stopRinging() {
-        if (mRingerPlayer != null) {
-            mRingerPlayer.stop();
-            mRingerPlayer.release();
-            mRingerPlayer = null;
-        }
+        mRinger.stop();
         if (mVibrator != null) {
             mVibrator.cancel();
         }
@@ -1515,6 +1550,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
         LinphonePreferences prefs = LinphonePreferences.instance();
         if (state == ConfiguringState.Successful) {
+            prefs.invalidateCache(); // The provisioning may have changed any entry
             if (prefs.isProvisioningLoginViewEnabled()) {
                 ProxyConfig proxyConfig = lc.createProxyConfig();
                 Address addr = proxyConfig.getIdentityAddress();
@@ -1540,7 +1576,7 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
         if (result == VersionUpdateCheckResult.NewVersionAvailable) {
             final String urlToUse = url;
             final String versionAv = version;
-            mHandler.postDelayed(new Runnable() {
+            TaskScheduler.getInstance().schedule("Update available dialog", new Runnable() {
                 @Override
                 public void run() {
                     AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
@@ -1666,21 +1702,45 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
     }
 
     private void updateMissedChatCount() {
-        for (ChatRoom cr : LinphoneManager.getLc().getChatRooms()) {
+        ChatRoom[] rooms = mLc.getChatRooms();
+        if (mUnreadCounts.restore()) {
+            // Counts are written as they change, so only the rooms updated since the last write
+            // (process killed before it reached the disk) need to be checked against the Core
+            long lastWriteTime = mUnreadCounts.getLastWriteTime() / 1000; // rooms update times are in seconds
+            HashSet<String> keys = new HashSet<>();
+            int checked = 0;
+            for (ChatRoom room : rooms) {
+                keys.add(room.getPeerAddress().asStringUriOnly());
+                if (room.getLastUpdateTime() >= lastWriteTime) {
+                    updateUnreadCountForChatRoom(room, room.getUnreadMessagesCount());
+                    checked++;
+                }
+            }
+            mUnreadCounts.retain(keys);
+            Log.i("[Unread Counts] Checked " + checked + " of " + rooms.length + " chat rooms against the Core");
+            return;
+        }
+
+        for (ChatRoom cr : rooms) {
             updateUnreadCountForChatRoom(cr, cr.getUnreadMessagesCount());
         }
+        mUnreadCounts.save();
+    }
+
+    public CallQualityRecorder getCallQualityRecorder() {
+        return mCallQualityRecorder;
+    }
+
+    public UnreadCountStore getUnreadCounts() {
+        return mUnreadCounts;
     }
 
     public int getUnreadMessageCount() {
-        int count = 0;
-        for (Integer unread : mUnreadChatsPerRoom.values()) {
-            count += unread;
-        }
-        return count;
+        return mUnreadCounts.getTotal();
     }
 
     public void updateUnreadCountForChatRoom(String key, Integer value) {
-        mUnreadChatsPerRoom.put(key, value);
+        mUnreadCounts.set(key, value);
     }
 
 
@@ -1691,19 +1751,16 @@ public class LinphoneManager implements CoreListener, SensorEventListener, Accou
 
     public int getUnreadCountForChatRoom(ChatRoom cr) {
         String key = cr.getPeerAddress().asStringUriOnly();
-        if (mUnreadChatsPerRoom.containsKey(key)) {
-            return mUnreadChatsPerRoom.get(key);
-        }
-        return 0;
+        return mUnreadCounts.get(key);
+    }
+
+    public void removeUnreadCountForChatRoom(ChatRoom cr) {
+        mUnreadCounts.remove(cr.getPeerAddress().asStringUriOnly());
     }
 
     private void increaseUnreadCountForChatRoom(ChatRoom cr) {
         String key = cr.getPeerAddress().asStringUriOnly();
-        if (mUnreadChatsPerRoom.containsKey(key)) {
-            mUnreadChatsPerRoom.put(key, mUnreadChatsPerRoom.get(key) + 1);
-        } else {
-            mUnreadChatsPerRoom.put(key, 1);
-        }
+        mUnreadCounts.increment(key);
     }
 
     public void onQrcodeFound(Core lc, String something) {
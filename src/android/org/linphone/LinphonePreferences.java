@@ -22,6 +22,8 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.text.TextUtils;
 
 import org.linphone.core.AVPFMode;
 import org.linphone.core.Address;
@@ -54,6 +56,11 @@ public class LinphonePreferences {
     private static LinphonePreferences instance;
     private Context mContext;
     private String basePath;
+    private final PreferenceCache mCache = new PreferenceCache();
+    private Config mCachedConfig; // the config the cached values were read from
+    private Config mCorelessConfig; // used while the Core isn't running
+    private String mCorelessConfigPath;
+    private long mCorelessConfigLastModified;
 
     public static final synchronized LinphonePreferences instance() {
         if (instance == null) {
@@ -87,59 +94,126 @@ public class LinphonePreferences {
     }
 
     public Config getConfig() {
+        Config config;
         Core lc = getLc();
         if (lc != null) {
-            return lc.getConfig();
+            config = lc.getConfig();
+            mCorelessConfig = null; // The Core may write the file, read it again once it's gone
+        } else {
+            config = getCorelessConfig();
+        }
+
+        if (config != mCachedConfig) {
+            mCache.clear();
+            mCachedConfig = config;
         }
+        return config;
+    }
+
+    /**
+     * To be called when the config has been changed without going through these preferences
+     * (remote provisioning, xml import, ...).
+     */
+    public void invalidateCache() {
+        mCache.clear();
+    }
+
+    public String getCacheStats() {
+        return mCache.getStats();
+    }
 
+    /**
+     * The config read from the file (or the default one), parsed once and kept as long as the file doesn't change.
+     */
+    private Config getCorelessConfig() {
+        String path = null;
         if (!LinphoneManager.isInstanciated()) {
             File linphonerc = new File(basePath + "/.linphonerc");
             if (linphonerc.exists()) {
-                return Factory.instance().createConfig(linphonerc.getAbsolutePath());
-            } else if (mContext != null) {
-                InputStream inputStream = mContext.getResources().openRawResource(R.raw.linphonerc_default);
-                InputStreamReader inputreader = new InputStreamReader(inputStream);
-                BufferedReader buffreader = new BufferedReader(inputreader);
-                StringBuilder text = new StringBuilder();
-                String line;
-                try {
-                    while ((line = buffreader.readLine()) != null) {
-                        text.append(line);
-                        text.append('\n');
-                    }
-                } catch (IOException ioe) {
-                    Log.e(ioe);
-                }
-                return Factory.instance().createConfigFromString(text.toString());
+                path = linphonerc.getAbsolutePath();
+            } else if (mContext == null) {
+                return null;
             }
         } else {
-            return Factory.instance().createConfig(LinphoneManager.getInstance().mConfigFile);
+            path = LinphoneManager.getInstance().mConfigFile;
+        }
+
+        long lastModified = path != null ? new File(path).lastModified() : 0;
+        if (mCorelessConfig != null && TextUtils.equals(path, mCorelessConfigPath) && lastModified == mCorelessConfigLastModified) {
+            return mCorelessConfig;
         }
-        return null;
+
+        long start = SystemClock.uptimeMillis();
+        if (path != null) {
+            mCorelessConfig = Factory.instance().createConfig(path);
+        } else {
+            InputStream inputStream = mContext.getResources().openRawResource(R.raw.linphonerc_default);
+            InputStreamReader inputreader = new InputStreamReader(inputStream);
+            BufferedReader buffreader = new BufferedReader(inputreader);
+            StringBuilder text = new StringBuilder();
+            String line;
+            try {
+                while ((line = buffreader.readLine()) != null) {
+                    text.append(line);
+                    text.append('\n');
+                }
+            } catch (IOException ioe) {
+                Log.e(ioe);
+            }
+            mCorelessConfig = Factory.instance().createConfigFromString(text.toString());
+        }
+        mCorelessConfigPath = path;
+        mCorelessConfigLastModified = lastModified;
+        Log.i("[Preferences] Config " + (path != null ? path : "default") + " read in " + (SystemClock.uptimeMillis() - start) + " ms");
+        return mCorelessConfig;
+    }
+
+    private boolean getConfigBool(String section, String key, boolean defaultValue) {
+        return mCache.getBool(getConfig(), section, key, defaultValue);
+    }
+
+    private int getConfigInt(String section, String key, int defaultValue) {
+        return mCache.getInt(getConfig(), section, key, defaultValue);
+    }
+
+    private String getConfigString(String section, String key, String defaultValue) {
+        return mCache.getString(getConfig(), section, key, defaultValue);
+    }
+
+    private void setConfigBool(String section, String key, boolean value) {
+        mCache.setBool(getConfig(), section, key, value);
+    }
+
+    private void setConfigInt(String section, String key, int value) {
+        mCache.setInt(getConfig(), section, key, value);
+    }
+
+    private void setConfigString(String section, String key, String value) {
+        mCache.setString(getConfig(), section, key, value);
     }
 
     public void removePreviousVersionAuthInfoRemoval() {
-        getConfig().setBool("sip", "store_auth_info", true);
+        setConfigBool("sip", "store_auth_info", true);
     }
 
     // App settings
     public boolean isFirstLaunch() {
-        return getConfig().getBool("app", "first_launch", true);
+        return getConfigBool("app", "first_launch", true);
     }
 
     public void firstLaunchSuccessful() {
-        getConfig().setBool("app", "first_launch", false);
+        setConfigBool("app", "first_launch", false);
     }
 
     public String getRingtone(String defaultRingtone) {
-        String ringtone = getConfig().getString("app", "ringtone", defaultRingtone);
+        String ringtone = getConfigString("app", "ringtone", defaultRingtone);
         if (ringtone == null || ringtone.length() == 0)
             ringtone = defaultRingtone;
         return ringtone;
     }
 
     public void setRingtone(String ringtonePath) {
-        getConfig().setString("app", "ringtone", ringtonePath);
+        setConfigString("app", "ringtone", ringtonePath);
 
     }
 
@@ -761,11 +835,11 @@ public class LinphonePreferences {
     }
 
     public boolean isFriendlistsubscriptionEnabled() {
-        return getConfig().getBool("app", "friendlist_subscription_enabled", false);
+        return getConfigBool("app", "friendlist_subscription_enabled", false);
     }
 
     public void enabledFriendlistSubscription(boolean enabled) {
-        getConfig().setBool("app", "friendlist_subscription_enabled", enabled);
+        setConfigBool("app", "friendlist_subscription_enabled", enabled);
 
     }
 
@@ -875,25 +949,25 @@ public class LinphonePreferences {
     }
 
     public int getEchoCalibration() {
-        return getConfig().getInt("sound", "ec_delay", -1);
+        return getConfigInt("sound", "ec_delay", -1);
     }
 
     public boolean isEchoConfigurationUpdated() {
-        return getConfig().getBool("app", "ec_updated", false);
+        return getConfigBool("app", "ec_updated", false);
     }
 
     public void echoConfigurationUpdated() {
-        getConfig().setBool("app", "ec_updated", true);
+        setConfigBool("app", "ec_updated", true);
     }
     // End of audio settings
 
     // Video settings
     public boolean useFrontCam() {
-        return getConfig().getBool("app", "front_camera_default", true);
+        return getConfigBool("app", "front_camera_default", true);
     }
 
     public void setFrontCamAsDefault(boolean frontcam) {
-        getConfig().setBool("app", "front_camera_default", frontcam);
+        setConfigBool("app", "front_camera_default", frontcam);
     }
 
     public boolean isVideoEnabled() {
@@ -952,7 +1026,7 @@ public class LinphonePreferences {
 
     public String getPreferredVideoSize() {
         //Core can only return video size (width and height), not the name
-        return getConfig().getString("video", "size", "qvga");
+        return getConfigString("video", "size", "qvga");
     }
 
     public void setPreferredVideoSize(String preferredVideoSize) {
@@ -960,6 +1034,18 @@ public class LinphonePreferences {
         getLc().setPreferredVideoSizeByName(preferredVideoSize);
     }
 
+    /**
+     * The preferred video size to put back once the bandwidth manager stops lowering it, null if not lowered.
+     * Kept in the config so it can be put back at next start if the application was killed during the call.
+     */
+    public String getVideoSizeToRestore() {
+        return getConfigString("app", "video_size_to_restore", null);
+    }
+
+    public void setVideoSizeToRestore(String size) {
+        setConfigString("app", "video_size_to_restore", size);
+    }
+
     public int getPreferredVideoFps() {
         if (getLc() == null) return 0;
         return (int) getLc().getPreferredFramerate();
@@ -1024,19 +1110,19 @@ public class LinphonePreferences {
     }
 
     public String getVoiceMailUri() {
-        return getConfig().getString("app", "voice_mail", null);
+        return getConfigString("app", "voice_mail", null);
     }
 
     public void setVoiceMailUri(String uri) {
-        getConfig().setString("app", "voice_mail", uri);
+        setConfigString("app", "voice_mail", uri);
     }
 
     public boolean getNativeDialerCall() {
-        return getConfig().getBool("app", "native_dialer_call", false);
+        return getConfigBool("app", "native_dialer_call", false);
     }
 
     public void setNativeDialerCall(boolean use) {
-        getConfig().setBool("app", "native_dialer_call", use);
+        setConfigBool("app", "native_dialer_call", use);
     }
 // End of call settings
 
@@ -1056,7 +1142,7 @@ public class LinphonePreferences {
     }
 
     public void useRandomPort(boolean enabled, boolean apply) {
-        getConfig().setBool("app", "random_port", enabled);
+        setConfigBool("app", "random_port", enabled);
         if (apply) {
             if (enabled) {
                 setSipPort(LINPHONE_CORE_RANDOM_PORT);
@@ -1067,7 +1153,7 @@ public class LinphonePreferences {
     }
 
     public boolean isUsingRandomPort() {
-        return getConfig().getBool("app", "random_port", true);
+        return getConfigBool("app", "random_port", true);
     }
 
     public String getSipPort() {
@@ -1205,7 +1291,7 @@ public class LinphonePreferences {
     }
 
     public void setPushNotificationEnabled(boolean enable) {
-        getConfig().setBool("app", "push_notification", enable);
+        setConfigBool("app", "push_notification", enable);
 
         Core lc = getLc();
         if (lc == null) {
@@ -1254,17 +1340,17 @@ public class LinphonePreferences {
     }
 
     public boolean isPushNotificationEnabled() {
-        return getConfig().getBool("app", "push_notification", true);
+        return getConfigBool("app", "push_notification", true);
     }
 
     public void setPushNotificationRegistrationID(String regId) {
         if (getConfig() == null) return;
-        getConfig().setString("app", "push_notification_regid", (regId != null) ? regId : "");
+        setConfigString("app", "push_notification_regid", (regId != null) ? regId : "");
         setPushNotificationEnabled(isPushNotificationEnabled());
     }
 
     public String getPushNotificationRegistrationID() {
-        return getConfig().getString("app", "push_notification_regid", null);
+        return getConfigString("app", "push_notification_regid", null);
     }
 
     public void useIpv6(Boolean enable) {
@@ -1280,37 +1366,37 @@ public class LinphonePreferences {
 
     // Advanced settings
     public void setDebugEnabled(boolean enabled) {
-        getConfig().setBool("app", "debug", enabled);
+        setConfigBool("app", "debug", enabled);
         LinphoneUtils.initLoggingService(enabled, mContext.getString(R.string.app_name));
     }
 
     public boolean isDebugEnabled() {
-        return getConfig().getBool("app", "debug", false);
+        return getConfigBool("app", "debug", false);
     }
 
     public void setJavaLogger(boolean enabled) {
-        getConfig().setBool("app", "java_logger", enabled);
+        setConfigBool("app", "java_logger", enabled);
         LinphoneUtils.initLoggingService(isDebugEnabled(), mContext.getString(R.string.app_name));
     }
 
     public boolean useJavaLogger() {
-        return getConfig().getBool("app", "java_logger", false);
+        return getConfigBool("app", "java_logger", false);
     }
 
     public void setBackgroundModeEnabled(boolean enabled) {
-        getConfig().setBool("app", "background_mode", enabled);
+        setConfigBool("app", "background_mode", enabled);
     }
 
     public boolean isBackgroundModeEnabled() {
-        return getConfig().getBool("app", "background_mode", true);
+        return getConfigBool("app", "background_mode", true);
     }
 
     public boolean isAutoStartEnabled() {
-        return getConfig().getBool("app", "auto_start", false);
+        return getConfigBool("app", "auto_start", false);
     }
 
     public void setAutoStart(boolean autoStartEnabled) {
-        getConfig().setBool("app", "auto_start", autoStartEnabled);
+        setConfigBool("app", "auto_start", autoStartEnabled);
     }
 
     public String getSharingPictureServerUrl() {
@@ -1417,34 +1503,34 @@ public class LinphonePreferences {
     }
 
     public String getTunnelMode() {
-        return getConfig().getString("app", "tunnel", null);
+        return getConfigString("app", "tunnel", null);
     }
 
     public void setTunnelMode(String mode) {
-        getConfig().setString("app", "tunnel", mode);
+        setConfigString("app", "tunnel", mode);
         LinphoneManager.getInstance().initTunnelFromConf();
     }
     // End of tunnel settings
 
     public boolean isProvisioningLoginViewEnabled() {
 
-        return (getConfig() != null) ? getConfig().getBool("app", "show_login_view", false) : false;
+        return (getConfig() != null) ? getConfigBool("app", "show_login_view", false) : false;
     }
 
     public void disableProvisioningLoginView() {
         if (isProvisioningLoginViewEnabled()) { // Only do it if it was previously enabled
-            getConfig().setBool("app", "show_login_view", false);
+            setConfigBool("app", "show_login_view", false);
         } else {
             Log.w("Remote provisioning login view wasn't enabled, ignoring");
         }
     }
 
     public void firstRemoteProvisioningSuccessful() {
-        getConfig().setBool("app", "first_remote_provisioning", false);
+        setConfigBool("app", "first_remote_provisioning", false);
     }
 
     public boolean isFirstRemoteProvisioning() {
-        return getConfig().getBool("app", "first_remote_provisioning", true);
+        return getConfigBool("app", "first_remote_provisioning", true);
     }
 
     public boolean adaptiveRateControlEnabled() {
@@ -1458,30 +1544,30 @@ public class LinphonePreferences {
     }
 
     public int getCodecBitrateLimit() {
-        return getConfig().getInt("audio", "codec_bitrate_limit", 36);
+        return getConfigInt("audio", "codec_bitrate_limit", 36);
     }
 
     public void setCodecBitrateLimit(int bitrate) {
-        getConfig().setInt("audio", "codec_bitrate_limit", bitrate);
+        setConfigInt("audio", "codec_bitrate_limit", bitrate);
     }
 
     public void contactsMigrationDone() {
-        getConfig().setBool("app", "contacts_migration_done", true);
+        setConfigBool("app", "contacts_migration_done", true);
     }
 
     public boolean isContactsMigrationDone() {
-        return getConfig().getBool("app", "contacts_migration_done", false);
+        return getConfigBool("app", "contacts_migration_done", false);
     }
 
     public String getInAppPurchaseValidatingServerUrl() {
-        return getConfig().getString("in-app-purchase", "server_url", null);
+        return getConfigString("in-app-purchase", "server_url", null);
     }
 
     public Purchasable getInAppPurchasedItem() {
-        String id = getConfig().getString("in-app-purchase", "purchase_item_id", null);
-        String payload = getConfig().getString("in-app-purchase", "purchase_item_payload", null);
-        String signature = getConfig().getString("in-app-purchase", "purchase_item_signature", null);
-        String username = getConfig().getString("in-app-purchase", "purchase_item_username", null);
+        String id = getConfigString("in-app-purchase", "purchase_item_id", null);
+        String payload = getConfigString("in-app-purchase", "purchase_item_payload", null);
+        String signature = getConfigString("in-app-purchase", "purchase_item_signature", null);
+        String username = getConfigString("in-app-purchase", "purchase_item_username", null);
 
         Purchasable item = new Purchasable(id).setPayloadAndSignature(payload, signature).setUserData(username);
         return item;
@@ -1491,15 +1577,15 @@ public class LinphonePreferences {
         if (item == null)
             return;
 
-        getConfig().setString("in-app-purchase", "purchase_item_id", item.getId());
-        getConfig().setString("in-app-purchase", "purchase_item_payload", item.getPayload());
-        getConfig().setString("in-app-purchase", "purchase_item_signature", item.getPayloadSignature());
-        getConfig().setString("in-app-purchase", "purchase_item_username", item.getUserData());
+        setConfigString("in-app-purchase", "purchase_item_id", item.getId());
+        setConfigString("in-app-purchase", "purchase_item_payload", item.getPayload());
+        setConfigString("in-app-purchase", "purchase_item_signature", item.getPayloadSignature());
+        setConfigString("in-app-purchase", "purchase_item_username", item.getUserData());
     }
 
     public ArrayList<String> getInAppPurchasables() {
         ArrayList<String> purchasables = new ArrayList<String>();
-        String list = getConfig().getString("in-app-purchase", "purchasable_items_ids", null);
+        String list = getConfigString("in-app-purchase", "purchasable_items_ids", null);
         if (list != null) {
             for (String purchasable : list.split(";")) {
                 if (purchasable.length() > 0) {
@@ -1511,59 +1597,59 @@ public class LinphonePreferences {
     }
 
     public String getXmlrpcUrl() {
-        return getConfig().getString("assistant", "xmlrpc_url", null);
+        return getConfigString("assistant", "xmlrpc_url", null);
     }
 
     public void setXmlrpcUrl(String url) {
-        getConfig().setString("assistant", "xmlrpc_url", url);
+        setConfigString("assistant", "xmlrpc_url", url);
     }
 
     public String getInappPopupTime() {
-        return getConfig().getString("app", "inapp_popup_time", null);
+        return getConfigString("app", "inapp_popup_time", null);
     }
 
     public void setInappPopupTime(String date) {
-        getConfig().setString("app", "inapp_popup_time", date);
+        setConfigString("app", "inapp_popup_time", date);
     }
 
     public void setLinkPopupTime(String date) {
-        getConfig().setString("app", "link_popup_time", date);
+        setConfigString("app", "link_popup_time", date);
     }
 
     public String getLinkPopupTime() {
-        return getConfig().getString("app", "link_popup_time", null);
+        return getConfigString("app", "link_popup_time", null);
     }
 
     public String getXmlRpcServerUrl() {
-        return getConfig().getString("app", "server_url", null);
+        return getConfigString("app", "server_url", null);
     }
 
     public String getDebugPopupAddress() {
-        return getConfig().getString("app", "debug_popup_magic", null);
+        return getConfigString("app", "debug_popup_magic", null);
     }
 
     public String getActivityToLaunchOnIncomingReceived() {
-        return getConfig().getString("app", "incoming_call_activity", "org.linphone.activities.LinphoneActivity");
+        return getConfigString("app", "incoming_call_activity", "org.linphone.activities.LinphoneActivity");
     }
 
     public void setActivityToLaunchOnIncomingReceived(String name) {
-        getConfig().setString("app", "incoming_call_activity", name);
+        setConfigString("app", "incoming_call_activity", name);
     }
 
     public boolean getServiceNotificationVisibility() {
-        return getConfig().getBool("app", "show_service_notification", false);
+        return getConfigBool("app", "show_service_notification", false);
     }
 
     public void setServiceNotificationVisibility(boolean enable) {
-        getConfig().setBool("app", "show_service_notification", enable);
+        setConfigBool("app", "show_service_notification", enable);
     }
 
     public boolean isOverlayEnabled() {
-        return getConfig().getBool("app", "display_overlay", false);
+        return getConfigBool("app", "display_overlay", false);
     }
 
     public void enableOverlay(boolean enable) {
-        getConfig().setBool("app", "display_overlay", enable);
+        setConfigBool("app", "display_overlay", enable);
     }
 
     public LimeState limeEnabled() {
@@ -1581,7 +1667,7 @@ public class LinphonePreferences {
     }
 
     public boolean firstTimeAskingForPermission(String permission, boolean toggle) {
-        boolean firstTime = getConfig().getBool("app", permission, true);
+        boolean firstTime = getConfigBool("app", permission, true);
         if (toggle) {
             permissionHasBeenAsked(permission);
         }
@@ -1589,59 +1675,59 @@ public class LinphonePreferences {
     }
 
     public void permissionHasBeenAsked(String permission) {
-        getConfig().setBool("app", permission, false);
+        setConfigBool("app", permission, false);
     }
 
     public boolean isDeviceRingtoneEnabled() {
         int readExternalStorage = mContext.getPackageManager().checkPermission(Manifest.permission.READ_EXTERNAL_STORAGE, mContext.getPackageName());
-        return getConfig().getBool("app", "device_ringtone", true) && readExternalStorage == PackageManager.PERMISSION_GRANTED;
+        return getConfigBool("app", "device_ringtone", true) && readExternalStorage == PackageManager.PERMISSION_GRANTED;
     }
 
     public void enableDeviceRingtone(boolean enable) {
-        getConfig().setBool("app", "device_ringtone", enable);
+        setConfigBool("app", "device_ringtone", enable);
     }
 
     public boolean isBisFeatureEnabled() {
-        return getConfig().getBool("app", "bis_feature", true);
+        return getConfigBool("app", "bis_feature", true);
     }
 
     public void enableBisFeature(boolean enable) {
-        getConfig().setBool("app", "bis_feature", enable);
+        setConfigBool("app", "bis_feature", enable);
     }
 
     public boolean isAutoAnswerEnabled() {
-        return getConfig().getBool("app", "auto_answer", false);
+        return getConfigBool("app", "auto_answer", false);
     }
 
     public void enableAutoAnswer(boolean enable) {
-        getConfig().setBool("app", "auto_answer", enable);
+        setConfigBool("app", "auto_answer", enable);
     }
 
     public void setAutoAnswerTime(int time) {
-        getConfig().setInt("app", "auto_answer_delay", time);
+        setConfigInt("app", "auto_answer_delay", time);
     }
 
     public int getAutoAnswerTime() {
-        return getConfig().getInt("app", "auto_answer_delay", 0);
+        return getConfigInt("app", "auto_answer_delay", 0);
     }
 
     public int getCodeLength() {
-        return getConfig().getInt("app", "activation_code_length", 0);
+        return getConfigInt("app", "activation_code_length", 0);
     }
 
     public void disableFriendsStorage() {
-        getConfig().setBool("misc", "store_friends", false);
+        setConfigBool("misc", "store_friends", false);
     }
 
     public void enableFriendsStorage() {
-        getConfig().setBool("misc", "store_friends", true);
+        setConfigBool("misc", "store_friends", true);
     }
 
     public boolean isFriendsStorageEnabled() {
-        return getConfig().getBool("misc", "store_friends", true);
+        return getConfigBool("misc", "store_friends", true);
     }
 
     public boolean useBasicChatRoomFor1To1() {
-        return getConfig().getBool("app", "prefer_basic_chat_room", false);
+        return getConfigBool("app", "prefer_basic_chat_room", false);
     }
 }
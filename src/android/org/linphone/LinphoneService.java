@@ -65,7 +65,6 @@ import org.linphone.ui.LinphoneOverlay;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Linphone service, reacting to Incoming calls, ...<br />
@@ -94,10 +93,41 @@ public final class LinphoneService extends Service {
     private final static int MISSED_NOTIF_ID = 5;
     private final static int SAS_NOTIF_ID = 6;
 
+    public interface ServiceReadyListener {
+        void onServiceReady();
+    }
+
+    private static final ArrayList<ServiceReadyListener> sReadyListeners = new ArrayList<>();
+
     public static boolean isReady() {
         return instance != null && instance.mTestDelayElapsed;
     }
 
+    /**
+     * Calls the listener once the service is ready (LinphoneManager created and started), right away if it already is.
+     * Listeners are called once, on the main thread. Must be called from the main thread.
+     */
+    public static void whenReady(ServiceReadyListener listener) {
+        if (isReady()) {
+            listener.onServiceReady();
+        } else if (!sReadyListeners.contains(listener)) {
+            sReadyListeners.add(listener);
+        }
+    }
+
+    public static void removeReadyListener(ServiceReadyListener listener) {
+        sReadyListeners.remove(listener);
+    }
+
+    private static void notifyReady() {
+        StartupTrace.mark("Service ready");
+        ArrayList<ServiceReadyListener> listeners = new ArrayList<>(sReadyListeners);
+        sReadyListeners.clear();
+        for (ServiceReadyListener listener : listeners) {
+            listener.onServiceReady();
+        }
+    }
+
     /**
      * @throws RuntimeException service not instantiated
      */
@@ -111,6 +141,8 @@ public final class LinphoneService extends Service {
 
     //	private boolean mTestDelayElapsed; // add a timer for testing
     private boolean mTestDelayElapsed = true; // no timer
+    private static final long DEFERRED_CONTACTS_INIT_DELAY = 15000;
+    private TaskScheduler.Task mDeferredContactsInit;
     private NotificationManager mNM;
 
     private Notification mNotif;
@@ -126,13 +158,7 @@ public final class LinphoneService extends Service {
     private LinphoneOverlay mOverlay;
     private Application.ActivityLifecycleCallbacks activityCallbacks;
 
-    private class Notified {
-        int notificationId;
-        int numberOfUnreadMessage;
-    }
-
-    private HashMap<String, Notified> mChatNotifMap;
-    private int mLastNotificationId;
+    private ChatNotificationAggregator mChatNotifications;
 
     public void setCurrentlyDisplayedChatRoom(String address) {
         if (address != null) {
@@ -141,11 +167,7 @@ public final class LinphoneService extends Service {
     }
 
     private void resetMessageNotifCount(String address) {
-        Notified notif = mChatNotifMap.get(address);
-        if (notif != null) {
-            notif.numberOfUnreadMessage = 0;
-            mNM.cancel(notif.notificationId);
-        }
+        mChatNotifications.reset(address);
     }
 
     /*Believe me or not, but knowing the application visibility state on Android is a nightmare.
@@ -156,29 +178,19 @@ public final class LinphoneService extends Service {
         private boolean mActive = false;
         private int mRunningActivities = 0;
 
-        class InactivityChecker implements Runnable {
-            private boolean isCanceled;
-
-            public void cancel() {
-                isCanceled = true;
-            }
-
+        private final Runnable mInactivityCheck = new Runnable() {
             @Override
             public void run() {
                 synchronized (LinphoneService.this) {
-                    if (!isCanceled) {
-                        if (ActivityMonitor.this.mRunningActivities == 0 && mActive) {
-                            mActive = false;
-                            LinphoneService.this.onBackgroundMode();
-                        }
+                    if (ActivityMonitor.this.mRunningActivities == 0 && mActive) {
+                        mActive = false;
+                        LinphoneService.this.onBackgroundMode();
                     }
                 }
             }
-        }
-
-        ;
+        };
 
-        private InactivityChecker mLastChecker;
+        private TaskScheduler.Task mLastChecker;
 
         @Override
         public synchronized void onActivityCreated(Activity activity, Bundle savedInstanceState) {
@@ -234,8 +246,7 @@ public final class LinphoneService extends Service {
 
         void startInactivityChecker() {
             if (mLastChecker != null) mLastChecker.cancel();
-            LinphoneService.this.mHandler.postDelayed(
-                    (mLastChecker = new InactivityChecker()), 2000);
+            mLastChecker = TaskScheduler.getInstance().schedule("Inactivity check", mInactivityCheck, 2000);
         }
 
         void checkActivity() {
@@ -316,7 +327,10 @@ public final class LinphoneService extends Service {
             return START_REDELIVER_INTENT;
         }
 
+        long start = StartupTrace.begin();
         LinphoneManager.createAndStart(LinphoneService.this);
+        StartupTrace.end("LinphoneManager start", start);
+        Log.i("[Service] Preferences cache: " + LinphonePreferences.instance().getCacheStats());
 
         instance = this; // instance is ready once linphone manager has been created
         LinphoneManager.getLc().addListener(mListener = new CoreListenerStub() {
@@ -411,17 +425,31 @@ public final class LinphoneService extends Service {
             startForegroundCompat(NOTIF_ID, mNotif);
         }
 
-        if (!Version.sdkAboveOrEqual(Version.API26_O_80)
-                || (ContactsManager.getInstance() != null && ContactsManager.getInstance().hasContactsAccess())) {
-            getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, ContactsManager.getInstance());
+        if (intent.getBooleanExtra(PushWakeUp.EXTRA_PUSH, false)) {
+            // Started for an incoming call, the contacts (and their MagicSearch) can wait until it has arrived
+            mDeferredContactsInit = TaskScheduler.getInstance().schedule("Deferred contacts init", new Runnable() {
+                @Override
+                public void run() {
+                    Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+                    if (lc != null && lc.getCallsNb() > 0) {
+                        mDeferredContactsInit = TaskScheduler.getInstance().schedule("Deferred contacts init", this, DEFERRED_CONTACTS_INIT_DELAY);
+                        return;
+                    }
+                    mDeferredContactsInit = null;
+                    initContacts();
+                }
+            }, DEFERRED_CONTACTS_INIT_DELAY);
+        } else {
+            initContacts();
         }
 
         if (!mTestDelayElapsed) {
             // Only used when testing. Simulates a 5 seconds delay for launching service
-            mHandler.postDelayed(new Runnable() {
+            TaskScheduler.getInstance().schedule("Test start delay", new Runnable() {
                 @Override
                 public void run() {
                     mTestDelayElapsed = true;
+                    notifyReady();
                 }
             }, 5000);
         }
@@ -437,6 +465,9 @@ public final class LinphoneService extends Service {
 
         BluetoothManager.getInstance().initBluetooth();
 
+        if (isReady()) {
+            notifyReady();
+        }
         return START_REDELIVER_INTENT;
     }
 
@@ -444,8 +475,8 @@ public final class LinphoneService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
-        mLastNotificationId = 8; // To not interfere with other notifs ids
-        mChatNotifMap = new HashMap<>();
+        // Copied in the background while the service starts, the Core creation waits for them
+        LinphoneManager.installAssets(this);
 
         setupActivityMonitor();
         // In case restart after a crash. Main in LinphoneActivity
@@ -469,6 +500,7 @@ public final class LinphoneService extends Service {
         }
 
         mNM = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        mChatNotifications = new ChatNotificationAggregator(this, mNM, 8); // To not interfere with other notifs ids
         mNM.cancel(INCALL_NOTIF_ID); // in case of crash the icon is not removed
         Compatibility.createNotificationChannels(this);
 
@@ -500,6 +532,13 @@ public final class LinphoneService extends Service {
         mWindowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
     }
 
+    private void initContacts() {
+        if (!Version.sdkAboveOrEqual(Version.API26_O_80)
+                || (ContactsManager.getInstance() != null && ContactsManager.getInstance().hasContactsAccess())) {
+            getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, ContactsManager.getInstance());
+        }
+    }
+
     public void createOverlay() {
         if (mOverlay != null) destroyOverlay();
 
@@ -624,76 +663,28 @@ public final class LinphoneService extends Service {
         notifyWrapper(CUSTOM_NOTIF_ID, mCustomNotif);
     }
 
-    public void displayGroupChatMessageNotification(String subject, String conferenceAddress, String fromName, Uri fromPictureUri, String message, String localIdentity) {
+    public void displayGroupChatMessageNotification(String subject, String conferenceAddress, String fromName, Uri fromPictureUri, String message, String localIdentity, String messageId) {
         Intent notifIntent = new Intent(this, LinphoneActivity.class);
         notifIntent.putExtra("GoToChat", true);
         notifIntent.putExtra("ChatContactSipUri", conferenceAddress);
         notifIntent.putExtra("LocalIdentity", localIdentity);
+        notifIntent.putExtra("MessageId", messageId);
 
-        PendingIntent notifContentIntent = PendingIntent.getActivity(this, 0, notifIntent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-        Notified notif = mChatNotifMap.get(conferenceAddress);
-        if (notif != null) {
-            notif.numberOfUnreadMessage += 1;
-        } else {
-            notif = new Notified();
-            notif.numberOfUnreadMessage = 1;
-            notif.notificationId = mLastNotificationId;
-            mLastNotificationId += 1;
-            mChatNotifMap.put(conferenceAddress, notif);
-        }
-
-        Bitmap bm = null;
-        if (fromPictureUri != null) {
-            try {
-                bm = MediaStore.Images.Media.getBitmap(getContentResolver(), fromPictureUri);
-            } catch (Exception e) {
-                bm = BitmapFactory.decodeResource(getResources(), R.drawable.topbar_avatar);
-            }
-        } else {
-            bm = BitmapFactory.decodeResource(getResources(), R.drawable.topbar_avatar);
-        }
-        Notification notification = Compatibility.createMessageNotification(getApplicationContext(), notif.numberOfUnreadMessage, subject,
-                getString(R.string.group_chat_notif).replace("%1", fromName).replace("%2", message), bm, notifContentIntent);
-
-        notifyWrapper(notif.notificationId, notification);
+        mChatNotifications.addMessage(conferenceAddress, subject, getString(R.string.group_chat_notif).replace("%1", fromName).replace("%2", message), fromPictureUri, notifIntent);
     }
 
-    public void displayMessageNotification(String fromSipUri, String fromName, Uri fromPictureUri, String message, String localIdentity) {
+    public void displayMessageNotification(String fromSipUri, String fromName, Uri fromPictureUri, String message, String localIdentity, String messageId) {
         Intent notifIntent = new Intent(this, LinphoneActivity.class);
         notifIntent.putExtra("GoToChat", true);
         notifIntent.putExtra("ChatContactSipUri", fromSipUri);
         notifIntent.putExtra("LocalIdentity", localIdentity);
-        PendingIntent notifContentIntent = PendingIntent.getActivity(this, 0, notifIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+        notifIntent.putExtra("MessageId", messageId);
 
         if (fromName == null) {
             fromName = fromSipUri;
         }
 
-        Notified notif = mChatNotifMap.get(fromSipUri);
-        if (notif != null) {
-            notif.numberOfUnreadMessage += 1;
-        } else {
-            notif = new Notified();
-            notif.numberOfUnreadMessage = 1;
-            notif.notificationId = mLastNotificationId;
-            mLastNotificationId += 1;
-            mChatNotifMap.put(fromSipUri, notif);
-        }
-
-        Bitmap bm = null;
-        if (fromPictureUri != null) {
-            try {
-                bm = MediaStore.Images.Media.getBitmap(getContentResolver(), fromPictureUri);
-            } catch (Exception e) {
-                bm = BitmapFactory.decodeResource(getResources(), R.drawable.topbar_avatar);
-            }
-        } else {
-            bm = BitmapFactory.decodeResource(getResources(), R.drawable.topbar_avatar);
-        }
-        Notification notification = Compatibility.createMessageNotification(getApplicationContext(), notif.numberOfUnreadMessage, fromName, message, bm, notifContentIntent);
-
-        notifyWrapper(notif.notificationId, notification);
+        mChatNotifications.addMessage(fromSipUri, fromName, message, fromPictureUri, notifIntent);
     }
 
     public void displayInappNotification(String message) {
@@ -829,7 +820,7 @@ public final class LinphoneService extends Service {
      * present despite the service is not running. To trigger it one could
      * stop linphone as soon as it is started. Transport configured with TLS.
      */
-    private synchronized void notifyWrapper(int id, Notification notification) {
+    synchronized void notifyWrapper(int id, Notification notification) {
         if (instance != null && notification != null) {
             mNM.notify(id, notification);
         } else {
@@ -864,6 +855,10 @@ public final class LinphoneService extends Service {
 
     @Override
     public synchronized void onDestroy() {
+        if (mDeferredContactsInit != null) {
+            mDeferredContactsInit.cancel();
+            mDeferredContactsInit = null;
+        }
         if (activityCallbacks != null) {
             getApplication().unregisterActivityLifecycleCallbacks(activityCallbacks);
             activityCallbacks = null;
@@ -881,9 +876,7 @@ public final class LinphoneService extends Service {
         // Make sure our notification is gone.
         stopForegroundCompat(NOTIF_ID);
         mNM.cancel(INCALL_NOTIF_ID);
-        for (Notified notif : mChatNotifMap.values()) {
-            mNM.cancel(notif.notificationId);
-        }
+        mChatNotifications.cancelAll();
 
 
         // This will prevent the app from crashing if the service gets killed in background mode
@@ -268,55 +268,11 @@ public final class LinphoneUtils {
 
 
     public static void setImagePictureFromUri(Context c, ImageView view, Uri pictureUri, Uri thumbnailUri) {
-        if (pictureUri == null && thumbnailUri == null) {
-            view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
-            return;
-        }
-        if (pictureUri.getScheme().startsWith("http")) {
-            Bitmap bm = downloadBitmap(pictureUri);
-            if (bm == null) view.setImageResource(R.drawable.avatar);
-            view.setImageBitmap(bm);
-        } else {
-            Bitmap bm = null;
-            try {
-                bm = MediaStore.Images.Media.getBitmap(c.getContentResolver(), pictureUri);
-            } catch (IOException e) {
-                if (thumbnailUri != null) {
-                    try {
-                        bm = MediaStore.Images.Media.getBitmap(c.getContentResolver(), thumbnailUri);
-                    } catch (IOException ie) {
-                    }
-                }
-            }
-            if (bm != null) {
-                view.setImageBitmap(bm);
-            } else {
-                view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
-            }
-        }
+        ImageLoader.getInstance(c).load(view, pictureUri, thumbnailUri, ImageLoader.PICTURE_SIZE);
     }
 
     public static void setThumbnailPictureFromUri(Context c, ImageView view, Uri tUri) {
-        if (tUri == null) {
-            view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
-            return;
-        }
-        if (tUri.getScheme().startsWith("http")) {
-            Bitmap bm = downloadBitmap(tUri);
-            if (bm == null) view.setImageResource(R.drawable.avatar);
-            view.setImageBitmap(bm);
-        } else {
-            Bitmap bm = null;
-            try {
-                bm = MediaStore.Images.Media.getBitmap(c.getContentResolver(), tUri);
-            } catch (IOException e) {
-            }
-            if (bm != null) {
-                view.setImageBitmap(bm);
-            } else {
-                view.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
-            }
-        }
+        ImageLoader.getInstance(c).load(view, tUri, null, ImageLoader.THUMBNAIL_SIZE);
     }
 
     public static final List<Call> getCalls(Core lc) {
@@ -375,7 +331,7 @@ public final class LinphoneUtils {
         return (info != null && info.isConnected() && isConnectionFast(info.getType(), info.getSubtype()));
     }
 
-    private static boolean isConnectionFast(int type, int subType) {
+    static boolean isConnectionFast(int type, int subType) {
         if (type == ConnectivityManager.TYPE_MOBILE) {
             switch (subType) {
                 case TelephonyManager.NETWORK_TYPE_EDGE:
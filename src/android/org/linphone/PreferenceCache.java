@@ -0,0 +1,141 @@
+package org.linphone;
+
+/*
+PreferenceCache.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.linphone.core.Config;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Typed values read from a Config, kept in memory so reading a preference again doesn't go through the native
+ * config (or worse, re-parse the config file when the Core isn't running).<br />
+ * Values are cached along with the default they were read with, since a missing entry reads as its default.
+ * Writes go through to the config and drop the cached values of the entry. The cache has to be cleared
+ * when the config is changed behind its back (another config, provisioning, xml import).
+ * Only the sections owned by the application are cached, the Core writes its own ones (sound, video, ...)
+ * without telling.
+ */
+class PreferenceCache {
+    private static final char SEPARATOR = '\n'; // can't be in a section or key name
+    private static final String[] CACHED_SECTIONS = {"app", "assistant", "in-app-purchase"};
+
+    private final ConcurrentHashMap<String, Object> mValues = new ConcurrentHashMap<>();
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    boolean getBool(Config config, String section, String key, boolean defaultValue) {
+        if (!isCached(section)) return config.getBool(section, key, defaultValue);
+        String cacheKey = getCacheKey(section, key, 'b', String.valueOf(defaultValue));
+        Object value = mValues.get(cacheKey);
+        if (value == null) {
+            value = config.getBool(section, key, defaultValue);
+            put(cacheKey, value);
+        } else {
+            mHits.incrementAndGet();
+        }
+        return (Boolean) value;
+    }
+
+    int getInt(Config config, String section, String key, int defaultValue) {
+        if (!isCached(section)) return config.getInt(section, key, defaultValue);
+        String cacheKey = getCacheKey(section, key, 'i', String.valueOf(defaultValue));
+        Object value = mValues.get(cacheKey);
+        if (value == null) {
+            value = config.getInt(section, key, defaultValue);
+            put(cacheKey, value);
+        } else {
+            mHits.incrementAndGet();
+        }
+        return (Integer) value;
+    }
+
+    String getString(Config config, String section, String key, String defaultValue) {
+        if (!isCached(section)) return config.getString(section, key, defaultValue);
+        // A null string can't be stored, nor told apart from a missing default
+        String cacheKey = getCacheKey(section, key, defaultValue == null ? 'n' : 's', defaultValue);
+        Object value = mValues.get(cacheKey);
+        if (value == null) {
+            String read = config.getString(section, key, defaultValue);
+            if (read == null) {
+                mMisses.incrementAndGet();
+                return null;
+            }
+            value = read;
+            put(cacheKey, value);
+        } else {
+            mHits.incrementAndGet();
+        }
+        return (String) value;
+    }
+
+    void setBool(Config config, String section, String key, boolean value) {
+        config.setBool(section, key, value);
+        invalidate(section, key);
+    }
+
+    void setInt(Config config, String section, String key, int value) {
+        config.setInt(section, key, value);
+        invalidate(section, key);
+    }
+
+    void setString(Config config, String section, String key, String value) {
+        config.setString(section, key, value);
+        invalidate(section, key);
+    }
+
+    void clear() {
+        mValues.clear();
+    }
+
+    String getStats() {
+        return mValues.size() + " values, " + mHits.get() + " hits, " + mMisses.get() + " misses";
+    }
+
+    private static boolean isCached(String section) {
+        for (String cached : CACHED_SECTIONS) {
+            if (cached.equals(section)) return true;
+        }
+        return false;
+    }
+
+    private void put(String cacheKey, Object value) {
+        mMisses.incrementAndGet();
+        mValues.put(cacheKey, value);
+    }
+
+    /**
+     * Drops every cached value of the entry, whatever their type and default.
+     */
+    private void invalidate(String section, String key) {
+        String prefix = section + SEPARATOR + key + SEPARATOR;
+        Iterator<String> keys = mValues.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static String getCacheKey(String section, String key, char type, String defaultValue) {
+        return section + SEPARATOR + key + SEPARATOR + type + (defaultValue != null ? defaultValue : "");
+    }
+}
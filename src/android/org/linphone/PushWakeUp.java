@@ -0,0 +1,92 @@
+package org.linphone;
+
+/*
+PushWakeUp.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import org.linphone.core.Call;
+import org.linphone.core.Core;
+import org.linphone.mediastream.Log;
+
+import static android.content.Intent.ACTION_MAIN;
+
+/**
+ * Gets the application ready to receive the call a push notification announces, as fast as possible.<br />
+ * If the service isn't running, it's started with EXTRA_PUSH so it defers what isn't needed to receive the
+ * INVITE. If it is, the registers are refreshed on the current connections, instead of toggling the network
+ * reachability, which closes and reopens every transport.
+ * The delay between the push and the incoming call is logged.
+ */
+public final class PushWakeUp {
+    public static final String EXTRA_PUSH = "PushNotification";
+    private static final long MAX_CALL_DELAY = 30000; // in ms, a later call isn't attributed to the push
+
+    private static long sPushTime; // elapsed realtime of the last push not followed by a call yet, 0 if none
+    private static boolean sColdStart;
+
+    private PushWakeUp() {
+    }
+
+    /**
+     * Can be called from any thread.
+     */
+    public static void onPushReceived(final Context context) {
+        boolean ready = LinphoneService.isReady();
+        synchronized (PushWakeUp.class) {
+            sPushTime = SystemClock.elapsedRealtime();
+            sColdStart = !ready;
+        }
+
+        if (!ready) {
+            android.util.Log.i("PushWakeUp", "[Push Notification] Starting Service");
+            context.startService(new Intent(ACTION_MAIN).setClass(context, LinphoneService.class).putExtra(EXTRA_PUSH, true));
+        } else {
+            LinphoneUtils.dispatchOnUIThread(new Runnable() {
+                @Override
+                public void run() {
+                    Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+                    if (lc != null && lc.getCallsNb() == 0) {
+                        Log.i("[Push Notification] Refreshing registers");
+                        RegisterRefresher.getInstance().refresh(context, true);
+                    }
+                }
+            });
+        }
+    }
+
+    public static void onCallStateChanged(Call call, Call.State state) {
+        if (state != Call.State.IncomingReceived) return;
+        long pushTime;
+        boolean coldStart;
+        synchronized (PushWakeUp.class) {
+            pushTime = sPushTime;
+            coldStart = sColdStart;
+            sPushTime = 0;
+        }
+        if (pushTime == 0) return;
+
+        long delay = SystemClock.elapsedRealtime() - pushTime;
+        if (delay > MAX_CALL_DELAY) return;
+        Log.i("[Push Notification] Incoming call received " + delay + " ms after the push ("
+                + (coldStart ? "service started" : "service running") + ")");
+    }
+}
@@ -0,0 +1,196 @@
+package org.linphone;
+
+/*
+RegisterRefresher.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import org.linphone.core.Address;
+import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
+import org.linphone.core.ProxyConfig;
+import org.linphone.core.RegistrationState;
+import org.linphone.mediastream.Log;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Refreshes the registers while keeping the device awake, without blocking the main thread.<br />
+ * A partial wake lock is held, and the Core iterated at full rate, until every registered proxy config
+ * has answered the refresh or REFRESH_TIMEOUT elapsed. A refresh asked while another one is running,
+ * or shortly after one completed (unless forced), is skipped.
+ * The refresh round trip is kept per proxy config and logged.
+ * Must be used from the main thread, like the Core.
+ */
+public class RegisterRefresher {
+    private static final long REFRESH_TIMEOUT = 10000; // in ms
+    private static final long MIN_REFRESH_INTERVAL = 60000; // in ms, refreshes closer than this are coalesced
+
+    private static RegisterRefresher sInstance;
+
+    public static synchronized RegisterRefresher getInstance() {
+        if (sInstance == null) {
+            sInstance = new RegisterRefresher();
+        }
+        return sInstance;
+    }
+
+    private static class Latency {
+        long mCount;
+        long mTotal, mMax;
+        long mTimeouts;
+    }
+
+    private final IdentityHashMap<ProxyConfig, Long> mPending = new IdentityHashMap<>();
+    private final HashMap<String, Latency> mLatencies = new HashMap<>();
+    private PowerManager.WakeLock mWakeLock;
+    private Core mCore;
+    private TaskScheduler.Task mTimeoutTask;
+    private long mLastRefreshEnd;
+    private boolean mFullRate;
+
+    private final CoreListenerStub mListener = new CoreListenerStub() {
+        @Override
+        public void onRegistrationStateChanged(Core lc, ProxyConfig cfg, RegistrationState state, String message) {
+            if (state == RegistrationState.Progress || state == RegistrationState.None) return;
+            Long start = mPending.remove(cfg);
+            if (start == null) return;
+
+            long latency = SystemClock.elapsedRealtime() - start;
+            Latency stats = getLatency(cfg);
+            stats.mCount++;
+            stats.mTotal += latency;
+            if (latency > stats.mMax) stats.mMax = latency;
+            Log.i("[KeepAlive] Register refresh of " + getName(cfg) + " " + state + " in " + latency + " ms (avg "
+                    + stats.mTotal / stats.mCount + " ms, max " + stats.mMax + " ms)");
+
+            if (mPending.isEmpty()) {
+                finish();
+            }
+        }
+    };
+
+    private RegisterRefresher() {
+    }
+
+    public void refresh(Context context) {
+        refresh(context, false);
+    }
+
+    /**
+     * @param force true to refresh even if the registers were just refreshed
+     */
+    public void refresh(Context context, boolean force) {
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc == null) return;
+
+        if (!mPending.isEmpty()) {
+            Log.i("[KeepAlive] Register refresh already running, skipping");
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!force && mLastRefreshEnd != 0 && now - mLastRefreshEnd < MIN_REFRESH_INTERVAL) {
+            Log.i("[KeepAlive] Registers refreshed " + (now - mLastRefreshEnd) + " ms ago, skipping");
+            return;
+        }
+
+        for (ProxyConfig cfg : lc.getProxyConfigList()) {
+            if (cfg.registerEnabled()) {
+                mPending.put(cfg, now);
+            }
+        }
+        if (mPending.isEmpty()) return;
+
+        if (mWakeLock == null) {
+            PowerManager pm = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+            mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "linphone:register_refresh");
+            mWakeLock.setReferenceCounted(false);
+        }
+        // The timeout is only a safety net in case the task doesn't run
+        mWakeLock.acquire(REFRESH_TIMEOUT * 2);
+
+        mCore = lc;
+        lc.addListener(mListener);
+        LinphoneManager.getInstance().getCoreScheduler().acquireFullRate();
+        mFullRate = true;
+        mTimeoutTask = TaskScheduler.getInstance().schedule("Register refresh timeout", new Runnable() {
+            @Override
+            public void run() {
+                for (ProxyConfig cfg : mPending.keySet()) {
+                    getLatency(cfg).mTimeouts++;
+                    Log.w("[KeepAlive] Register refresh of " + getName(cfg) + " timed out after " + REFRESH_TIMEOUT + " ms ("
+                            + getLatency(cfg).mTimeouts + " timeouts)");
+                }
+                mPending.clear();
+                finish();
+            }
+        }, REFRESH_TIMEOUT);
+
+        Log.i("[KeepAlive] Refresh registers of " + mPending.size() + " proxy config(s)");
+        lc.refreshRegisters();
+    }
+
+    /**
+     * Gives up the running refresh, if any. To be called before the Core is destroyed.
+     */
+    public void stop() {
+        if (mCore == null) return;
+        mPending.clear();
+        finish();
+    }
+
+    private void finish() {
+        if (mTimeoutTask != null) {
+            mTimeoutTask.cancel();
+            mTimeoutTask = null;
+        }
+        if (mCore != null) {
+            mCore.removeListener(mListener);
+            mCore = null;
+        }
+        if (mFullRate) {
+            mFullRate = false;
+            if (LinphoneManager.isInstanciated()) {
+                LinphoneManager.getInstance().getCoreScheduler().releaseFullRate();
+            }
+        }
+        mLastRefreshEnd = SystemClock.elapsedRealtime();
+        if (mWakeLock != null && mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+    }
+
+    private Latency getLatency(ProxyConfig cfg) {
+        String name = getName(cfg);
+        Latency latency = mLatencies.get(name);
+        if (latency == null) {
+            latency = new Latency();
+            mLatencies.put(name, latency);
+        }
+        return latency;
+    }
+
+    private static String getName(ProxyConfig cfg) {
+        Address identity = cfg.getIdentityAddress();
+        return identity != null ? identity.asStringUriOnly() : cfg.getServerAddr();
+    }
+}
@@ -0,0 +1,181 @@
+package org.linphone;
+
+/*
+Ringer.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+import org.linphone.mediastream.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Plays the device ringtone for incoming calls, with a MediaPlayer prepared ahead of time so ringing starts
+ * right away.<br />
+ * The ringtone is resolved and prepared asynchronously, and prepared again only when the ringtone preference
+ * changed, or when the system ringtone changed if the preference is the default one. Between two calls the
+ * player is paused and rewound rather than stopped, which would require preparing it again. If ringing is
+ * asked before the player is prepared, it starts as soon as it is.
+ * The delay between the incoming call and the ringtone playback start is logged.
+ * Must be used from the main thread, like the Core.
+ */
+public class Ringer {
+    private final Context mContext;
+    private MediaPlayer mPlayer;
+    private String mRingtone; // the ringtone mPlayer was set up with
+    private String mRingtoneKey; // what it pointed to, the default ringtone URI stays the same when the ringtone changes
+    private boolean mPrepared;
+    private boolean mRinging;
+    private long mRingRequestTime; // elapsed realtime of the incoming call being rung
+    private long mPrepareStartTime;
+
+    private final MediaPlayer.OnPreparedListener mPreparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            if (mp != mPlayer) return;
+            mPrepared = true;
+            Log.i("[Ringer] Ringtone prepared in " + (SystemClock.elapsedRealtime() - mPrepareStartTime) + " ms");
+            if (mRinging) {
+                play(false);
+            }
+        }
+    };
+
+    private final MediaPlayer.OnErrorListener mErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.e("[Ringer] Player error " + what + " (" + extra + "), will prepare again");
+            if (mp == mPlayer) {
+                release();
+            }
+            return true;
+        }
+    };
+
+    public Ringer(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Prepares the current ringtone in the background, unless it is already.
+     */
+    public void prepare() {
+        String ringtone = getRingtone();
+        String key = getRingtoneKey(ringtone);
+        if (mPlayer != null && ringtone.equals(mRingtone) && key.equals(mRingtoneKey)) return;
+        release();
+
+        mPrepareStartTime = SystemClock.elapsedRealtime();
+        mRingtone = ringtone;
+        mRingtoneKey = key;
+        mPlayer = new MediaPlayer();
+        mPlayer.setAudioStreamType(AudioManager.STREAM_RING);
+        mPlayer.setLooping(true);
+        mPlayer.setOnPreparedListener(mPreparedListener);
+        mPlayer.setOnErrorListener(mErrorListener);
+        try {
+            if (ringtone.startsWith("content://")) {
+                mPlayer.setDataSource(mContext, Uri.parse(ringtone));
+            } else {
+                FileInputStream fis = new FileInputStream(ringtone);
+                try {
+                    mPlayer.setDataSource(fis.getFD());
+                } finally {
+                    fis.close();
+                }
+            }
+            mPlayer.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            Log.e(e, "[Ringer] Cannot set ringtone " + ringtone);
+            release();
+        }
+    }
+
+    /**
+     * @param requestTime the elapsed realtime the incoming call was received at
+     */
+    public void start(long requestTime) {
+        if (mRinging) return;
+        mRinging = true;
+        mRingRequestTime = requestTime;
+
+        prepare(); // In case the ringtone changed or the previous one failed
+        if (mPrepared) {
+            play(true);
+        } else {
+            Log.i("[Ringer] Ringtone not prepared yet, will ring once it is");
+        }
+    }
+
+    public void stop() {
+        if (!mRinging) return;
+        mRinging = false;
+        if (mPlayer != null && mPrepared) {
+            try {
+                mPlayer.pause();
+                mPlayer.seekTo(0);
+            } catch (IllegalStateException e) {
+                Log.e(e, "[Ringer] Cannot stop ringtone");
+                release();
+            }
+        }
+    }
+
+    public boolean isRinging() {
+        return mRinging;
+    }
+
+    public void release() {
+        if (mPlayer != null) {
+            mPlayer.release();
+            mPlayer = null;
+        }
+        mRingtone = null;
+        mRingtoneKey = null;
+        mPrepared = false;
+    }
+
+    private void play(boolean preparedAhead) {
+        try {
+            mPlayer.start();
+            Log.i("[Ringer] Ringing " + (SystemClock.elapsedRealtime() - mRingRequestTime) + " ms after the incoming call ("
+                    + (preparedAhead ? "prepared ahead" : "prepared on demand") + ")");
+        } catch (IllegalStateException e) {
+            Log.e(e, "[Ringer] Cannot start ringtone");
+            release();
+        }
+    }
+
+    private static String getRingtone() {
+        return LinphonePreferences.instance().getRingtone(Settings.System.DEFAULT_RINGTONE_URI.toString());
+    }
+
+    private String getRingtoneKey(String ringtone) {
+        if (!ringtone.equals(Settings.System.DEFAULT_RINGTONE_URI.toString())) return ringtone;
+        Uri actual = RingtoneManager.getActualDefaultRingtoneUri(mContext, RingtoneManager.TYPE_RINGTONE);
+        return actual != null ? actual.toString() : "";
+    }
+}
@@ -0,0 +1,65 @@
+package org.linphone;
+
+/*
+StartupTrace.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.linphone.mediastream.Log;
+
+/**
+ * Logs how long each startup phase took and when it ended, relative to the process start
+ * (or to the first traced phase before Android 7, which can't tell when the process started).
+ * Usage: long start = StartupTrace.begin(); ... StartupTrace.end("Phase", start);
+ */
+public final class StartupTrace {
+    private static final long sProcessStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+    private static boolean sFirstRegistrationTraced;
+
+    private StartupTrace() {
+    }
+
+    public static long begin() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    public static void end(String phase, long begin) {
+        long now = SystemClock.elapsedRealtime();
+        Log.i("[Startup] " + phase + " took " + (now - begin) + " ms, done at +" + (now - sProcessStart) + " ms");
+    }
+
+    /**
+     * Logs an event that has no duration of its own.
+     */
+    public static void mark(String event) {
+        Log.i("[Startup] " + event + " at +" + (SystemClock.elapsedRealtime() - sProcessStart) + " ms");
+    }
+
+    /**
+     * Marks the first successful registration of the process, the end of the startup for incoming calls.
+     */
+    public static synchronized void markFirstRegistration() {
+        if (sFirstRegistrationTraced) return;
+        sFirstRegistrationTraced = true;
+        mark("First registration");
+    }
+}
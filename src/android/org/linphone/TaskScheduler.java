@@ -0,0 +1,172 @@
+package org.linphone;
+
+/*
+TaskScheduler.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.linphone.mediastream.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the application delayed and periodic jobs, instead of each of them using its own Timer or Handler.<br />
+ * Jobs run on the main looper: nearly all of them use the Core, which isn't thread safe and lives there,
+ * or the UI. So scheduling doesn't add any thread, and a job never runs concurrently with another one.
+ * Each job is named; the run count, run time and lateness are kept per name and logged on demand,
+ * and every STATS_LOG_INTERVAL runs.
+ * Tasks can be scheduled and cancelled from any thread.
+ */
+public class TaskScheduler {
+    private static final int STATS_LOG_INTERVAL = 1000; // in runs, all tasks together
+
+    private static TaskScheduler sInstance;
+
+    public static synchronized TaskScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new TaskScheduler();
+        }
+        return sInstance;
+    }
+
+    private static class Stats {
+        long mRuns;
+        long mRunTime, mMaxRunTime;
+        long mLateness, mMaxLateness;
+    }
+
+    public class Task implements Runnable {
+        private final String mName;
+        private final Runnable mRunnable;
+        private final long mPeriod; // 0 for a one shot task
+        private volatile boolean mScheduled;
+        private long mExpectedTime;
+
+        private Task(String name, Runnable runnable, long period) {
+            mName = name;
+            mRunnable = runnable;
+            mPeriod = period;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return true until the one shot task has run or the task has been cancelled
+         */
+        public boolean isScheduled() {
+            return mScheduled;
+        }
+
+        /**
+         * @return the time left before the next run, in ms, 0 if not scheduled
+         */
+        public long getRemainingTime() {
+            return mScheduled ? Math.max(mExpectedTime - SystemClock.uptimeMillis(), 0) : 0;
+        }
+
+        public void cancel() {
+            mScheduled = false;
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            if (!mScheduled) return;
+            if (mPeriod == 0) {
+                mScheduled = false;
+            }
+
+            long start = SystemClock.uptimeMillis();
+            long lateness = start - mExpectedTime;
+            mRunnable.run();
+            onRun(mName, SystemClock.uptimeMillis() - start, lateness);
+
+            if (mPeriod > 0 && mScheduled) {
+                // Fixed rate, but don't try to catch up the runs that were missed
+                mExpectedTime = Math.max(mExpectedTime + mPeriod, SystemClock.uptimeMillis());
+                mHandler.postAtTime(this, mExpectedTime);
+            }
+        }
+
+        private void post(long delay) {
+            mScheduled = true;
+            mExpectedTime = SystemClock.uptimeMillis() + delay;
+            mHandler.postAtTime(this, mExpectedTime);
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, Stats> mStats = new LinkedHashMap<>();
+    private long mRuns;
+
+    private TaskScheduler() {
+    }
+
+    /**
+     * Runs the runnable once, after the delay.
+     */
+    public Task schedule(String name, Runnable runnable, long delay) {
+        Task task = new Task(name, runnable, 0);
+        task.post(delay);
+        return task;
+    }
+
+    /**
+     * Runs the runnable every period, starting after the initial delay, until the task is cancelled.
+     */
+    public Task scheduleAtFixedRate(String name, Runnable runnable, long initialDelay, long period) {
+        if (period <= 0) throw new IllegalArgumentException("Period must be positive: " + period);
+        Task task = new Task(name, runnable, period);
+        task.post(initialDelay);
+        return task;
+    }
+
+    public void logStats() {
+        for (Map.Entry<String, Stats> entry : mStats.entrySet()) {
+            Stats stats = entry.getValue();
+            Log.i("[Task Scheduler] " + entry.getKey() + ": " + stats.mRuns + " runs, run time avg "
+                    + stats.mRunTime / stats.mRuns + " ms max " + stats.mMaxRunTime + " ms, lateness avg "
+                    + stats.mLateness / stats.mRuns + " ms max " + stats.mMaxLateness + " ms");
+        }
+    }
+
+    private void onRun(String name, long runTime, long lateness) {
+        Stats stats = mStats.get(name);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(name, stats);
+        }
+        lateness = Math.max(lateness, 0);
+        stats.mRuns++;
+        stats.mRunTime += runTime;
+        stats.mLateness += lateness;
+        if (runTime > stats.mMaxRunTime) stats.mMaxRunTime = runTime;
+        if (lateness > stats.mMaxLateness) stats.mMaxLateness = lateness;
+
+        mRuns++;
+        if (mRuns % STATS_LOG_INTERVAL == 0) {
+            logStats();
+        }
+    }
+}
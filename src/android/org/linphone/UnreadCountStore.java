@@ -0,0 +1,220 @@
+package org.linphone;
+
+/*
+UnreadCountStore.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Unread messages count of each chat room, keyed by the room peer address, and their total.<br />
+ * Counters can be changed from any thread; the total is maintained along with them so reading it doesn't
+ * go through every room. Both are changed under the same lock, so the total is always the sum of the rooms.
+ * Listeners are always called on the main thread.
+ * <p>
+ * Counts are written through to the preferences as they change, along with the time of the write, so they can be
+ * restored when the application starts instead of asking the Core for the unread messages count of every chat room.
+ */
+public class UnreadCountStore {
+    private static final String PREFERENCES_NAME = "unread_counts";
+    private static final String KEY_SAVED = "#saved"; // time of the last write, can't be a SIP address so can't collide with a room
+
+    public interface Listener {
+        /**
+         * @param key the peer address of the chat room that changed
+         */
+        void onUnreadCountChanged(String key, int count, int total);
+    }
+
+    private final SharedPreferences mPreferences;
+    private final HashMap<String, Integer> mCounts = new HashMap<>(); // guarded by this, as mTotal
+    private int mTotal;
+    private long mLastWriteTime;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    public UnreadCountStore(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Restores the counts saved by a previous run.
+     *
+     * @return false if there was nothing saved, in which case the counts have to be read from the Core
+     */
+    public boolean restore() {
+        Map<String, ?> saved = mPreferences.getAll();
+        if (!saved.containsKey(KEY_SAVED)) return false;
+
+        synchronized (this) {
+            Object time = saved.get(KEY_SAVED);
+            mLastWriteTime = time instanceof Long ? (Long) time : 0; // was a boolean in earlier versions
+            for (Map.Entry<String, ?> entry : saved.entrySet()) {
+                if (!KEY_SAVED.equals(entry.getKey()) && entry.getValue() instanceof Integer) {
+                    Integer previous = mCounts.put(entry.getKey(), (Integer) entry.getValue());
+                    mTotal += (Integer) entry.getValue() - (previous != null ? previous : 0);
+                }
+            }
+            Log.i("[Unread Counts] Restored " + mCounts.size() + " chat rooms, " + mTotal + " unread messages");
+        }
+        return true;
+    }
+
+    /**
+     * @return when the restored counts were last written, in ms since the epoch, 0 if unknown
+     */
+    public synchronized long getLastWriteTime() {
+        return mLastWriteTime;
+    }
+
+    /**
+     * Writes every count, to be called once they have all been read from the Core.
+     */
+    public void save() {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        editor.clear();
+        synchronized (this) {
+            for (Map.Entry<String, Integer> entry : mCounts.entrySet()) {
+                if (entry.getValue() > 0) {
+                    editor.putInt(entry.getKey(), entry.getValue());
+                }
+            }
+            editor.putLong(KEY_SAVED, System.currentTimeMillis());
+            editor.apply();
+        }
+    }
+
+    public synchronized int getTotal() {
+        return mTotal;
+    }
+
+    public synchronized int get(String key) {
+        Integer count = mCounts.get(key);
+        return count != null ? count : 0;
+    }
+
+    public void set(String key, int value) {
+        int total;
+        synchronized (this) {
+            Integer previous = mCounts.put(key, value);
+            int delta = value - (previous != null ? previous : 0);
+            if (delta == 0) return;
+            mTotal += delta;
+            total = mTotal;
+            write(key, value);
+        }
+        onChanged(key, value, total);
+    }
+
+    public void increment(String key) {
+        int value, total;
+        synchronized (this) {
+            value = get(key) + 1;
+            mCounts.put(key, value);
+            total = ++mTotal;
+            write(key, value);
+        }
+        onChanged(key, value, total);
+    }
+
+    /**
+     * Forgets the count of a chat room that doesn't exist anymore.
+     */
+    public void remove(String key) {
+        int total;
+        synchronized (this) {
+            Integer count = mCounts.remove(key);
+            if (count == null) return;
+            mTotal -= count;
+            total = mTotal;
+            write(key, 0);
+        }
+        onChanged(key, 0, total);
+    }
+
+    /**
+     * Forgets the counts of every chat room not in the keys, such as restored ones deleted since they were saved.
+     */
+    public void retain(Set<String> keys) {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            for (String key : mCounts.keySet()) {
+                if (!keys.contains(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+        for (String key : removed) {
+            remove(key);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Called under the lock, so the writes reach the preferences in the order the counts changed.
+     * apply() only updates them in memory, the disk write is done in the background.
+     */
+    private void write(String key, int count) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (count > 0) {
+            editor.putInt(key, count);
+        } else {
+            editor.remove(key);
+        }
+        editor.putLong(KEY_SAVED, System.currentTimeMillis());
+        editor.apply();
+    }
+
+    private void onChanged(final String key, final int count, final int total) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyListeners(key, count, total);
+        } else {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListeners(key, count, total);
+                }
+            });
+        }
+    }
+
+    private void notifyListeners(String key, int count, int total) {
+        for (Listener listener : mListeners) {
+            listener.onUnreadCountChanged(key, count, total);
+        }
+    }
+}
@@ -66,6 +66,7 @@ import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneService;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
+import org.linphone.UnreadCountStore;
 import org.linphone.assistant.AssistantActivity;
 import org.linphone.assistant.RemoteProvisioningLoginActivity;
 import org.linphone.call.CallActivity;
@@ -89,8 +90,6 @@ import org.linphone.core.AuthInfo;
 import org.linphone.core.Call;
 import org.linphone.core.Call.State;
 import org.linphone.core.CallLog;
-import org.linphone.core.ChatMessage;
-import org.linphone.core.ChatRoom;
 import org.linphone.core.Core;
 import org.linphone.core.CoreListenerStub;
 import org.linphone.core.Factory;
@@ -146,6 +145,7 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
     private boolean isTrialAccount = false;
     private OrientationEventListener mOrientationHelper;
     private CoreListenerStub mListener;
+    private UnreadCountStore.Listener mUnreadCountListener;
     private LinearLayout mTabBar;
 
     private DrawerLayout sideMenu;
@@ -222,12 +222,14 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
             currentFragment = (FragmentsAvailable) savedInstanceState.getSerializable("currentFragment");
         }
 
-        mListener = new CoreListenerStub() {
+        mUnreadCountListener = new UnreadCountStore.Listener() {
             @Override
-            public void onMessageReceived(Core lc, ChatRoom cr, ChatMessage message) {
-                displayMissedChats(LinphoneManager.getInstance().getUnreadMessageCount());
+            public void onUnreadCountChanged(String key, int count, int total) {
+                displayMissedChats(total);
             }
+        };
 
+        mListener = new CoreListenerStub() {
             @Override
             public void onRegistrationStateChanged(Core lc, ProxyConfig proxy, RegistrationState state, String smessage) {
                 AuthInfo authInfo = lc.findAuthInfo(proxy.getRealm(), proxy.getIdentityAddress().getUsername(), proxy.getDomain());
@@ -577,11 +579,12 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
 
         String callTime = secondsToDisplayableString(log.getDuration());
         String callDate = String.valueOf(log.getStartDate());
+        String callId = log.getCallId();
 
         Fragment fragment2 = getFragmentManager().findFragmentById(R.id.fragmentContainer2);
         if (fragment2 != null && fragment2.isVisible() && currentFragment == FragmentsAvailable.HISTORY_DETAIL) {
             HistoryDetailFragment historyDetailFragment = (HistoryDetailFragment) fragment2;
-            historyDetailFragment.changeDisplayedHistory(sipUri, displayName, pictureUri, status, callTime, callDate);
+            historyDetailFragment.changeDisplayedHistory(sipUri, displayName, pictureUri, status, callTime, callDate, callId);
         } else {
             Bundle extras = new Bundle();
             extras.putString("SipUri", sipUri);
@@ -592,6 +595,7 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
             extras.putString("Call.Status", status);
             extras.putString("CallTime", callTime);
             extras.putString("CallDate", callDate);
+            extras.putString("CallId", callId);
 
             changeCurrentFragment(FragmentsAvailable.HISTORY_DETAIL, extras);
         }
@@ -707,6 +711,8 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
                 extras.putString("fileSharedUri", shareInfos.getString("fileSharedUri"));
             if (shareInfos.getString("messageDraft") != null)
                 extras.putString("messageDraft", shareInfos.getString("messageDraft"));
+            if (shareInfos.getString("MessageId") != null)
+                extras.putString("MessageId", shareInfos.getString("MessageId"));
         }
 
         if (isTablet()) {
@@ -714,6 +720,9 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
             if (fragment2 != null && fragment2.isVisible() && currentFragment == FragmentsAvailable.GROUP_CHAT && !emptyFragment) {
                 GroupChatFragment chatFragment = (GroupChatFragment) fragment2;
                 chatFragment.changeDisplayedChat(sipUri);
+                if (extras.getString("MessageId") != null) {
+                    chatFragment.scrollToMessage(extras.getString("MessageId"));
+                }
             } else {
                 changeCurrentFragment(FragmentsAvailable.GROUP_CHAT, extras);
             }
@@ -1156,6 +1165,9 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
         if (lc != null) {
             lc.removeListener(mListener);
         }
+        if (LinphoneManager.isInstanciated()) {
+            LinphoneManager.getInstance().getUnreadCounts().removeListener(mUnreadCountListener);
+        }
         callTransfer = false;
         isOnBackground = true;
 
@@ -1353,6 +1365,7 @@ public class LinphoneActivity extends LinphoneGenericActivity implements OnClick
         Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
         if (lc != null) {
             lc.addListener(mListener);
+            LinphoneManager.getInstance().getUnreadCounts().addListener(mUnreadCountListener);
             if (!LinphoneService.instance().displayServiceNotification()) {
                 lc.refreshRegisters();
             }
@@ -32,6 +32,7 @@ import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneService;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
+import org.linphone.StartupTrace;
 import org.linphone.assistant.RemoteProvisioningActivity;
 import org.linphone.call.CallActivity;
 import org.linphone.contacts.ContactsManager;
@@ -46,7 +47,7 @@ public class LinphoneLauncherActivity extends Activity {
     private final String ACTION_CALL_LINPHONE = "org.linphone.intent.action.CallLaunched";
 
     private Handler mHandler;
-    private ServiceWaitThread mServiceThread;
+    private LinphoneService.ServiceReadyListener mServiceReadyListener;
     private String addressToCall;
     private Uri uriToResolve;
 
@@ -89,9 +90,24 @@ public class LinphoneLauncherActivity extends Activity {
         } else {
             // start linphone as background
             startService(new Intent(ACTION_MAIN).setClass(this, LinphoneService.class));
-            mServiceThread = new ServiceWaitThread();
-            mServiceThread.start();
+            mServiceReadyListener = new LinphoneService.ServiceReadyListener() {
+                @Override
+                public void onServiceReady() {
+                    mServiceReadyListener = null;
+                    LinphoneLauncherActivity.this.onServiceReady();
+                }
+            };
+            LinphoneService.whenReady(mServiceReadyListener);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mServiceReadyListener != null) {
+            LinphoneService.removeReadyListener(mServiceReadyListener);
+            mServiceReadyListener = null;
         }
+        super.onDestroy();
     }
 
     @Override
@@ -115,7 +131,7 @@ public class LinphoneLauncherActivity extends Activity {
             classToStart = LinphoneActivity.class;
         }
 
-        mHandler.postDelayed(new Runnable() {
+        mHandler.post(new Runnable() {
             @Override
             public void run() {
                 Intent newIntent = new Intent(LinphoneLauncherActivity.this, classToStart);
@@ -159,6 +175,7 @@ public class LinphoneLauncherActivity extends Activity {
                     Log.i("LinphoneLauncher", "Intent has address to call : " + addressToCall);
                     addressToCall = null;
                 }
+                StartupTrace.mark("Launcher starting " + classToStart.getSimpleName());
                 startActivity(newIntent);
                 if (classToStart == LinphoneActivity.class && LinphoneActivity.isInstanciated() && (stringFileShared != null || fileUri != null)) {
                     if (stringFileShared != null) {
@@ -169,29 +186,7 @@ public class LinphoneLauncherActivity extends Activity {
                 }
                 finish();
             }
-        }, 1000);
-    }
-
-
-    private class ServiceWaitThread extends Thread {
-        public void run() {
-            while (!LinphoneService.isReady()) {
-                try {
-                    sleep(30);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("waiting thread sleep() has been interrupted");
-                }
-            }
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    onServiceReady();
-                }
-            });
-            mServiceThread = null;
-        }
+        });
     }
 
 }
-
-
@@ -428,6 +428,7 @@ public class AssistantActivity extends Activity implements OnClickListener, Acti
 
     public void linphoneLogIn(AccountCreator accountCreator) {
         LinphoneManager.getLc().getConfig().loadFromXmlFile(LinphoneManager.getInstance().getmDynamicConfigFile());
+        LinphonePreferences.instance().invalidateCache();
         configureProxyConfig(accountCreator);
     }
 
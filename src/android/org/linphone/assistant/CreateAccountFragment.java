@@ -314,6 +314,7 @@ public class CreateAccountFragment extends Fragment implements CompoundButton.On
                 if (useEmail.isChecked()) accountCreator.setPhoneNumber(null, null);
                 if (!getResources().getBoolean(R.bool.isTablet) || getUsername().length() > 0) {
                     LinphoneManager.getLc().getConfig().loadFromXmlFile(LinphoneManager.getInstance().getmDynamicConfigFile());
+                    LinphonePreferences.instance().invalidateCache();
                     accountCreator.isAccountExist();
                 } else {
                     LinphoneUtils.displayErrorAlert(LinphoneUtils.errorForUsernameStatus(AccountCreator.UsernameStatus.TooShort)
@@ -582,6 +583,7 @@ public class CreateAccountFragment extends Fragment implements CompoundButton.On
                         , AssistantActivity.instance());
             } else {
                 LinphoneManager.getLc().getConfig().loadFromXmlFile(LinphoneManager.getInstance().getmDynamicConfigFile());
+                LinphonePreferences.instance().invalidateCache();
                 accountCreator.isAliasUsed();
             }
         } else {
@@ -260,6 +260,7 @@ public class LinphoneLoginFragment extends Fragment implements CompoundButton.On
             boolean isOk = status == AccountCreator.PhoneNumberStatus.Ok.toInt();
             if (isOk) {
                 LinphoneManager.getLc().getConfig().loadFromXmlFile(LinphoneManager.getInstance().getmDynamicConfigFile());
+                LinphonePreferences.instance().invalidateCache();
                 accountCreator.isAliasUsed();
             } else {
                 apply.setEnabled(true);
@@ -34,7 +34,6 @@ import android.content.res.Resources;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.CountDownTimer;
 import android.os.Handler;
 import android.os.SystemClock;
 import android.support.v4.app.ActivityCompat;
@@ -64,6 +63,7 @@ import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneService;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
+import org.linphone.TaskScheduler;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.activities.LinphoneGenericActivity;
 import org.linphone.contacts.ContactsManager;
@@ -74,15 +74,16 @@ import org.linphone.core.Call;
 import org.linphone.core.Call.State;
 import org.linphone.core.CallListenerStub;
 import org.linphone.core.CallParams;
-import org.linphone.core.CallStats;
 import org.linphone.core.ChatMessage;
 import org.linphone.core.ChatRoom;
 import org.linphone.core.Core;
 import org.linphone.core.CoreListenerStub;
+import org.linphone.core.Factory;
+import org.linphone.core.IceState;
 import org.linphone.core.MediaEncryption;
 import org.linphone.core.PayloadType;
 import org.linphone.core.Player;
-import org.linphone.core.StreamType;
+import org.linphone.core.VideoDefinition;
 import org.linphone.fragments.StatusFragment;
 import org.linphone.mediastream.Log;
 import org.linphone.mediastream.video.capture.hwconf.AndroidCameraConfiguration;
@@ -93,8 +94,6 @@ import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class CallActivity extends LinphoneGenericActivity implements OnClickListener, ActivityCompat.OnRequestPermissionsResultCallback {
     private final static int SECONDS_BEFORE_HIDING_CONTROLS = 4000;
@@ -105,8 +104,8 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
 
     private static CallActivity instance;
 
-    private Handler mControlsHandler = new Handler();
-    private Runnable mControls;
+    private TaskScheduler.Task mControlsTask;
+    private boolean mDestroyed;
     private ImageView switchCamera;
     private TextView missedChats;
     private RelativeLayout mActiveCallHeader, sideMenuContent, avatar_layout;
@@ -121,7 +120,7 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     private LinearLayout mControlsLayout;
     private Numpad numpad;
     private int cameraNumber;
-    private CountDownTimer timer;
+    private TaskScheduler.Task mCallUpdateTimeout;
     private boolean isVideoCallPaused = false;
     private Dialog dialog = null;
     private static long TimeRemind = 0;
@@ -135,12 +134,14 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     private DrawerLayout sideMenu;
 
     private Handler mHandler = new Handler();
-    private Timer mTimer;
-    private TimerTask mTask;
     private HashMap<String, String> mEncoderTexts;
     private HashMap<String, String> mDecoderTexts;
     private CallListenerStub mCallListener;
     private Call mCallDisplayedInStats;
+    private CallStatsSampler.Listener mStatsListener;
+    private StreamStatsViews mAudioStatsViews, mVideoStatsViews;
+    private TextView mDisplayFilter;
+    private final DecimalFormat mStatsFormat = new DecimalFormat("##.##");
 
     private boolean oldIsSpeakerEnabled = false;
 
@@ -306,19 +307,17 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     }
 
     public void createTimerForDialog(long time) {
-        timer = new CountDownTimer(time, 1000) {
-            public void onTick(long millisUntilFinished) {
-                TimeRemind = millisUntilFinished;
-            }
-
-            public void onFinish() {
+        TimeRemind = time;
+        mCallUpdateTimeout = TaskScheduler.getInstance().schedule("Call update timeout", new Runnable() {
+            @Override
+            public void run() {
                 if (dialog != null) {
                     dialog.dismiss();
                     dialog = null;
                 }
                 acceptCallUpdate(false);
             }
-        }.start();
+        }, time);
     }
 
     private boolean isVideoEnabled(Call call) {
@@ -334,6 +333,9 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
         outState.putBoolean("Mic", !LinphoneManager.getLc().micEnabled());
         outState.putBoolean("VideoCallPaused", isVideoCallPaused);
         outState.putBoolean("AskingVideo", isVideoAsk);
+        if (mCallUpdateTimeout != null && mCallUpdateTimeout.isScheduled()) {
+            TimeRemind = mCallUpdateTimeout.getRemainingTime();
+        }
         outState.putLong("TimeRemind", TimeRemind);
         if (status != null) outState.putBoolean("AskingZrtp", status.getisZrtpAsk());
         if (dialog != null) dialog.dismiss();
@@ -974,13 +976,13 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     }
 
     public void resetControlsHidingCallBack() {
-        if (mControlsHandler != null && mControls != null) {
-            mControlsHandler.removeCallbacks(mControls);
+        if (mControlsTask != null) {
+            mControlsTask.cancel();
+            mControlsTask = null;
         }
-        mControls = null;
 
-        if (isVideoEnabled(LinphoneManager.getLc().getCurrentCall()) && mControlsHandler != null) {
-            mControlsHandler.postDelayed(mControls = new Runnable() {
+        if (isVideoEnabled(LinphoneManager.getLc().getCurrentCall()) && !mDestroyed) {
+            mControlsTask = TaskScheduler.getInstance().schedule("Hide call controls", new Runnable() {
                 public void run() {
                     hideNumpad();
                     video.setEnabled(true);
@@ -996,10 +998,10 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     }
 
     public void removeCallbacks() {
-        if (mControlsHandler != null && mControls != null) {
-            mControlsHandler.removeCallbacks(mControls);
+        if (mControlsTask != null) {
+            mControlsTask.cancel();
+            mControlsTask = null;
         }
-        mControls = null;
     }
 
     private void hideNumpad() {
@@ -1080,8 +1082,8 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
     }
 
     public void acceptCallUpdate(boolean accept) {
-        if (timer != null) {
-            timer.cancel();
+        if (mCallUpdateTimeout != null) {
+            mCallUpdateTimeout.cancel();
         }
 
         Call call = LinphoneManager.getLc().getCurrentCall();
@@ -1242,10 +1244,10 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
 
         super.onPause();
 
-        if (mControlsHandler != null && mControls != null) {
-            mControlsHandler.removeCallbacks(mControls);
+        if (mControlsTask != null) {
+            mControlsTask.cancel();
+            mControlsTask = null;
         }
-        mControls = null;
     }
 
     @Override
@@ -1255,15 +1257,16 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
 
         unregisterReceiver(headsetReceiver);
 
-        if (mControlsHandler != null && mControls != null) {
-            mControlsHandler.removeCallbacks(mControls);
+        if (mControlsTask != null) {
+            mControlsTask.cancel();
+            mControlsTask = null;
         }
-        mControls = null;
-        mControlsHandler = null;
+        mDestroyed = true;
 
         unbindDrawables(findViewById(R.id.topLayout));
-        if (mTimer != null) {
-            mTimer.cancel();
+        CallStatsSampler.getInstance().removeListener(mStatsListener);
+        if (mCallDisplayedInStats != null && mCallListener != null) {
+            mCallDisplayedInStats.removeListener(mCallListener);
         }
         instance = null;
         super.onDestroy();
@@ -1601,179 +1604,207 @@ public class CallActivity extends LinphoneGenericActivity implements OnClickList
         return ret;
     }
 
-    private void displayMediaStats(CallParams params, CallStats stats
-            , PayloadType media, View layout, TextView title, TextView codec, TextView dl
-            , TextView ul, TextView edl, TextView ice, TextView ip, TextView senderLossRate
-            , TextView receiverLossRate, TextView enc, TextView dec, TextView videoResolutionSent
-            , TextView videoResolutionReceived, TextView videoFpsSent, TextView videoFpsReceived
-            , boolean isVideo, TextView jitterBuffer) {
-        if (stats != null) {
-            String mime = null;
-
-            layout.setVisibility(View.VISIBLE);
-            title.setVisibility(TextView.VISIBLE);
-            if (media != null) {
-                mime = media.getMimeType();
-                formatText(codec, getString(R.string.call_stats_codec),
-                        mime + " / " + (media.getClockRate() / 1000) + "kHz");
+    /**
+     * Views of a stream in the stats side menu, looked up once, and the values they display
+     * so they are only formatted again when they change.
+     */
+    private static class StreamStatsViews {
+        View layout;
+        TextView title, codec, encoder, decoder, download, upload, estimatedDownload, ice, ip, senderLossRate, receiverLossRate, jitterBuffer;
+        TextView resolutionSent, resolutionReceived, fpsSent, fpsReceived;
+        boolean mVisible = true;
+        int mDownload = -1, mUpload = -1, mEstimatedDownload = -1;
+        float mSenderLossRate = -1, mReceiverLossRate = -1, mJitterBuffer = -1;
+        IceState mIceState;
+        AddressFamily mIpFamily;
+        int mSentWidth = -1, mSentHeight = -1, mReceivedWidth = -1, mReceivedHeight = -1;
+        float mSentFramerate = -1, mReceivedFramerate = -1;
+    }
+
+    private void displayCodecs(Call call) {
+        CallParams params = call.getCurrentParams();
+        if (params == null) return;
+        displayCodec(mAudioStatsViews, params.getUsedAudioPayloadType());
+        displayCodec(mVideoStatsViews, params.getUsedVideoPayloadType());
+        formatText(mDisplayFilter, getString(R.string.call_stats_display_filter), call.getCore().getVideoDisplayFilter());
+    }
+
+    private void displayCodec(StreamStatsViews views, PayloadType media) {
+        if (media == null) return;
+        String mime = media.getMimeType();
+        formatText(views.codec, getString(R.string.call_stats_codec), mime + " / " + (media.getClockRate() / 1000) + "kHz");
+        formatText(views.encoder, getString(R.string.call_stats_encoder_name), getEncoderText(mime));
+        formatText(views.decoder, getString(R.string.call_stats_decoder_name), getDecoderText(mime));
+    }
+
+    private void displayMediaStats(CallStatsSampler.Sample sample) {
+        displayStreamStats(mAudioStatsViews, sample.getAudio(), false);
+        StreamStatsViews views = mVideoStatsViews;
+        if (displayStreamStats(views, sample.getVideo(), true)) {
+            if (sample.getSentWidth() != views.mSentWidth || sample.getSentHeight() != views.mSentHeight) {
+                views.mSentWidth = sample.getSentWidth();
+                views.mSentHeight = sample.getSentHeight();
+                formatText(views.resolutionSent, getString(R.string.call_stats_video_resolution_sent),
+                        "\u2191 " + getVideoDefinitionName(views.mSentWidth, views.mSentHeight));
             }
-            if (mime != null) {
-                formatText(enc, getString(R.string.call_stats_encoder_name), getEncoderText(mime));
-                formatText(dec, getString(R.string.call_stats_decoder_name), getDecoderText(mime));
+            if (sample.getReceivedWidth() != views.mReceivedWidth || sample.getReceivedHeight() != views.mReceivedHeight) {
+                views.mReceivedWidth = sample.getReceivedWidth();
+                views.mReceivedHeight = sample.getReceivedHeight();
+                formatText(views.resolutionReceived, getString(R.string.call_stats_video_resolution_received),
+                        "\u2193 " + getVideoDefinitionName(views.mReceivedWidth, views.mReceivedHeight));
             }
-            formatText(dl, getString(R.string.call_stats_download),
-                    String.valueOf((int) stats.getDownloadBandwidth()) + " kbits/s");
-            formatText(ul, getString(R.string.call_stats_upload),
-                    String.valueOf((int) stats.getUploadBandwidth()) + " kbits/s");
-            if (isVideo) {
-                formatText(edl, getString(R.string.call_stats_estimated_download),
-                        String.valueOf(stats.getEstimatedDownloadBandwidth()) + " kbits/s");
+            if (sample.getSentFramerate() != views.mSentFramerate) {
+                views.mSentFramerate = sample.getSentFramerate();
+                formatText(views.fpsSent, getString(R.string.call_stats_video_fps_sent), "\u2191 " + views.mSentFramerate);
             }
-            formatText(ice, getString(R.string.call_stats_ice),
-                    stats.getIceState().toString());
-            formatText(ip, getString(R.string.call_stats_ip),
-                    (stats.getIpFamilyOfRemote() == AddressFamily.Inet6) ?
-                            "IpV6" : (stats.getIpFamilyOfRemote() == AddressFamily.Inet) ?
-                            "IpV4" : "Unknown");
-            formatText(senderLossRate, getString(R.string.call_stats_sender_loss_rate),
-                    new DecimalFormat("##.##").format(stats.getSenderLossRate()) + "%");
-            formatText(receiverLossRate, getString(R.string.call_stats_receiver_loss_rate),
-                    new DecimalFormat("##.##").format(stats.getReceiverLossRate()) + "%");
-            if (isVideo) {
-                formatText(videoResolutionSent,
-                        getString(R.string.call_stats_video_resolution_sent),
-                        "\u2191 " + params.getSentVideoDefinition() != null ? params.getSentVideoDefinition().getName() : "");
-                formatText(videoResolutionReceived,
-                        getString(R.string.call_stats_video_resolution_received),
-                        "\u2193 " + params.getReceivedVideoDefinition() != null ? params.getReceivedVideoDefinition().getName() : "");
-                formatText(videoFpsSent,
-                        getString(R.string.call_stats_video_fps_sent),
-                        "\u2191 " + params.getSentFramerate());
-                formatText(videoFpsReceived,
-                        getString(R.string.call_stats_video_fps_received),
-                        "\u2193 " + params.getReceivedFramerate());
-            } else {
-                formatText(jitterBuffer, getString(R.string.call_stats_jitter_buffer),
-                        new DecimalFormat("##.##").format(stats.getJitterBufferSizeMs()) + " ms");
+            if (sample.getReceivedFramerate() != views.mReceivedFramerate) {
+                views.mReceivedFramerate = sample.getReceivedFramerate();
+                formatText(views.fpsReceived, getString(R.string.call_stats_video_fps_received), "\u2193 " + views.mReceivedFramerate);
             }
-        } else {
-            layout.setVisibility(View.GONE);
-            title.setVisibility(TextView.GONE);
         }
     }
 
+    /**
+     * @return true if the stream is active
+     */
+    private boolean displayStreamStats(StreamStatsViews views, CallStatsSampler.StreamSample stats, boolean isVideo) {
+        boolean visible = stats.isActive();
+        if (visible != views.mVisible) {
+            views.mVisible = visible;
+            views.layout.setVisibility(visible ? View.VISIBLE : View.GONE);
+            views.title.setVisibility(visible ? View.VISIBLE : View.GONE);
+        }
+        if (!visible) return false;
+
+        int download = (int) stats.getDownloadBandwidth();
+        if (download != views.mDownload) {
+            views.mDownload = download;
+            formatText(views.download, getString(R.string.call_stats_download), download + " kbits/s");
+        }
+        int upload = (int) stats.getUploadBandwidth();
+        if (upload != views.mUpload) {
+            views.mUpload = upload;
+            formatText(views.upload, getString(R.string.call_stats_upload), upload + " kbits/s");
+        }
+        if (isVideo) {
+            int estimatedDownload = (int) stats.getEstimatedDownloadBandwidth();
+            if (estimatedDownload != views.mEstimatedDownload) {
+                views.mEstimatedDownload = estimatedDownload;
+                formatText(views.estimatedDownload, getString(R.string.call_stats_estimated_download), estimatedDownload + " kbits/s");
+            }
+        }
+        if (stats.getIceState() != views.mIceState) {
+            views.mIceState = stats.getIceState();
+            formatText(views.ice, getString(R.string.call_stats_ice), String.valueOf(views.mIceState));
+        }
+        if (stats.getRemoteIpFamily() != views.mIpFamily) {
+            views.mIpFamily = stats.getRemoteIpFamily();
+            formatText(views.ip, getString(R.string.call_stats_ip),
+                    (views.mIpFamily == AddressFamily.Inet6) ?
+                            "IpV6" : (views.mIpFamily == AddressFamily.Inet) ?
+                            "IpV4" : "Unknown");
+        }
+        if (stats.getSenderLossRate() != views.mSenderLossRate) {
+            views.mSenderLossRate = stats.getSenderLossRate();
+            formatText(views.senderLossRate, getString(R.string.call_stats_sender_loss_rate), mStatsFormat.format(views.mSenderLossRate) + "%");
+        }
+        if (stats.getReceiverLossRate() != views.mReceiverLossRate) {
+            views.mReceiverLossRate = stats.getReceiverLossRate();
+            formatText(views.receiverLossRate, getString(R.string.call_stats_receiver_loss_rate), mStatsFormat.format(views.mReceiverLossRate) + "%");
+        }
+        if (!isVideo && stats.getJitterBufferSize() != views.mJitterBuffer) {
+            views.mJitterBuffer = stats.getJitterBufferSize();
+            formatText(views.jitterBuffer, getString(R.string.call_stats_jitter_buffer), mStatsFormat.format(views.mJitterBuffer) + " ms");
+        }
+        return true;
+    }
+
+    private String getVideoDefinitionName(int width, int height) {
+        if (width == 0 || height == 0) return "";
+        VideoDefinition definition = Factory.instance().findSupportedVideoDefinition(width, height);
+        return definition != null && definition.getName() != null ? definition.getName() : width + "x" + height;
+    }
+
     public void initCallStatsRefresher(final Call call, final View view) {
         if (mCallDisplayedInStats == call) return;
 
-        if (mTimer != null && mTask != null) {
-            mTimer.cancel();
-            mTimer = null;
-            mTask = null;
+        CallStatsSampler.getInstance().removeListener(mStatsListener);
+        if (mCallDisplayedInStats != null && mCallListener != null) {
+            mCallDisplayedInStats.removeListener(mCallListener);
         }
         mCallDisplayedInStats = call;
 
         if (call == null) return;
 
-        final TextView titleAudio = view.findViewById(R.id.call_stats_audio);
-        final TextView titleVideo = view.findViewById(R.id.call_stats_video);
-        final TextView codecAudio = view.findViewById(R.id.codec_audio);
-        final TextView codecVideo = view.findViewById(R.id.codec_video);
-        final TextView encoderAudio = view.findViewById(R.id.encoder_audio);
-        final TextView decoderAudio = view.findViewById(R.id.decoder_audio);
-        final TextView encoderVideo = view.findViewById(R.id.encoder_video);
-        final TextView decoderVideo = view.findViewById(R.id.decoder_video);
-        final TextView displayFilter = view.findViewById(R.id.display_filter);
-        final TextView dlAudio = view.findViewById(R.id.downloadBandwith_audio);
-        final TextView ulAudio = view.findViewById(R.id.uploadBandwith_audio);
-        final TextView dlVideo = view.findViewById(R.id.downloadBandwith_video);
-        final TextView ulVideo = view.findViewById(R.id.uploadBandwith_video);
-        final TextView edlVideo = view.findViewById(R.id.estimatedDownloadBandwidth_video);
-        final TextView iceAudio = view.findViewById(R.id.ice_audio);
-        final TextView iceVideo = view.findViewById(R.id.ice_video);
-        final TextView videoResolutionSent = view.findViewById(R.id.video_resolution_sent);
-        final TextView videoResolutionReceived = view.findViewById(R.id.video_resolution_received);
-        final TextView videoFpsSent = view.findViewById(R.id.video_fps_sent);
-        final TextView videoFpsReceived = view.findViewById(R.id.video_fps_received);
-        final TextView senderLossRateAudio = view.findViewById(R.id.senderLossRateAudio);
-        final TextView receiverLossRateAudio = view.findViewById(R.id.receiverLossRateAudio);
-        final TextView senderLossRateVideo = view.findViewById(R.id.senderLossRateVideo);
-        final TextView receiverLossRateVideo = view.findViewById(R.id.receiverLossRateVideo);
-        final TextView ipAudio = view.findViewById(R.id.ip_audio);
-        final TextView ipVideo = view.findViewById(R.id.ip_video);
-        final TextView jitterBufferAudio = view.findViewById(R.id.jitterBufferAudio);
-        final View videoLayout = view.findViewById(R.id.callStatsVideo);
-        final View audioLayout = view.findViewById(R.id.callStatsAudio);
+        if (mAudioStatsViews == null) {
+            mDisplayFilter = view.findViewById(R.id.display_filter);
+
+            StreamStatsViews audio = new StreamStatsViews();
+            audio.layout = view.findViewById(R.id.callStatsAudio);
+            audio.title = view.findViewById(R.id.call_stats_audio);
+            audio.codec = view.findViewById(R.id.codec_audio);
+            audio.encoder = view.findViewById(R.id.encoder_audio);
+            audio.decoder = view.findViewById(R.id.decoder_audio);
+            audio.download = view.findViewById(R.id.downloadBandwith_audio);
+            audio.upload = view.findViewById(R.id.uploadBandwith_audio);
+            audio.ice = view.findViewById(R.id.ice_audio);
+            audio.ip = view.findViewById(R.id.ip_audio);
+            audio.senderLossRate = view.findViewById(R.id.senderLossRateAudio);
+            audio.receiverLossRate = view.findViewById(R.id.receiverLossRateAudio);
+            audio.jitterBuffer = view.findViewById(R.id.jitterBufferAudio);
+            mAudioStatsViews = audio;
+
+            StreamStatsViews video = new StreamStatsViews();
+            video.layout = view.findViewById(R.id.callStatsVideo);
+            video.title = view.findViewById(R.id.call_stats_video);
+            video.codec = view.findViewById(R.id.codec_video);
+            video.encoder = view.findViewById(R.id.encoder_video);
+            video.decoder = view.findViewById(R.id.decoder_video);
+            video.download = view.findViewById(R.id.downloadBandwith_video);
+            video.upload = view.findViewById(R.id.uploadBandwith_video);
+            video.estimatedDownload = view.findViewById(R.id.estimatedDownloadBandwidth_video);
+            video.ice = view.findViewById(R.id.ice_video);
+            video.ip = view.findViewById(R.id.ip_video);
+            video.senderLossRate = view.findViewById(R.id.senderLossRateVideo);
+            video.receiverLossRate = view.findViewById(R.id.receiverLossRateVideo);
+            video.resolutionSent = view.findViewById(R.id.video_resolution_sent);
+            video.resolutionReceived = view.findViewById(R.id.video_resolution_received);
+            video.fpsSent = view.findViewById(R.id.video_fps_sent);
+            video.fpsReceived = view.findViewById(R.id.video_fps_received);
+            mVideoStatsViews = video;
+
+            mStatsListener = new CallStatsSampler.Listener() {
+                @Override
+                public void onCallStatsSampled(Call sampledCall, CallStatsSampler.Sample sample) {
+                    // Nothing to refresh while the side menu is closed, it's refreshed when opened
+                    if (sampledCall != mCallDisplayedInStats || !sideMenu.isDrawerVisible(Gravity.LEFT)) return;
+                    displayMediaStats(sample);
+                }
+            };
+            sideMenu.addDrawerListener(new DrawerLayout.SimpleDrawerListener() {
+                @Override
+                public void onDrawerOpened(View drawerView) {
+                    CallStatsSampler sampler = CallStatsSampler.getInstance();
+                    if (sampler.getCall() == mCallDisplayedInStats && sampler.getSampleCount() > 0) {
+                        displayMediaStats(sampler.getSample(0));
+                    }
+                }
+            });
+        }
 
         mCallListener = new CallListenerStub() {
             public void onStateChanged(Call call, Call.State cstate, String message) {
                 if (cstate == Call.State.End || cstate == Call.State.Error) {
-                    if (mTimer != null) {
-                        Log.i("Call is terminated, stopping timer in charge of stats refreshing.");
-                        mTimer.cancel();
-                    }
-                }
-            }
-        };
-
-        mTimer = new Timer();
-        mTask = new TimerTask() {
-            @Override
-            public void run() {
-                if (call == null) {
-                    mTimer.cancel();
-                    return;
-                }
-
-                if (titleAudio == null || codecAudio == null || dlVideo == null || edlVideo == null || iceAudio == null
-                        || videoResolutionSent == null || videoLayout == null || titleVideo == null
-                        || ipVideo == null || ipAudio == null || codecVideo == null
-                        || dlAudio == null || ulAudio == null || ulVideo == null || iceVideo == null
-                        || videoResolutionReceived == null) {
-                    mTimer.cancel();
-                    return;
+                    Log.i("Call is terminated, stopping stats refreshing.");
+                    CallStatsSampler.getInstance().removeListener(mStatsListener);
+                } else if (cstate == Call.State.StreamsRunning || cstate == Call.State.Updating || cstate == Call.State.UpdatedByRemote) {
+                    displayCodecs(call);
                 }
-
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (LinphoneManager.getLcIfManagerNotDestroyedOrNull() == null) return;
-                        synchronized (LinphoneManager.getLc()) {
-                            if (LinphoneActivity.isInstanciated() && call.getState() != Call.State.Released) {
-                                CallParams params = call.getCurrentParams();
-                                if (params != null) {
-                                    CallStats audioStats = call.getStats(StreamType.Audio);
-                                    CallStats videoStats = null;
-
-                                    if (params.videoEnabled())
-                                        videoStats = call.getStats(StreamType.Video);
-
-                                    PayloadType payloadAudio = params.getUsedAudioPayloadType();
-                                    PayloadType payloadVideo = params.getUsedVideoPayloadType();
-
-                                    formatText(displayFilter, getString(R.string.call_stats_display_filter), call.getCore().getVideoDisplayFilter());
-
-                                    displayMediaStats(params, audioStats, payloadAudio, audioLayout
-                                            , titleAudio, codecAudio, dlAudio, ulAudio, null, iceAudio
-                                            , ipAudio, senderLossRateAudio, receiverLossRateAudio
-                                            , encoderAudio, decoderAudio, null, null, null, null
-                                            , false, jitterBufferAudio);
-
-                                    displayMediaStats(params, videoStats, payloadVideo, videoLayout
-                                            , titleVideo, codecVideo, dlVideo, ulVideo, edlVideo, iceVideo
-                                            , ipVideo, senderLossRateVideo, receiverLossRateVideo
-                                            , encoderVideo, decoderVideo
-                                            , videoResolutionSent, videoResolutionReceived
-                                            , videoFpsSent, videoFpsReceived
-                                            , true, null);
-                                }
-                            }
-                        }
-                    }
-                });
             }
         };
         call.addListener(mCallListener);
-        mTimer.scheduleAtFixedRate(mTask, 0, 1000);
+        displayCodecs(call);
+        CallStatsSampler.getInstance().addListener(mStatsListener);
     }
 
     ////Earset Connectivity Broadcast innerClass
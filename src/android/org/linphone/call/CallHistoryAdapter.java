@@ -19,7 +19,6 @@ package org.linphone.call;
  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
@@ -32,21 +31,15 @@ import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.contacts.ContactsManager;
-import org.linphone.contacts.LinphoneContact;
-import org.linphone.core.Address;
-import org.linphone.core.Call;
 import org.linphone.core.CallLog;
 import org.linphone.ui.SelectableAdapter;
 import org.linphone.ui.SelectableHelper;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.List;
-
 public class CallHistoryAdapter extends SelectableAdapter<CallHistoryAdapter.ViewHolder> {
     public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener,
             View.OnLongClickListener {
@@ -97,23 +90,43 @@ public class CallHistoryAdapter extends SelectableAdapter<CallHistoryAdapter.Vie
         }
     }
 
-    private List<CallLog> mLogs;
+    private CallHistoryModel mModel;
+    private boolean mMissedOnly;
     private Context mContext;
     private CallHistoryAdapter.ViewHolder.ClickListener clickListener;
 
-    public CallHistoryAdapter(Context aContext, List<CallLog> logs, CallHistoryAdapter.ViewHolder.ClickListener listener, SelectableHelper helper) {
+    public CallHistoryAdapter(Context aContext, CallHistoryModel model, boolean missedOnly, CallHistoryAdapter.ViewHolder.ClickListener listener, SelectableHelper helper) {
         super(helper);
-        this.mLogs = logs;
+        this.mModel = model;
+        this.mMissedOnly = missedOnly;
         this.mContext = aContext;
         this.clickListener = listener;
     }
 
     public int getCount() {
-        return mLogs.size();
+        return mModel.size(mMissedOnly);
     }
 
     public Object getItem(int position) {
-        return mLogs.get(position);
+        return mModel.getLog(position, mMissedOnly);
+    }
+
+    public CallHistoryModel.Entry getEntry(int position) {
+        return mModel.get(position, mMissedOnly);
+    }
+
+    public boolean isMissedOnly() {
+        return mMissedOnly;
+    }
+
+    /**
+     * To be called once a call log has been added to the model: only the first row and the one it pushed down change.
+     */
+    public void onLogAdded() {
+        notifyItemInserted(0);
+        if (getItemCount() > 1) {
+            notifyItemChanged(1);
+        }
     }
 
     @NonNull
@@ -124,61 +137,42 @@ public class CallHistoryAdapter extends SelectableAdapter<CallHistoryAdapter.Vie
 
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        ImageLoader.getInstance(holder.contactPicture.getContext()).cancel(holder.contactPicture);
+        super.onViewRecycled(holder);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull final ViewHolder holder, final int position) {
-        final CallLog log = mLogs.get(position);
-        long timestamp = log.getStartDate() * 1000;
-        Address address;
+        final CallHistoryModel.Entry entry = mModel.get(position, mMissedOnly);
+        final CallLog log = entry.getLog();
 
         holder.contact.setSelected(true); // For automated horizontal scrolling of long texts
-        Calendar logTime = Calendar.getInstance();
-        logTime.setTimeInMillis(timestamp);
-        holder.separatorText.setText(timestampToHumanDate(logTime));
+        holder.separatorText.setText(mModel.getDayLabel(entry));
+        holder.separator.setVisibility(mModel.isFirstOfDay(position, mMissedOnly) ? View.VISIBLE : View.GONE);
         holder.select.setVisibility(isEditionEnabled() ? View.VISIBLE : View.GONE);
         holder.select.setChecked(isSelected(position));
 
-        if (position > 0) {
-            CallLog previousLog = mLogs.get(position - 1);
-            long previousTimestamp = previousLog.getStartDate() * 1000;
-            Calendar previousLogTime = Calendar.getInstance();
-            previousLogTime.setTimeInMillis(previousTimestamp);
-
-            if (isSameDay(previousLogTime, logTime)) {
-                holder.separator.setVisibility(View.GONE);
-            } else {
-                holder.separator.setVisibility(View.VISIBLE);
-            }
-        } else {
-            holder.separator.setVisibility(View.VISIBLE);
-        }
-
-        if (log.getDir() == Call.Dir.Incoming) {
-            address = log.getFromAddress();
-            if (log.getStatus() == Call.Status.Missed) {
+        if (entry.isIncoming()) {
+            if (entry.isMissed()) {
                 holder.callDirection.setImageResource(R.drawable.call_status_missed);
             } else {
                 holder.callDirection.setImageResource(R.drawable.call_status_incoming);
             }
         } else {
-            address = log.getToAddress();
             holder.callDirection.setImageResource(R.drawable.call_status_outgoing);
         }
 
-        LinphoneContact c = ContactsManager.getInstance().findContactFromAddress(address);
-        String displayName = null;
-        final String sipUri = (address != null) ? address.asString() : "";
-        if (c != null) {
-            displayName = c.getFullName();
-            LinphoneUtils.setThumbnailPictureFromUri(LinphoneActivity.instance(), holder.contactPicture, c.getThumbnailUri());
+        CallHistoryModel.Peer peer = mModel.getPeer(entry);
+        final String sipUri = entry.getSipUri();
+        if (peer.isContact()) {
+            LinphoneUtils.setThumbnailPictureFromUri(LinphoneActivity.instance(), holder.contactPicture, peer.getThumbnailUri());
         } else {
+            ImageLoader.getInstance(mContext).cancel(holder.contactPicture);
             holder.contactPicture.setImageBitmap(ContactsManager.getInstance().getDefaultAvatarBitmap());
         }
-
-        if (displayName == null) {
-            holder.contact.setText(LinphoneUtils.getAddressDisplayName(sipUri));
-        } else {
-            holder.contact.setText(displayName);
-        }
+        holder.contact.setText(peer.getDisplayName());
 
         holder.detail.setVisibility(isEditionEnabled() ? View.INVISIBLE : View.VISIBLE);
         holder.detail.setOnClickListener(!isEditionEnabled() ?
@@ -197,40 +191,6 @@ public class CallHistoryAdapter extends SelectableAdapter<CallHistoryAdapter.Vie
 
     @Override
     public int getItemCount() {
-        return mLogs.size();
-    }
-
-    @SuppressLint("SimpleDateFormat")
-    private String timestampToHumanDate(Calendar cal) {
-        SimpleDateFormat dateFormat;
-        if (isToday(cal)) {
-            return mContext.getString(R.string.today);
-        } else if (isYesterday(cal)) {
-            return mContext.getString(R.string.yesterday);
-        } else {
-            dateFormat = new SimpleDateFormat(mContext.getResources().getString(R.string.history_date_format));
-        }
-
-        return dateFormat.format(cal.getTime());
-    }
-
-    private boolean isSameDay(Calendar cal1, Calendar cal2) {
-        if (cal1 == null || cal2 == null) {
-            return false;
-        }
-
-        return (cal1.get(Calendar.ERA) == cal2.get(Calendar.ERA) &&
-                cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR));
-    }
-
-    private boolean isToday(Calendar cal) {
-        return isSameDay(cal, Calendar.getInstance());
-    }
-
-    private boolean isYesterday(Calendar cal) {
-        Calendar yesterday = Calendar.getInstance();
-        yesterday.roll(Calendar.DAY_OF_MONTH, -1);
-        return isSameDay(cal, yesterday);
+        return mModel.size(mMissedOnly);
     }
 }
\ No newline at end of file
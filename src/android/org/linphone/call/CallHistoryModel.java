@@ -0,0 +1,450 @@
+package org.linphone.call;
+
+/*
+CallHistoryModel.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+
+import org.linphone.LinphoneUtils;
+import org.linphone.R;
+import org.linphone.contacts.ContactsManager;
+import org.linphone.contacts.LinphoneContact;
+import org.linphone.core.Address;
+import org.linphone.core.Call;
+import org.linphone.core.CallLog;
+import org.linphone.core.Core;
+import org.linphone.mediastream.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Call logs as displayed by the history list, newest first.<br />
+ * Only the rows around the visible ones are read from their CallLog (direction, status, peer, date): the others
+ * are released, so opening a long history or scrolling through it costs what is displayed, not the history size.
+ * Day sections are found by comparing a row with the previous one, and each day label is formatted once.
+ * Missed calls are looked for a page at a time while the main looper is idle (the Core isn't thread safe),
+ * the missed calls list growing as they are found.
+ * The contact of each peer is looked up once, until contacts change.
+ */
+public class CallHistoryModel {
+    public static final int PAGE_SIZE = 30;
+    private static final int WINDOW_SIZE = 4 * PAGE_SIZE; // in rows kept on each side of the visible ones
+    static final int SCAN_PAGE_SIZE = 200; // in logs checked for missed calls per idle pass
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    public interface Listener {
+        /**
+         * Missed calls have been appended to the missed calls list.
+         */
+        void onMissedCallsFound(int position, int count);
+
+        /**
+         * The whole history has been looked through for missed calls.
+         */
+        void onMissedCallsScanned();
+    }
+
+    public static class Entry {
+        private final CallLog mLog;
+        private final Address mAddress;
+        private final String mSipUri;
+        private final long mTimestamp;
+        private final long mDay;
+        private final boolean mIncoming, mMissed;
+
+        Entry(CallLog log) {
+            mLog = log;
+            mIncoming = log.getDir() == Call.Dir.Incoming;
+            mMissed = log.getStatus() == Call.Status.Missed;
+            mAddress = mIncoming ? log.getFromAddress() : log.getToAddress();
+            mSipUri = mAddress != null ? mAddress.asString() : "";
+            mTimestamp = log.getStartDate() * 1000;
+            mDay = toDay(mTimestamp);
+        }
+
+        public CallLog getLog() {
+            return mLog;
+        }
+
+        public Address getAddress() {
+            return mAddress;
+        }
+
+        public String getSipUri() {
+            return mSipUri;
+        }
+
+        public boolean isIncoming() {
+            return mIncoming;
+        }
+
+        public boolean isMissed() {
+            return mMissed;
+        }
+    }
+
+    public static class Peer {
+        private final String mDisplayName;
+        private final Uri mThumbnailUri;
+        private final boolean mIsContact;
+
+        Peer(String displayName, Uri thumbnailUri, boolean isContact) {
+            mDisplayName = displayName;
+            mThumbnailUri = thumbnailUri;
+            mIsContact = isContact;
+        }
+
+        public String getDisplayName() {
+            return mDisplayName;
+        }
+
+        public Uri getThumbnailUri() {
+            return mThumbnailUri;
+        }
+
+        public boolean isContact() {
+            return mIsContact;
+        }
+    }
+
+    private final Context mContext;
+    private Listener mListener;
+    private final ArrayList<CallLog> mLogs = new ArrayList<>();
+    private final ArrayList<Entry> mEntries = new ArrayList<>(); // null when released
+    private int mResidentFrom, mResidentTo; // bounds of the rows that may be loaded, inclusive
+    private int[] mMissed = new int[16]; // rows of the missed calls found so far
+    private int mMissedCount;
+    private int mScanPosition; // next row to check for a missed call
+    private boolean mIdleHandlerAdded;
+    private final HashMap<String, Peer> mPeers = new HashMap<>();
+    private final HashMap<Long, String> mDayLabels = new HashMap<>();
+    private SimpleDateFormat mDateFormat;
+    private long mToday;
+
+    private final MessageQueue.IdleHandler mScanHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            boolean moreWork = scanStep();
+            if (!moreWork) {
+                mIdleHandlerAdded = false;
+            }
+            return moreWork;
+        }
+    };
+
+    public CallHistoryModel(Context context) {
+        mContext = context;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Reads again the call logs list from the Core; their content is only read when displayed.
+     */
+    public void refresh(Core core) {
+        long start = SystemClock.uptimeMillis();
+        CallLog[] logs = core.getCallLogs();
+        load(logs);
+        Log.i("[Call History] Listed " + logs.length + " call logs in " + (SystemClock.uptimeMillis() - start) + "ms");
+        scheduleScan();
+    }
+
+    /**
+     * Replaces the call logs without reading anything from them, the missed calls scan starting over.
+     */
+    void load(CallLog[] logs) {
+        mLogs.clear();
+        mLogs.addAll(Arrays.asList(logs));
+        mEntries.clear();
+        mEntries.addAll(Collections.<Entry>nCopies(logs.length, null));
+        mResidentFrom = 0;
+        mResidentTo = -1;
+        mMissedCount = 0;
+        mScanPosition = 0;
+        mDayLabels.clear();
+        mToday = toDay(System.currentTimeMillis());
+    }
+
+    public void cancel() {
+        if (mIdleHandlerAdded) {
+            Looper.myQueue().removeIdleHandler(mScanHandler);
+            mIdleHandlerAdded = false;
+        }
+    }
+
+    public int size(boolean missedOnly) {
+        return missedOnly ? mMissedCount : mLogs.size();
+    }
+
+    public boolean isMissedCallsScanComplete() {
+        return mScanPosition >= mLogs.size();
+    }
+
+    /**
+     * @return the call log of this row, without reading anything from it
+     */
+    public CallLog getLog(int position, boolean missedOnly) {
+        return mLogs.get(toRow(position, missedOnly));
+    }
+
+    /**
+     * @return the entry of this row, loading it (and its neighbours) if it was released
+     */
+    public Entry get(int position, boolean missedOnly) {
+        return getRow(toRow(position, missedOnly));
+    }
+
+    /**
+     * @return true if this is the first (most recent) row of its day in the list
+     */
+    public boolean isFirstOfDay(int position, boolean missedOnly) {
+        if (position == 0) return true;
+        return get(position - 1, missedOnly).mDay != get(position, missedOnly).mDay;
+    }
+
+    @SuppressLint("SimpleDateFormat")
+    public String getDayLabel(Entry entry) {
+        String label = mDayLabels.get(entry.mDay);
+        if (label == null) {
+            if (entry.mDay == mToday) {
+                label = mContext.getString(R.string.today);
+            } else if (entry.mDay == mToday - 1) {
+                label = mContext.getString(R.string.yesterday);
+            } else {
+                if (mDateFormat == null) {
+                    mDateFormat = new SimpleDateFormat(mContext.getString(R.string.history_date_format));
+                }
+                label = mDateFormat.format(new Date(entry.mTimestamp));
+            }
+            mDayLabels.put(entry.mDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * @return the contact name and picture of this entry's peer, looked up once per peer until contacts change
+     */
+    public Peer getPeer(Entry entry) {
+        Peer peer = mPeers.get(entry.mSipUri);
+        if (peer == null) {
+            LinphoneContact contact = ContactsManager.getInstance().findContactFromAddress(entry.mAddress);
+            if (contact != null) {
+                peer = new Peer(contact.getFullName(), contact.getThumbnailUri(), true);
+            } else {
+                peer = new Peer(LinphoneUtils.getAddressDisplayName(entry.mSipUri), null, false);
+            }
+            mPeers.put(entry.mSipUri, peer);
+        }
+        return peer;
+    }
+
+    public void onContactsUpdated() {
+        mPeers.clear();
+    }
+
+    /**
+     * To be called when the list scrolls, releases the rows far from the visible ones.
+     */
+    public void onVisibleRangeChanged(int first, int last, boolean missedOnly) {
+        if (first < 0 || last < 0 || last >= size(missedOnly)) return;
+        int windowFrom = Math.max(0, toRow(first, missedOnly) - WINDOW_SIZE);
+        int windowTo = Math.min(mEntries.size() - 1, toRow(last, missedOnly) + WINDOW_SIZE);
+        if (mResidentTo < mResidentFrom) return;
+
+        for (int i = mResidentFrom; i < windowFrom && i <= mResidentTo; i++) {
+            mEntries.set(i, null);
+        }
+        for (int i = Math.max(windowTo + 1, mResidentFrom); i <= mResidentTo; i++) {
+            mEntries.set(i, null);
+        }
+        mResidentFrom = Math.max(mResidentFrom, windowFrom);
+        mResidentTo = Math.min(mResidentTo, windowTo);
+    }
+
+    /**
+     * Adds a new call log at the top of the history.
+     *
+     * @return false if it was already there
+     */
+    public boolean add(CallLog log) {
+        for (int i = 0; i < mLogs.size() && i < PAGE_SIZE; i++) {
+            if (mLogs.get(i) == log) return false;
+        }
+
+        Entry entry = new Entry(log);
+        mLogs.add(0, log);
+        mEntries.add(0, entry);
+        mResidentFrom = 0;
+        mResidentTo = mResidentTo < 0 ? 0 : mResidentTo + 1;
+        for (int i = 0; i < mMissedCount; i++) {
+            mMissed[i]++;
+        }
+        if (entry.mMissed) {
+            ensureMissedCapacity(mMissedCount + 1);
+            System.arraycopy(mMissed, 0, mMissed, 1, mMissedCount);
+            mMissed[0] = 0;
+            mMissedCount++;
+        }
+        mScanPosition++;
+        return true;
+    }
+
+    /**
+     * Removes these call logs from the model in a single pass, without reading anything from the remaining ones.
+     * The call logs must have been removed from the Core already.
+     */
+    public void removeAll(Set<CallLog> logs) {
+        int size = mLogs.size();
+        int[] newRows = new int[size];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            CallLog log = mLogs.get(i);
+            if (logs.contains(log)) {
+                newRows[i] = -1;
+                continue;
+            }
+            newRows[i] = kept;
+            mLogs.set(kept, log);
+            mEntries.set(kept, mEntries.get(i));
+            kept++;
+        }
+        mLogs.subList(kept, size).clear();
+        mEntries.subList(kept, size).clear();
+
+        int missedKept = 0;
+        for (int i = 0; i < mMissedCount; i++) {
+            int row = newRows[mMissed[i]];
+            if (row >= 0) mMissed[missedKept++] = row;
+        }
+        mMissedCount = missedKept;
+
+        int scanPosition = 0;
+        for (int i = 0; i < mScanPosition && i < size; i++) {
+            if (newRows[i] >= 0) scanPosition++;
+        }
+        mScanPosition = scanPosition;
+        mResidentFrom = 0;
+        mResidentTo = kept - 1;
+    }
+
+    public void clear() {
+        cancel();
+        mLogs.clear();
+        mEntries.clear();
+        mResidentFrom = 0;
+        mResidentTo = -1;
+        mMissedCount = 0;
+        mScanPosition = 0;
+    }
+
+    /**
+     * @return a set to give to removeAll(), call logs don't override equals()
+     */
+    public static Set<CallLog> newLogSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<CallLog, Boolean>());
+    }
+
+    private int toRow(int position, boolean missedOnly) {
+        if (!missedOnly) return position;
+        if (position >= mMissedCount) throw new IndexOutOfBoundsException("Missed call " + position + " of " + mMissedCount);
+        return mMissed[position];
+    }
+
+    private Entry getRow(int row) {
+        Entry entry = mEntries.get(row);
+        if (entry == null) {
+            int begin = Math.max(0, row - PAGE_SIZE / 2);
+            int end = Math.min(mLogs.size(), row + PAGE_SIZE / 2);
+            for (int i = begin; i < end; i++) {
+                if (mEntries.get(i) == null) {
+                    mEntries.set(i, new Entry(mLogs.get(i)));
+                }
+            }
+            if (mResidentTo < mResidentFrom) {
+                mResidentFrom = begin;
+                mResidentTo = end - 1;
+            } else {
+                mResidentFrom = Math.min(mResidentFrom, begin);
+                mResidentTo = Math.max(mResidentTo, end - 1);
+            }
+            entry = mEntries.get(row);
+        }
+        return entry;
+    }
+
+    /**
+     * Looks for missed calls in the next SCAN_PAGE_SIZE logs.
+     *
+     * @return true if there are more logs to look through
+     */
+    boolean scanStep() {
+        int start = mMissedCount;
+        int end = Math.min(mScanPosition + SCAN_PAGE_SIZE, mLogs.size());
+        for (; mScanPosition < end; mScanPosition++) {
+            Entry entry = mEntries.get(mScanPosition);
+            boolean missed = entry != null ? entry.mMissed : mLogs.get(mScanPosition).getStatus() == Call.Status.Missed;
+            if (missed) {
+                ensureMissedCapacity(mMissedCount + 1);
+                mMissed[mMissedCount++] = mScanPosition;
+            }
+        }
+
+        if (mListener != null && mMissedCount > start) {
+            mListener.onMissedCallsFound(start, mMissedCount - start);
+        }
+        if (isMissedCallsScanComplete()) {
+            Log.i("[Call History] Found " + mMissedCount + " missed calls in " + mLogs.size() + " call logs");
+            if (mListener != null) mListener.onMissedCallsScanned();
+            return false;
+        }
+        return true;
+    }
+
+    private void ensureMissedCapacity(int capacity) {
+        if (capacity > mMissed.length) {
+            mMissed = Arrays.copyOf(mMissed, Math.max(capacity, mMissed.length * 2));
+        }
+    }
+
+    private void scheduleScan() {
+        if (mIdleHandlerAdded || isMissedCallsScanComplete()) return;
+        mIdleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(mScanHandler);
+    }
+
+    private static long toDay(long timestamp) {
+        return (timestamp + TimeZone.getDefault().getOffset(timestamp)) / DAY;
+    }
+}
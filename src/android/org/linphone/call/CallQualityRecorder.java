@@ -0,0 +1,466 @@
+package org.linphone.call;
+
+/*
+CallQualityRecorder.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.linphone.ImageLoader;
+import org.linphone.core.Call;
+import org.linphone.core.CallLog;
+import org.linphone.mediastream.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a media quality timeline for each call, from the samples of the CallStatsSampler, so it can be exported
+ * (CSV or JSON) from the call history once the call is over.<br />
+ * Timelines are stored in the application files, next to the call logs database, one file per call named after
+ * the call log's call id. Each file is a small header followed by fixed size records (RECORD_SIZE, 34 bytes per
+ * sample, one sample per second so about 120 kB per hour of call), buffered in memory and appended to the file
+ * every FLUSH_RECORDS samples and at the end of the call, on a background thread.
+ * Timelines are deleted along with their call logs.
+ * Must be used from the main thread, like the Core.
+ */
+public class CallQualityRecorder implements CallStatsSampler.Listener {
+    private static final String DIRECTORY = "call_quality";
+    private static final String EXTENSION = ".bin";
+    private static final int MAGIC = 0x4c515431; // "LQT1"
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 34; // elapsed time (4), quality and flags (2), 14 values (2 each)
+    private static final int FLUSH_RECORDS = 30;
+    private static final long MAX_DIRECTORY_SIZE = 5 * 1024 * 1024;
+
+    private static final int FLAG_VIDEO = 1;
+
+    public interface ExportListener {
+        /**
+         * Called on the main thread.
+         *
+         * @param file the exported timeline, null if there was none or it couldn't be written
+         */
+        void onExported(File file);
+    }
+
+    public interface TimelineListener {
+        /**
+         * Called on the main thread.
+         */
+        void onTimelineChecked(String callId, boolean exists);
+    }
+
+    private class Recording {
+        final File mFile;
+        final long mStartTime; // uptime, in ms
+        final ByteBuffer mBuffer = ByteBuffer.allocate(HEADER_SIZE + FLUSH_RECORDS * RECORD_SIZE);
+        int mSamples;
+
+        Recording(File file, long startDate) {
+            mFile = file;
+            mStartTime = SystemClock.uptimeMillis();
+            mBuffer.putInt(MAGIC);
+            mBuffer.putShort(VERSION);
+            mBuffer.putShort((short) CallStatsSampler.PERIOD);
+            mBuffer.putLong(startDate);
+        }
+    }
+
+    private final File mDirectory;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final IdentityHashMap<Call, Recording> mRecordings = new IdentityHashMap<>();
+    private final ThreadPoolExecutor mWriter;
+
+    public CallQualityRecorder(Context context) {
+        mDirectory = new File(context.getFilesDir(), DIRECTORY);
+        mWriter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CallQualityRecorder");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWriter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts recording a call once its streams are running, and stops when it ends.
+     */
+    public void onCallStateChanged(Call call, Call.State state) {
+        if (state == Call.State.StreamsRunning) {
+            if (!mRecordings.containsKey(call)) {
+                start(call);
+            }
+        } else if (state == Call.State.End || state == Call.State.Error || state == Call.State.Released) {
+            Recording recording = mRecordings.remove(call);
+            if (recording != null) {
+                flush(recording, true);
+                Log.i("[Call Quality] Recorded " + recording.mSamples + " samples to " + recording.mFile.getName());
+            }
+            if (mRecordings.isEmpty()) {
+                CallStatsSampler.getInstance().removeListener(this);
+            }
+        }
+    }
+
+    /**
+     * Stops every recording, saving what was recorded so far.
+     */
+    public void stop() {
+        for (Recording recording : mRecordings.values()) {
+            flush(recording, true);
+        }
+        mRecordings.clear();
+        CallStatsSampler.getInstance().removeListener(this);
+    }
+
+    /**
+     * Checks whether a call has a timeline on the background thread, once its pending samples are written,
+     * so the main thread doesn't wait for the file system.
+     *
+     * @param callId the call id of the call log
+     */
+    public void checkTimeline(final String callId, final TimelineListener listener) {
+        final File file = getFile(callId);
+        final boolean recording = file != null && getRecording(file) != null;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean exists = recording || (file != null && file.exists());
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onTimelineChecked(callId, exists);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Deletes the timeline of a call, once its pending samples are written.
+     *
+     * @param callId the call id of the call log
+     */
+    public void delete(String callId) {
+        final File file = getFile(callId);
+        if (file == null) return;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) {
+                    Log.w("[Call Quality] Couldn't delete " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes every timeline, except the ones of the calls being recorded.
+     */
+    public void deleteAll() {
+        final HashSet<File> recorded = new HashSet<>();
+        for (Recording recording : mRecordings.values()) {
+            recorded.add(recording.mFile);
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = mDirectory.listFiles();
+                if (files == null) return;
+                int deleted = 0;
+                for (File file : files) {
+                    if (recorded.contains(file)) continue;
+                    if (file.delete()) {
+                        deleted += 1;
+                    } else {
+                        Log.w("[Call Quality] Couldn't delete " + file);
+                    }
+                }
+                Log.i("[Call Quality] Deleted " + deleted + " timelines");
+            }
+        });
+    }
+
+    /**
+     * Converts the timeline of a call to CSV or JSON, in a file of the given directory.
+     * Pending samples of that call, including the ones still buffered if it is being recorded, are written before it's read.
+     */
+    public void export(String callId, final File outputDirectory, final boolean json, final ExportListener listener) {
+        final File file = getFile(callId);
+        Recording recording = file != null ? getRecording(file) : null;
+        if (recording != null) {
+            flush(recording, false); // Queued before the export, so it's in the file when read
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                final File exported = file != null ? export(file, outputDirectory, json) : null;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onExported(exported);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onCallStatsSampled(Call call, CallStatsSampler.Sample sample) {
+        Recording recording = mRecordings.get(call);
+        if (recording == null) return;
+
+        ByteBuffer buffer = recording.mBuffer;
+        CallStatsSampler.StreamSample audio = sample.getAudio();
+        CallStatsSampler.StreamSample video = sample.getVideo();
+        buffer.putInt((int) (sample.getTime() - recording.mStartTime));
+        buffer.put((byte) clamp(sample.getQuality() * 10, 0, Byte.MAX_VALUE));
+        buffer.put((byte) (video.isActive() ? FLAG_VIDEO : 0));
+        buffer.putShort(toShort(audio.getDownloadBandwidth()));
+        buffer.putShort(toShort(audio.getUploadBandwidth()));
+        buffer.putShort(toShort(audio.getSenderLossRate() * 100));
+        buffer.putShort(toShort(audio.getReceiverLossRate() * 100));
+        buffer.putShort(toShort(audio.getJitterBufferSize()));
+        buffer.putShort(toShort(audio.getRoundTripDelay()));
+        buffer.putShort(toShort(video.getDownloadBandwidth()));
+        buffer.putShort(toShort(video.getUploadBandwidth()));
+        buffer.putShort(toShort(video.getEstimatedDownloadBandwidth()));
+        buffer.putShort(toShort(video.getSenderLossRate() * 100));
+        buffer.putShort(toShort(video.getReceiverLossRate() * 100));
+        buffer.putShort(toShort(video.getJitterBufferSize()));
+        buffer.putShort(toShort(sample.getSentFramerate() * 10));
+        buffer.putShort(toShort(sample.getReceivedFramerate() * 10));
+        recording.mSamples += 1;
+
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush(recording, false);
+        }
+    }
+
+    private void start(Call call) {
+        CallLog log = call.getCallLog();
+        File file = log != null ? getFile(log.getCallId()) : null;
+        if (file == null) return;
+
+        mRecordings.put(call, new Recording(file, log.getStartDate() * 1000));
+        CallStatsSampler.getInstance().addListener(this);
+    }
+
+    private Recording getRecording(File file) {
+        for (Recording recording : mRecordings.values()) {
+            if (recording.mFile.equals(file)) return recording;
+        }
+        return null;
+    }
+
+    private File getFile(String callId) {
+        if (callId == null || callId.isEmpty()) return null;
+        return new File(mDirectory, ImageLoader.hash(callId) + EXTENSION);
+    }
+
+    private void flush(final Recording recording, final boolean last) {
+        ByteBuffer buffer = recording.mBuffer;
+        if (buffer.position() == 0 && !last) return;
+
+        final byte[] bytes = Arrays.copyOf(buffer.array(), buffer.position());
+        buffer.clear();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(recording.mFile, bytes);
+                if (last) {
+                    ImageLoader.trimDirectory(mDirectory, MAX_DIRECTORY_SIZE);
+                }
+            }
+        });
+    }
+
+    private void append(File file, byte[] bytes) {
+        if (bytes.length == 0) return;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w("[Call Quality] Couldn't create directory " + mDirectory);
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file, true);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.e(e, "[Call Quality] Couldn't write " + file);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(e);
+                }
+            }
+        }
+    }
+
+    private static File export(File file, File outputDirectory, boolean json) {
+        if (!file.exists()) return null;
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            Log.w("[Call Quality] Couldn't create directory " + outputDirectory);
+            return null;
+        }
+
+        DataInputStream in = null;
+        Writer out = null;
+        File exported = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                Log.w("[Call Quality] Unknown timeline format in " + file);
+                return null;
+            }
+            int period = in.readShort();
+            long startDate = in.readLong();
+
+            String name = "call_quality_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date(startDate));
+            exported = new File(outputDirectory, name + (json ? ".json" : ".csv"));
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(exported), "UTF-8"));
+            int samples = json ? writeJson(in, out, startDate, period) : writeCsv(in, out, startDate);
+            Log.i("[Call Quality] Exported " + samples + " samples to " + exported);
+        } catch (IOException e) {
+            Log.e(e, "[Call Quality] Couldn't export " + file);
+            exported = null;
+        } finally {
+            try {
+                if (in != null) in.close();
+                if (out != null) out.close();
+            } catch (IOException e) {
+                Log.e(e);
+            }
+        }
+        return exported;
+    }
+
+    private static final String[] COLUMNS = {
+            "time", "elapsed_ms", "quality", "video",
+            "audio_download_kbps", "audio_upload_kbps", "audio_sender_loss_percent", "audio_receiver_loss_percent", "audio_jitter_buffer_ms", "audio_rtt_ms",
+            "video_download_kbps", "video_upload_kbps", "video_estimated_download_kbps", "video_sender_loss_percent", "video_receiver_loss_percent", "video_jitter_buffer_ms",
+            "video_fps_sent", "video_fps_received"
+    };
+
+    /**
+     * Reads the next record as the values of COLUMNS, null at the end of the file.
+     */
+    private static String[] readRecord(DataInputStream in, long startDate, String[] values) throws IOException {
+        int elapsed;
+        try {
+            elapsed = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        values[0] = String.valueOf(startDate + elapsed);
+        values[1] = String.valueOf(elapsed);
+        values[2] = String.valueOf(in.readByte() / 10f);
+        values[3] = String.valueOf((in.readByte() & FLAG_VIDEO) != 0);
+        values[4] = String.valueOf(in.readShort());
+        values[5] = String.valueOf(in.readShort());
+        values[6] = String.valueOf(in.readShort() / 100f);
+        values[7] = String.valueOf(in.readShort() / 100f);
+        values[8] = String.valueOf(in.readShort());
+        values[9] = String.valueOf(in.readShort());
+        values[10] = String.valueOf(in.readShort());
+        values[11] = String.valueOf(in.readShort());
+        values[12] = String.valueOf(in.readShort());
+        values[13] = String.valueOf(in.readShort() / 100f);
+        values[14] = String.valueOf(in.readShort() / 100f);
+        values[15] = String.valueOf(in.readShort());
+        values[16] = String.valueOf(in.readShort() / 10f);
+        values[17] = String.valueOf(in.readShort() / 10f);
+        return values;
+    }
+
+    private static int writeCsv(DataInputStream in, Writer out, long startDate) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) out.write(',');
+            out.write(COLUMNS[i]);
+        }
+        out.write('\n');
+
+        String[] values = new String[COLUMNS.length];
+        int samples = 0;
+        while (readRecord(in, startDate, values) != null) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                out.write(values[i]);
+            }
+            out.write('\n');
+            samples += 1;
+        }
+        return samples;
+    }
+
+    private static int writeJson(DataInputStream in, Writer out, long startDate, int period) throws IOException {
+        out.write("{\"start\":" + startDate + ",\"period_ms\":" + period + ",\"samples\":[");
+
+        String[] values = new String[COLUMNS.length];
+        int samples = 0;
+        while (readRecord(in, startDate, values) != null) {
+            out.write(samples > 0 ? ",\n{" : "\n{");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) out.write(',');
+                out.write('"');
+                out.write(COLUMNS[i]);
+                out.write("\":");
+                out.write(values[i]);
+            }
+            out.write('}');
+            samples += 1;
+        }
+        out.write("\n]}\n");
+        return samples;
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    private static short toShort(float value) {
+        return (short) Math.round(clamp(value, 0, Short.MAX_VALUE));
+    }
+}
@@ -0,0 +1,307 @@
+package org.linphone.call;
+
+/*
+CallStatsSampler.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.os.SystemClock;
+
+import org.linphone.LinphoneManager;
+import org.linphone.TaskScheduler;
+import org.linphone.core.AddressFamily;
+import org.linphone.core.Call;
+import org.linphone.core.CallParams;
+import org.linphone.core.CallStats;
+import org.linphone.core.Core;
+import org.linphone.core.IceState;
+import org.linphone.core.StreamType;
+import org.linphone.core.VideoDefinition;
+
+import java.util.ArrayList;
+
+/**
+ * Reads the statistics of the current call once per period, for everyone displaying or recording them
+ * (stats side menu, quality indicator, ...), instead of each of them polling the call on its own.<br />
+ * Samples are copied into a ring buffer of preallocated samples, so sampling doesn't allocate anything on the Java
+ * side once started (the Core wrappers returned for the call stats and params still are).
+ * Sampling only runs while there are listeners. Must be used from the main thread, like the Core.
+ */
+public class CallStatsSampler {
+    public static final int PERIOD = 1000; // in ms
+    public static final int CAPACITY = 120; // in samples
+
+    public interface Listener {
+        /**
+         * @param sample only valid until the next one, copy what has to be kept
+         */
+        void onCallStatsSampled(Call call, Sample sample);
+    }
+
+    public static class StreamSample {
+        private boolean mActive;
+        private float mDownloadBandwidth, mUploadBandwidth, mEstimatedDownloadBandwidth; // in kbits/s
+        private float mSenderLossRate, mReceiverLossRate; // in %
+        private float mJitterBufferSize; // in ms
+        private float mRoundTripDelay; // in ms
+        private IceState mIceState;
+        private AddressFamily mRemoteIpFamily;
+
+        private void read(CallStats stats) {
+            mActive = stats != null;
+            if (stats == null) return;
+            mDownloadBandwidth = stats.getDownloadBandwidth();
+            mUploadBandwidth = stats.getUploadBandwidth();
+            mEstimatedDownloadBandwidth = stats.getEstimatedDownloadBandwidth();
+            mSenderLossRate = stats.getSenderLossRate();
+            mReceiverLossRate = stats.getReceiverLossRate();
+            mJitterBufferSize = stats.getJitterBufferSizeMs();
+            mRoundTripDelay = stats.getRoundTripDelay() * 1000;
+            mIceState = stats.getIceState();
+            mRemoteIpFamily = stats.getIpFamilyOfRemote();
+        }
+
+        private void copy(StreamSample other) {
+            mActive = other.mActive;
+            mDownloadBandwidth = other.mDownloadBandwidth;
+            mUploadBandwidth = other.mUploadBandwidth;
+            mEstimatedDownloadBandwidth = other.mEstimatedDownloadBandwidth;
+            mSenderLossRate = other.mSenderLossRate;
+            mReceiverLossRate = other.mReceiverLossRate;
+            mJitterBufferSize = other.mJitterBufferSize;
+            mRoundTripDelay = other.mRoundTripDelay;
+            mIceState = other.mIceState;
+            mRemoteIpFamily = other.mRemoteIpFamily;
+        }
+
+        public boolean isActive() {
+            return mActive;
+        }
+
+        public float getDownloadBandwidth() {
+            return mDownloadBandwidth;
+        }
+
+        public float getUploadBandwidth() {
+            return mUploadBandwidth;
+        }
+
+        public float getEstimatedDownloadBandwidth() {
+            return mEstimatedDownloadBandwidth;
+        }
+
+        public float getSenderLossRate() {
+            return mSenderLossRate;
+        }
+
+        public float getReceiverLossRate() {
+            return mReceiverLossRate;
+        }
+
+        public float getJitterBufferSize() {
+            return mJitterBufferSize;
+        }
+
+        /**
+         * @return the round trip delay computed from the RTCP reports, 0 until there is one
+         */
+        public float getRoundTripDelay() {
+            return mRoundTripDelay;
+        }
+
+        public IceState getIceState() {
+            return mIceState;
+        }
+
+        public AddressFamily getRemoteIpFamily() {
+            return mRemoteIpFamily;
+        }
+    }
+
+    public static class Sample {
+        private long mTime; // uptime, in ms
+        private float mQuality;
+        private final StreamSample mAudio = new StreamSample();
+        private final StreamSample mVideo = new StreamSample();
+        private int mSentWidth, mSentHeight, mReceivedWidth, mReceivedHeight;
+        private float mSentFramerate, mReceivedFramerate;
+
+        public void copy(Sample other) {
+            mTime = other.mTime;
+            mQuality = other.mQuality;
+            mAudio.copy(other.mAudio);
+            mVideo.copy(other.mVideo);
+            mSentWidth = other.mSentWidth;
+            mSentHeight = other.mSentHeight;
+            mReceivedWidth = other.mReceivedWidth;
+            mReceivedHeight = other.mReceivedHeight;
+            mSentFramerate = other.mSentFramerate;
+            mReceivedFramerate = other.mReceivedFramerate;
+        }
+
+        public long getTime() {
+            return mTime;
+        }
+
+        public float getQuality() {
+            return mQuality;
+        }
+
+        public StreamSample getAudio() {
+            return mAudio;
+        }
+
+        /**
+         * @return the video stream sample, not active if video isn't enabled
+         */
+        public StreamSample getVideo() {
+            return mVideo;
+        }
+
+        public int getSentWidth() {
+            return mSentWidth;
+        }
+
+        public int getSentHeight() {
+            return mSentHeight;
+        }
+
+        public int getReceivedWidth() {
+            return mReceivedWidth;
+        }
+
+        public int getReceivedHeight() {
+            return mReceivedHeight;
+        }
+
+        public float getSentFramerate() {
+            return mSentFramerate;
+        }
+
+        public float getReceivedFramerate() {
+            return mReceivedFramerate;
+        }
+    }
+
+    private static CallStatsSampler sInstance;
+
+    public static synchronized CallStatsSampler getInstance() {
+        if (sInstance == null) {
+            sInstance = new CallStatsSampler();
+        }
+        return sInstance;
+    }
+
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+    private final Sample[] mSamples = new Sample[CAPACITY];
+    private int mNext; // index of the slot the next sample goes into
+    private int mCount;
+    private Call mCall; // the call the samples in the buffer belong to
+    private TaskScheduler.Task mSamplingTask;
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+        }
+    };
+
+    private CallStatsSampler() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mSamples[i] = new Sample();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        if (mListeners.contains(listener)) return;
+        mListeners.add(listener);
+        if (mSamplingTask == null) {
+            mSamplingTask = TaskScheduler.getInstance().scheduleAtFixedRate("Call stats sampling", mSampleRunnable, 0, PERIOD);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty() && mSamplingTask != null) {
+            mSamplingTask.cancel();
+            mSamplingTask = null;
+        }
+    }
+
+    /**
+     * @return the call the buffered samples belong to, null if none
+     */
+    public Call getCall() {
+        return mCall;
+    }
+
+    public int getSampleCount() {
+        return mCount;
+    }
+
+    /**
+     * @param age 0 for the last sample, up to getSampleCount() - 1 for the oldest one still buffered
+     */
+    public Sample getSample(int age) {
+        if (age < 0 || age >= mCount) throw new IndexOutOfBoundsException("Sample " + age + " of " + mCount);
+        return mSamples[(mNext - 1 - age + CAPACITY) % CAPACITY];
+    }
+
+    private void sample() {
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        Call call = lc != null ? lc.getCurrentCall() : null;
+        if (call == null || call.getState() == Call.State.Released) return;
+        CallParams params = call.getCurrentParams();
+        if (params == null) return;
+
+        if (call != mCall) {
+            mCall = call;
+            mCount = 0;
+            mNext = 0;
+        }
+
+        Sample sample = mSamples[mNext];
+        sample.mTime = SystemClock.uptimeMillis();
+        sample.mQuality = call.getCurrentQuality();
+        sample.mAudio.read(call.getStats(StreamType.Audio));
+        boolean video = params.videoEnabled();
+        sample.mVideo.read(video ? call.getStats(StreamType.Video) : null);
+        if (video) {
+            VideoDefinition sent = params.getSentVideoDefinition();
+            VideoDefinition received = params.getReceivedVideoDefinition();
+            sample.mSentWidth = sent != null ? sent.getWidth() : 0;
+            sample.mSentHeight = sent != null ? sent.getHeight() : 0;
+            sample.mReceivedWidth = received != null ? received.getWidth() : 0;
+            sample.mReceivedHeight = received != null ? received.getHeight() : 0;
+            sample.mSentFramerate = params.getSentFramerate();
+            sample.mReceivedFramerate = params.getReceivedFramerate();
+        } else {
+            sample.mSentWidth = sample.mSentHeight = sample.mReceivedWidth = sample.mReceivedHeight = 0;
+            sample.mSentFramerate = sample.mReceivedFramerate = 0;
+        }
+
+        mNext = (mNext + 1) % CAPACITY;
+        if (mCount < CAPACITY) mCount++;
+
+        // Indexed loop, no iterator allocated; listeners may unregister themselves
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            if (i < mListeners.size()) {
+                mListeners.get(i).onCallStatsSampled(call, sample);
+            }
+        }
+    }
+}
@@ -25,7 +25,6 @@ import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.text.Editable;
-import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -53,6 +52,7 @@ import org.linphone.core.Core;
 import org.linphone.core.ProxyConfig;
 import org.linphone.mediastream.Log;
 import org.linphone.ui.ContactSelectView;
+import org.linphone.ui.TextWatcherStub;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -125,19 +125,7 @@ public class ChatCreationFragment extends Fragment implements View.OnClickListen
         mSearchAdapter = new SearchContactsListAdapter(null, mContactsFetchInProgress, this);
 
         mSearchField = view.findViewById(R.id.searchField);
-        mSearchField.addTextChangedListener(new TextWatcher() {
-            @Override
-            public void onTextChanged(CharSequence s, int start, int before, int count) {
-                if (before > count) {
-                    ContactsManager.getInstance().getMagicSearch().resetSearchCache();
-                }
-            }
-
-            @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-
-            }
-
+        mSearchField.addTextChangedListener(new TextWatcherStub() {
             @Override
             public void afterTextChanged(Editable s) {
                 mSearchAdapter.searchContacts(mSearchField.getText().toString(), mContactsList);
@@ -230,6 +218,7 @@ public class ChatCreationFragment extends Fragment implements View.OnClickListen
             mChatRoom.removeListener(mChatRoomCreationListener);
         }
         ContactsManager.removeContactsListener(this);
+        mSearchAdapter.cancelSearch();
         super.onPause();
     }
 
@@ -306,7 +295,7 @@ public class ChatCreationFragment extends Fragment implements View.OnClickListen
     }
 
     private void resetAndResearch() {
-        ContactsManager.getInstance().getMagicSearch().resetSearchCache();
+        mSearchAdapter.resetSearchCache();
         mSearchAdapter.searchContacts(mSearchField.getText().toString(), mContactsList);
     }
 
@@ -450,6 +439,7 @@ public class ChatCreationFragment extends Fragment implements View.OnClickListen
 
     @Override
     public void onContactsUpdated() {
+        mSearchAdapter.resetSearchCache();
         updateList();
     }
 }
@@ -26,18 +26,15 @@ import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.media.ExifInterface;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.v4.content.FileProvider;
 import android.text.Spanned;
 import android.text.method.LinkMovementMethod;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -63,13 +60,13 @@ import org.linphone.ui.SelectableAdapter;
 import org.linphone.ui.SelectableHelper;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static android.content.Intent.FLAG_GRANT_READ_URI_PERMISSION;
 
@@ -77,28 +74,82 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
 
     private static int MARGIN_BETWEEN_MESSAGES = 10;
     private static int SIDE_MARGIN = 100;
+    private static final int VIEW_TYPE_EVENT = 0;
+    private static final int VIEW_TYPE_HIDDEN = 1; // zero height row of an event not displayed
     private Context mContext;
-    private List<EventLog> mHistory;
+    private ChatHistoryPager mHistory;
+    private final boolean mMessagesOnly; // other events are in the history but not displayed (one to one rooms)
     private List<LinphoneContact> mParticipants;
     private int mItemResource;
-    private Bitmap mDefaultBitmap;
+    private Bitmap mDefaultBitmap, mImagePlaceholder, mFilePlaceholder;
     private GroupChatFragment mFragment;
     private ChatMessageListenerStub mListener;
 
     private ChatBubbleViewHolder.ClickListener mClickListener;
 
-    public ChatEventsAdapter(GroupChatFragment fragment, SelectableHelper helper, int itemResource, EventLog[] history, ArrayList<LinphoneContact> participants, ChatBubbleViewHolder.ClickListener clickListener) {
+    /*
+     * Sequence of each loaded message in mHistory, position is sequence - mFirstSequence.
+     * Inserting at the top only decrements mFirstSequence, so no other entry has to be updated.
+     * The wrappers of a native message are always the same Java object, hence the identity map.
+     */
+    private final Map<ChatMessage, Integer> mMessagesSequences = new IdentityHashMap<>();
+    private int mFirstSequence;
+    private final Set<ChatMessage> mChangedMessages = Collections.newSetFromMap(new IdentityHashMap<ChatMessage, Boolean>());
+    private boolean mFrameCallbackPosted;
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameCallbackPosted = false;
+            for (ChatMessage message : mChangedMessages) {
+                int position = getMessagePosition(message);
+                if (position >= 0) {
+                    notifyItemChanged(position);
+                }
+            }
+            mChangedMessages.clear();
+        }
+    };
+
+    private final ChatHistoryPager.Listener mHistoryListener = new ChatHistoryPager.Listener() {
+        @Override
+        public void onEventLoaded(int position, EventLog event) {
+            indexEvent(event, mFirstSequence + position);
+        }
+
+        @Override
+        public void onEventReleased(int position, EventLog event) {
+            if (event.getType() == EventLog.Type.ConferenceChatMessage) {
+                ChatMessage message = event.getChatMessage();
+                message.setUserData(null); // Its holder is bound to another row now
+                if (message.getState() != ChatMessage.State.InProgress) {
+                    // Else keep listening until the transfer is done, the downloaded file path has to be saved
+                    message.setListener(null);
+                }
+                mMessagesSequences.remove(message);
+                mChangedMessages.remove(message);
+            }
+        }
+
+        @Override
+        public void onEventsAppended(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+    };
+
+    public ChatEventsAdapter(GroupChatFragment fragment, SelectableHelper helper, int itemResource, ChatHistoryPager history, boolean messagesOnly, ArrayList<LinphoneContact> participants, ChatBubbleViewHolder.ClickListener clickListener) {
         super(helper);
+        mMessagesOnly = messagesOnly;
         mFragment = fragment;
         mContext = mFragment.getActivity();
         mItemResource = itemResource;
-        mHistory = new ArrayList<>(Arrays.asList(history));
-        Collections.reverse(mHistory);
+        mHistory = history;
+        mHistory.setListener(mHistoryListener);
         mParticipants = participants;
         mClickListener = clickListener;
         mListener = new ChatMessageListenerStub() {
             @Override
             public void onFileTransferProgressIndication(ChatMessage message, Content content, int offset, int total) {
+                LinphoneManager.getInstance().getCoreScheduler().wakeUp(); // Keep iterating at full rate while transferring
                 ChatBubbleViewHolder holder = (ChatBubbleViewHolder) message.getUserData();
                 if (holder == null) return;
 
@@ -122,16 +173,15 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
                     }
                     message.setFileTransferFilepath(null); // Not needed anymore, will help differenciate between InProgress states for file transfer / message sending
                 }
-                for (int i = 0; i < mHistory.size(); i++) {
-                    EventLog log = mHistory.get(i);
-                    if (log.getType() == EventLog.Type.ConferenceChatMessage && log.getChatMessage() == message) {
-                        notifyItemChanged(i);
-                        break;
-                    }
-                }
-
+                notifyMessageChanged(message);
             }
         };
+        indexHistory();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return isHidden(position) ? VIEW_TYPE_HIDDEN : VIEW_TYPE_EVENT;
     }
 
     @Override
@@ -139,6 +189,11 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
         View v = LayoutInflater.from(parent.getContext())
                 .inflate(mItemResource, parent, false);
         ChatBubbleViewHolder VH = new ChatBubbleViewHolder(mContext, v, mClickListener);
+        if (viewType == VIEW_TYPE_HIDDEN) {
+            v.getLayoutParams().height = 0;
+            v.setVisibility(View.GONE);
+            return VH;
+        }
 
         //Allows onLongClick ContextMenu on bubbles
         mFragment.registerForContextMenu(v);
@@ -148,6 +203,8 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
 
     @Override
     public void onBindViewHolder(@NonNull ChatBubbleViewHolder holder, final int position) {
+        if (holder.getItemViewType() == VIEW_TYPE_HIDDEN) return;
+
         final EventLog event = mHistory.get(position);
         holder.eventLayout.setVisibility(View.GONE);
         holder.bubbleLayout.setVisibility(View.GONE);
@@ -174,8 +231,12 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
             holder.bubbleLayout.setVisibility(View.VISIBLE);
             final ChatMessage message = event.getChatMessage();
 
-            if (position > 0 && mContext.getResources().getBoolean(R.bool.lower_space_between_chat_bubbles_if_same_person)) {
-                EventLog previousEvent = (EventLog) getItem(position - 1);
+            int previous = position - 1;
+            while (previous >= 0 && isHidden(previous)) {
+                previous--; // Hidden rows aren't between two bubbles on screen
+            }
+            if (previous >= 0 && mContext.getResources().getBoolean(R.bool.lower_space_between_chat_bubbles_if_same_person)) {
+                EventLog previousEvent = (EventLog) getItem(previous);
                 if (previousEvent.getType() == EventLog.Type.ConferenceChatMessage) {
                     ChatMessage previousMessage = previousEvent.getChatMessage();
                     if (previousMessage.getFromAddress().weakEqual(message.getFromAddress())) {
@@ -343,6 +404,7 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
                                 message.setListener(mListener);
                                 message.setFileTransferFilepath(file.getPath());
                                 message.downloadFile();
+                                LinphoneManager.getInstance().getCoreScheduler().wakeUp();
 
                             } else {
                                 Log.w("WRITE_EXTERNAL_STORAGE permission not granted, won't be able to store the downloaded file");
@@ -421,36 +483,67 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
         return mHistory.size();
     }
 
+    /**
+     * Events other than messages aren't displayed in one to one rooms, so they can't be selected (and deleted) either
+     */
+    @Override
+    protected boolean isSelectable(int position) {
+        return !isHidden(position);
+    }
+
+    @Override
+    protected int getSelectableItemCount() {
+        return mMessagesOnly ? mHistory.getMessagesCount() : mHistory.size();
+    }
+
     public void addToHistory(EventLog log) {
-        mHistory.add(0, log);
+        mHistory.prepend(log);
+        mFirstSequence--;
+        indexEvent(log, mFirstSequence);
         notifyItemInserted(0);
     }
 
-    public void addAllToHistory(ArrayList<EventLog> logs) {
-        int currentSize = mHistory.size() - 1;
-        Collections.reverse(logs);
-        mHistory.addAll(logs);
-        notifyItemRangeInserted(currentSize + 1, logs.size());
+    private boolean isHidden(int position) {
+        return mMessagesOnly && !mHistory.isMessage(position);
+    }
+
+    public ChatHistoryPager getHistory() {
+        return mHistory;
+    }
+
+    private int getMessagePosition(ChatMessage message) {
+        Integer sequence = mMessagesSequences.get(message);
+        if (sequence == null) return -1;
+        int position = sequence - mFirstSequence;
+        return (position >= 0 && position < mHistory.size()) ? position : -1;
     }
 
     public void setContacts(ArrayList<LinphoneContact> participants) {
         mParticipants = participants;
     }
 
-    public void refresh(EventLog[] history) {
-        mHistory = new ArrayList<>(Arrays.asList(history));
-        Collections.reverse(mHistory);
+    public void refresh(ChatHistoryPager history) {
+        mHistory.clear();
+        mHistory = history;
+        mHistory.setListener(mHistoryListener);
+        indexHistory();
         notifyDataSetChanged();
     }
 
     public void clear() {
-        for (EventLog event : mHistory) {
-            if (event.getType() == EventLog.Type.ConferenceChatMessage) {
+        for (int i = mHistory.getLoadedFrom(); i <= mHistory.getLoadedTo(); i++) {
+            EventLog event = mHistory.peek(i);
+            if (event != null && event.getType() == EventLog.Type.ConferenceChatMessage) {
                 ChatMessage message = event.getChatMessage();
                 message.setListener(null);
             }
         }
         mHistory.clear();
+        indexHistory();
+        if (mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallbackPosted = false;
+        }
     }
 
     public int getCount() {
@@ -462,25 +555,90 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
     }
 
     public void removeItem(int i) {
-        mHistory.remove(i);
+        EventLog log = mHistory.remove(i);
+        int removedSequence = mFirstSequence + i;
+        if (log != null && log.getType() == EventLog.Type.ConferenceChatMessage) {
+            ChatMessage message = log.getChatMessage();
+            mMessagesSequences.remove(message);
+            mChangedMessages.remove(message);
+        }
+        for (Map.Entry<ChatMessage, Integer> entry : mMessagesSequences.entrySet()) {
+            if (entry.getValue() > removedSequence) {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
         notifyItemRemoved(i);
     }
 
+    private void indexHistory() {
+        mMessagesSequences.clear();
+        mChangedMessages.clear();
+        mFirstSequence = 0;
+        for (int i = mHistory.getLoadedFrom(); i <= mHistory.getLoadedTo(); i++) {
+            EventLog event = mHistory.peek(i);
+            if (event != null) {
+                indexEvent(event, i);
+            }
+        }
+    }
+
+    private void indexEvent(EventLog log, int sequence) {
+        if (log.getType() == EventLog.Type.ConferenceChatMessage) {
+            mMessagesSequences.put(log.getChatMessage(), sequence);
+        }
+    }
+
+    /**
+     * Rebinds the row of the message at the next frame, once whatever the number of state changes received until then.
+     */
+    private void notifyMessageChanged(ChatMessage message) {
+        if (!mMessagesSequences.containsKey(message)) return;
+        mChangedMessages.add(message);
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
     private void loadBitmap(String path, ImageView imageView) {
+        Bitmap thumbnail = LinphoneUtils.isExtensionImage(path) ? ChatThumbnailCache.getCachedThumbnail(path) : null;
+        if (thumbnail != null) {
+            cancelPotentialWork(null, imageView);
+            imageView.setImageBitmap(thumbnail);
+            setOpenFileOnClick(imageView, path);
+            return;
+        }
+
         if (cancelPotentialWork(path, imageView)) {
             if (LinphoneUtils.isExtensionImage(path)) {
-                mDefaultBitmap = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.chat_attachment_over);
+                if (mImagePlaceholder == null) {
+                    mImagePlaceholder = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.chat_attachment_over);
+                }
+                mDefaultBitmap = mImagePlaceholder;
             } else {
-                mDefaultBitmap = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.chat_attachment);
+                if (mFilePlaceholder == null) {
+                    mFilePlaceholder = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.chat_attachment);
+                }
+                mDefaultBitmap = mFilePlaceholder;
             }
 
             BitmapWorkerTask task = new BitmapWorkerTask(imageView);
             final AsyncBitmap asyncBitmap = new AsyncBitmap(mContext.getResources(), mDefaultBitmap, task);
             imageView.setImageDrawable(asyncBitmap);
-            task.execute(path);
+            task.executeOnExecutor(ChatThumbnailCache.EXECUTOR, path);
         }
     }
 
+    private void setOpenFileOnClick(ImageView imageView, String path) {
+        imageView.setTag(path);
+        imageView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                openFile((String) v.getTag());
+            }
+        });
+    }
+
     private void openFile(String path) {
         Intent intent = new Intent(Intent.ACTION_VIEW);
         File file;
@@ -550,7 +708,6 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
      */
 
     private class BitmapWorkerTask extends AsyncTask<String, Void, Bitmap> {
-        private static final int SIZE_SMALL = 500;
         private final WeakReference<ImageView> imageViewReference;
         public String path;
 
@@ -564,48 +721,9 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
         @Override
         protected Bitmap doInBackground(String... params) {
             path = params[0];
-            Bitmap bm = null;
-            Bitmap thumbnail = null;
+            if (isCancelled()) return null;
             if (LinphoneUtils.isExtensionImage(path)) {
-                if (path.startsWith("content")) {
-                    try {
-                        bm = MediaStore.Images.Media.getBitmap(mContext.getContentResolver(), Uri.parse(path));
-                    } catch (FileNotFoundException e) {
-                        Log.e(e);
-                    } catch (IOException e) {
-                        Log.e(e);
-                    }
-                } else {
-                    bm = BitmapFactory.decodeFile(path);
-                }
-
-                // Rotate the bitmap if possible/needed, using EXIF data
-                try {
-                    Bitmap bm_tmp;
-                    ExifInterface exif = new ExifInterface(path);
-                    int pictureOrientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
-                    Matrix matrix = new Matrix();
-                    if (pictureOrientation == 6) {
-                        matrix.postRotate(90);
-                    } else if (pictureOrientation == 3) {
-                        matrix.postRotate(180);
-                    } else if (pictureOrientation == 8) {
-                        matrix.postRotate(270);
-                    }
-                    bm_tmp = Bitmap.createBitmap(bm, 0, 0, bm.getWidth(), bm.getHeight(), matrix, true);
-                    if (bm_tmp != bm) {
-                        bm.recycle();
-                        bm = bm_tmp;
-                    }
-                } catch (Exception e) {
-                    Log.e(e);
-                }
-
-                if (bm != null) {
-                    thumbnail = ThumbnailUtils.extractThumbnail(bm, SIZE_SMALL, SIZE_SMALL);
-                    bm.recycle();
-                }
-                return thumbnail;
+                return ChatThumbnailCache.getThumbnail(mContext, path);
             } else {
                 return mDefaultBitmap;
             }
@@ -622,13 +740,7 @@ public class ChatEventsAdapter extends SelectableAdapter<ChatBubbleViewHolder> {
                 final BitmapWorkerTask bitmapWorkerTask = getBitmapWorkerTask(imageView);
                 if (this == bitmapWorkerTask && imageView != null) {
                     imageView.setImageBitmap(bitmap);
-                    imageView.setTag(path);
-                    imageView.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                            openFile((String) v.getTag());
-                        }
-                    });
+                    setOpenFileOnClick(imageView, path);
                 }
             }
         }
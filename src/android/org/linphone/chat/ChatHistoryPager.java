@@ -0,0 +1,378 @@
+package org.linphone.chat;
+
+/*
+ChatHistoryPager.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import org.linphone.core.ChatRoom;
+import org.linphone.core.EventLog;
+import org.linphone.mediastream.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Pages of a chat room history, newest event first.<br />
+ * Only the events around the visible rows are kept: the others are released and loaded again if they come back
+ * into view, so memory stays the same whatever the number of messages scrolled through.
+ * Next page (and released pages close to the visible rows) are fetched when the main looper is idle, before
+ * the user reaches them. The ChatRoom belongs to the Core, which isn't thread safe, hence the idle handler
+ * instead of a background thread.
+ * Rows are all the history events, newest first, so row n is history event n whatever the room.
+ * Whether a row is a message is kept when its event is released, so rows can be told apart without loading them.
+ */
+public class ChatHistoryPager {
+    public static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE; // in rows from the end of the loaded ones
+    private static final int WINDOW_SIZE = 5 * PAGE_SIZE; // in rows kept on each side of the visible ones
+
+    public interface Listener {
+        void onEventLoaded(int position, EventLog event);
+
+        void onEventReleased(int position, EventLog event);
+
+        void onEventsAppended(int position, int count);
+    }
+
+    public interface FindMessageListener {
+        void onMessageFound(int position);
+    }
+
+    private final ChatRoom mChatRoom;
+    private Listener mListener;
+    private final ArrayList<EventLog> mEvents; // null when released
+    private final ArrayList<Boolean> mMessageRows; // whether each row is a message, even released
+    private int mMessagesCount;
+    private int mHistorySize; // events in the room, counted once then kept up to date here
+    private int mLoadedFrom, mLoadedTo; // bounds of the loaded rows, inclusive
+    private int mFirstVisible, mLastVisible;
+    private boolean mIdleHandlerAdded;
+    private String mMessageIdToFind;
+    private int mFindPosition;
+    private FindMessageListener mFindListener;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            // One page at a time so a frame is never delayed by more than a page fetch
+            boolean moreWork = doPendingWork();
+            if (!moreWork) {
+                mIdleHandlerAdded = false;
+            }
+            return moreWork;
+        }
+    };
+
+    /**
+     * @param firstPage newest events as returned by ChatRoom.getHistoryEvents, oldest first
+     */
+    public ChatHistoryPager(ChatRoom chatRoom, EventLog[] firstPage) {
+        mChatRoom = chatRoom;
+        mHistorySize = chatRoom.getHistoryEventsSize();
+        mEvents = new ArrayList<>(firstPage.length);
+        mMessageRows = new ArrayList<>(firstPage.length);
+        for (int i = firstPage.length - 1; i >= 0; i--) {
+            addRow(mEvents.size(), firstPage[i], true);
+        }
+        mLoadedFrom = 0;
+        mLoadedTo = mEvents.size() - 1;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public int size() {
+        return mEvents.size();
+    }
+
+    /**
+     * @return whether the event at this row is a message, without loading it
+     */
+    public boolean isMessage(int position) {
+        return mMessageRows.get(position);
+    }
+
+    /**
+     * @return the number of rows that are messages
+     */
+    public int getMessagesCount() {
+        return mMessagesCount;
+    }
+
+    /**
+     * @return the event at this row, loading it (and its neighbours) if it was released
+     */
+    public EventLog get(int position) {
+        EventLog event = mEvents.get(position);
+        if (event == null) {
+            loadRange(Math.max(0, position - PAGE_SIZE / 2), Math.min(mEvents.size(), position + PAGE_SIZE / 2));
+            event = mEvents.get(position);
+        }
+        return event;
+    }
+
+    /**
+     * @return the event at this row if it is loaded, null otherwise
+     */
+    public EventLog peek(int position) {
+        return mEvents.get(position);
+    }
+
+    public int getLoadedFrom() {
+        return mLoadedFrom;
+    }
+
+    public int getLoadedTo() {
+        return mLoadedTo;
+    }
+
+    public void prepend(EventLog event) {
+        addRow(0, event, true);
+        if (mLoadedTo >= mLoadedFrom) {
+            mLoadedTo++;
+        } else {
+            mLoadedTo = 0;
+        }
+        mLoadedFrom = 0;
+        mFirstVisible++;
+        mLastVisible++;
+        mHistorySize++;
+        if (mMessageIdToFind != null) mFindPosition++;
+    }
+
+    public EventLog remove(int position) {
+        EventLog event = mEvents.remove(position);
+        if (mMessageRows.remove(position)) mMessagesCount--;
+        if (position <= mLoadedTo) mLoadedTo--;
+        if (position < mLoadedFrom) mLoadedFrom--;
+        if (position < mFindPosition) mFindPosition--;
+        mHistorySize--;
+        return event;
+    }
+
+    public void clear() {
+        mEvents.clear();
+        mMessageRows.clear();
+        mMessagesCount = 0;
+        mLoadedFrom = 0;
+        mLoadedTo = -1;
+        mHistorySize = 0;
+        stopFindingMessage();
+        if (mIdleHandlerAdded) {
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+            mIdleHandlerAdded = false;
+        }
+    }
+
+    /**
+     * Looks for the message in the whole history, a page at a time while the main looper is idle.
+     * Rows are added up to it if needed, released so memory doesn't depend on how far it is,
+     * then its page is loaded and the listener called with its row.
+     */
+    public void findMessage(String messageId, FindMessageListener listener) {
+        for (int i = mLoadedFrom; i <= mLoadedTo; i++) {
+            EventLog event = mEvents.get(i);
+            if (event != null && event.getType() == EventLog.Type.ConferenceChatMessage && messageId.equals(event.getChatMessage().getMessageId())) {
+                stopFindingMessage();
+                listener.onMessageFound(i);
+                return;
+            }
+        }
+        mMessageIdToFind = messageId;
+        mFindPosition = 0;
+        mFindListener = listener;
+        scheduleIdleWork();
+    }
+
+    /**
+     * To be called when the list scrolls: releases the events far from the visible rows
+     * and schedules the loading of the ones that will be needed soon.
+     */
+    public void onVisibleRangeChanged(int first, int last) {
+        if (first < 0 || last < 0) return;
+        mFirstVisible = first;
+        mLastVisible = last;
+
+        int windowFrom = Math.max(0, first - WINDOW_SIZE);
+        int windowTo = Math.min(mEvents.size() - 1, last + WINDOW_SIZE);
+        for (int i = mLoadedFrom; i < windowFrom && i <= mLoadedTo; i++) {
+            release(i);
+        }
+        for (int i = Math.max(windowTo + 1, mLoadedFrom); i <= mLoadedTo; i++) {
+            release(i);
+        }
+        if (mLoadedTo >= mLoadedFrom) {
+            mLoadedFrom = Math.max(mLoadedFrom, windowFrom);
+            mLoadedTo = Math.min(mLoadedTo, windowTo);
+        }
+
+        if (hasPendingWork()) {
+            scheduleIdleWork();
+        }
+    }
+
+    private void release(int position) {
+        EventLog event = mEvents.get(position);
+        if (event == null) return;
+        mEvents.set(position, null);
+        if (mListener != null) mListener.onEventReleased(position, event);
+    }
+
+    private boolean hasPendingWork() {
+        return mMessageIdToFind != null || needsNextPage() || findReleasedNearVisible() >= 0;
+    }
+
+    private boolean needsNextPage() {
+        return mLastVisible + PREFETCH_DISTANCE >= mEvents.size() && mEvents.size() < mHistorySize;
+    }
+
+    private boolean doPendingWork() {
+        if (mMessageIdToFind != null) {
+            findMessageStep();
+        } else if (needsNextPage()) {
+            appendPage();
+        } else {
+            int released = findReleasedNearVisible();
+            if (released >= 0) {
+                loadRange(released, Math.min(mEvents.size(), released + PAGE_SIZE));
+            }
+        }
+        return hasPendingWork();
+    }
+
+    private int findReleasedNearVisible() {
+        int from = Math.max(0, mFirstVisible - PAGE_SIZE);
+        int to = Math.min(mEvents.size() - 1, mLastVisible + PAGE_SIZE);
+        for (int i = from; i <= to; i++) {
+            if (mEvents.get(i) == null) return i;
+        }
+        return -1;
+    }
+
+    private void appendPage() {
+        int begin = mEvents.size();
+        int end = Math.min(begin + PAGE_SIZE, mHistorySize);
+        if (end <= begin) return;
+
+        EventLog[] logs = mChatRoom.getHistoryRangeEvents(begin, end);
+        if (logs.length < end - begin) {
+            // Removed behind our back, don't keep asking for events that aren't there
+            mHistorySize = begin + logs.length;
+        }
+        for (int i = logs.length - 1; i >= 0; i--) {
+            addRow(mEvents.size(), logs[i], true);
+        }
+        if (mLoadedTo < mLoadedFrom) mLoadedFrom = begin;
+        mLoadedTo = mEvents.size() - 1;
+
+        if (mListener != null) {
+            mListener.onEventsAppended(begin, logs.length);
+            for (int i = begin; i < mEvents.size(); i++) {
+                mListener.onEventLoaded(i, mEvents.get(i));
+            }
+        }
+    }
+
+    private void findMessageStep() {
+        int begin = mFindPosition;
+        int end = Math.min(begin + PAGE_SIZE, mHistorySize);
+        if (end <= begin) {
+            Log.w("[Chat History] Message to scroll to not found in history");
+            stopFindingMessage();
+            return;
+        }
+
+        EventLog[] logs = mChatRoom.getHistoryRangeEvents(begin, end);
+        if (logs.length < end - begin) {
+            mHistorySize = begin + logs.length;
+        }
+        int appendedFrom = mEvents.size();
+        int found = -1;
+        for (int i = 0; i < logs.length; i++) {
+            int position = begin + i;
+            EventLog event = logs[logs.length - 1 - i];
+            if (position == mEvents.size()) {
+                addRow(position, event, false);
+            }
+            if (found < 0 && event.getType() == EventLog.Type.ConferenceChatMessage && mMessageIdToFind.equals(event.getChatMessage().getMessageId())) {
+                found = position;
+            }
+        }
+        mFindPosition = begin + logs.length;
+        if (mListener != null && mEvents.size() > appendedFrom) {
+            mListener.onEventsAppended(appendedFrom, mEvents.size() - appendedFrom);
+        }
+
+        if (found >= 0) {
+            FindMessageListener listener = mFindListener;
+            stopFindingMessage();
+            get(found);
+            listener.onMessageFound(found);
+        }
+    }
+
+    private void stopFindingMessage() {
+        mMessageIdToFind = null;
+        mFindPosition = 0;
+        mFindListener = null;
+    }
+
+    /**
+     * @param keep false to add the row released
+     */
+    private void addRow(int position, EventLog event, boolean keep) {
+        boolean isMessage = event.getType() == EventLog.Type.ConferenceChatMessage;
+        mEvents.add(position, keep ? event : null);
+        mMessageRows.add(position, isMessage);
+        if (isMessage) mMessagesCount++;
+    }
+
+    /**
+     * Rows are in the same order as the history, newest first, so row n is history event n.
+     */
+    private void loadRange(int begin, int end) {
+        if (end <= begin) return;
+        EventLog[] logs = mChatRoom.getHistoryRangeEvents(begin, end);
+        if (logs.length != end - begin) {
+            Log.w("[Chat History] Expected " + (end - begin) + " events from " + begin + ", got " + logs.length);
+        }
+        for (int i = 0; i < logs.length && begin + i < mEvents.size(); i++) {
+            int position = begin + i;
+            if (mEvents.get(position) != null) continue;
+            EventLog event = logs[logs.length - 1 - i];
+            mEvents.set(position, event);
+            if (mListener != null) mListener.onEventLoaded(position, event);
+        }
+        if (mLoadedTo < mLoadedFrom) {
+            mLoadedFrom = begin;
+            mLoadedTo = Math.min(end, mEvents.size()) - 1;
+        } else {
+            mLoadedFrom = Math.min(mLoadedFrom, begin);
+            mLoadedTo = Math.max(mLoadedTo, Math.min(end, mEvents.size()) - 1);
+        }
+    }
+
+    private void scheduleIdleWork() {
+        if (mIdleHandlerAdded) return;
+        mIdleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+}
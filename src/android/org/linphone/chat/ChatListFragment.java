@@ -114,13 +114,13 @@ public class ChatListFragment extends Fragment implements ContactsUpdatedListene
         mListener = new CoreListenerStub() {
             @Override
             public void onMessageReceived(Core lc, ChatRoom cr, ChatMessage message) {
-                refreshChatRoomsList();
+                mChatRoomsAdapter.refreshChatRoom(cr);
             }
 
             @Override
             public void onChatRoomStateChanged(Core lc, ChatRoom cr, ChatRoom.State state) {
                 if (state == ChatRoom.State.Created) {
-                    refreshChatRoomsList();
+                    mChatRoomsAdapter.refreshChatRoom(cr);
                 }
             }
         };
@@ -234,6 +234,7 @@ public class ChatListFragment extends Fragment implements ContactsUpdatedListene
                 }
             }
 
+            LinphoneManager.getInstance().removeUnreadCountForChatRoom(room);
             room.addListener(mChatRoomListener);
             lc.deleteChatRoom(room);
         }
@@ -249,7 +250,7 @@ public class ChatListFragment extends Fragment implements ContactsUpdatedListene
 
         ChatRoomsAdapter adapter = (ChatRoomsAdapter) mChatRoomsList.getAdapter();
         if (adapter != null) {
-            adapter.notifyDataSetChanged();
+            adapter.refreshContacts();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package org.linphone.chat;
+
+/*
+ChatRoomSummary.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.linphone.LinphoneManager;
+import org.linphone.LinphoneUtils;
+import org.linphone.R;
+import org.linphone.contacts.ContactsManager;
+import org.linphone.contacts.LinphoneContact;
+import org.linphone.core.Address;
+import org.linphone.core.ChatMessage;
+import org.linphone.core.ChatRoom;
+import org.linphone.core.ChatRoomCapabilities;
+import org.linphone.core.Content;
+import org.linphone.core.Participant;
+
+/**
+ * What a row of the chat rooms list displays, read once from the ChatRoom when it changes
+ * so binding a row doesn't go through JNI.
+ */
+public class ChatRoomSummary {
+    private final ChatRoom mChatRoom;
+    private long mLastUpdateTime;
+    private boolean mIsOneToOne;
+    private String mDisplayName;
+    private String mLastMessageSender;
+    private String mLastMessageText;
+    private boolean mLastMessageHasFile;
+    private boolean mIsPeerContact;
+    private Uri mAvatarUri;
+    private int mUnreadCount;
+    private boolean mHasUnreadMessages;
+
+    public ChatRoomSummary(Context context, ChatRoom room) {
+        mChatRoom = room;
+        update(context);
+    }
+
+    /**
+     * Reads again everything from the ChatRoom and the contacts.
+     */
+    public void update(Context context) {
+        mLastUpdateTime = mChatRoom.getLastUpdateTime();
+        mIsOneToOne = mChatRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt());
+
+        ChatMessage lastMessage = mChatRoom.getLastMessageInHistory();
+        mLastMessageText = null;
+        mLastMessageSender = null;
+        mLastMessageHasFile = false;
+        if (lastMessage != null) {
+            mLastMessageText = lastMessage.getTextContent();
+            Address from = lastMessage.getFromAddress();
+            LinphoneContact senderContact = ContactsManager.getInstance().findContactFromAddress(from);
+            String sender = senderContact != null ? senderContact.getFullName() : LinphoneUtils.getAddressDisplayName(from);
+            mLastMessageSender = sender + context.getString(R.string.separator);
+            for (Content c : lastMessage.getContents()) {
+                if (c.isFile() || c.isFileTransfer()) {
+                    mLastMessageHasFile = true;
+                    break;
+                }
+            }
+        }
+
+        Address peerAddress = mChatRoom.getPeerAddress();
+        LinphoneContact peerContact = ContactsManager.getInstance().findContactFromAddress(peerAddress);
+        if (mIsOneToOne) {
+            Participant[] participants = mChatRoom.getParticipants();
+            Address contactAddress = participants.length > 0 ? participants[0].getAddress() : peerAddress;
+            LinphoneContact contact = contactAddress == peerAddress ? peerContact : ContactsManager.getInstance().findContactFromAddress(contactAddress);
+            mDisplayName = contact != null ? contact.getFullName() : LinphoneUtils.getAddressDisplayName(contactAddress);
+        } else {
+            mDisplayName = mChatRoom.getSubject();
+        }
+        mIsPeerContact = peerContact != null;
+        mAvatarUri = mIsPeerContact ? peerContact.getThumbnailUri() : null;
+
+        mUnreadCount = LinphoneManager.getInstance().getUnreadCountForChatRoom(mChatRoom);
+        mHasUnreadMessages = mChatRoom.getUnreadMessagesCount() > 0;
+    }
+
+    public ChatRoom getChatRoom() {
+        return mChatRoom;
+    }
+
+    public long getLastUpdateTime() {
+        return mLastUpdateTime;
+    }
+
+    public boolean isOneToOne() {
+        return mIsOneToOne;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    public String getLastMessageSender() {
+        return mLastMessageSender;
+    }
+
+    public String getLastMessageText() {
+        return mLastMessageText;
+    }
+
+    public boolean lastMessageHasFile() {
+        return mLastMessageHasFile;
+    }
+
+    public boolean hasLastMessage() {
+        return mLastMessageSender != null;
+    }
+
+    public boolean isPeerContact() {
+        return mIsPeerContact;
+    }
+
+    /**
+     * @return the thumbnail of the peer contact, if any
+     */
+    public Uri getAvatarUri() {
+        return mAvatarUri;
+    }
+
+    public int getUnreadCount() {
+        return mUnreadCount;
+    }
+
+    public boolean hasUnreadMessages() {
+        return mHasUnreadMessages;
+    }
+}
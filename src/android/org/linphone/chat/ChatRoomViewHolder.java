@@ -28,17 +28,12 @@ import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import org.linphone.LinphoneManager;
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.contacts.ContactsManager;
-import org.linphone.contacts.LinphoneContact;
-import org.linphone.core.Address;
-import org.linphone.core.ChatMessage;
 import org.linphone.core.ChatRoom;
-import org.linphone.core.ChatRoomCapabilities;
-import org.linphone.core.Content;
 
 public class ChatRoomViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
     private Bitmap mDefaultBitmap;
@@ -77,30 +72,27 @@ public class ChatRoomViewHolder extends RecyclerView.ViewHolder implements View.
         itemView.setOnLongClickListener(this);
     }
 
-    public void bindChatRoom(ChatRoom room) {
-        mRoom = room;
-        ChatMessage lastMessage = mRoom.getLastMessageInHistory();
+    public void bindChatRoom(ChatRoomSummary summary) {
+        mRoom = summary.getChatRoom();
         lastMessageView.setVisibility(View.GONE);
         lastMessageFileTransfer.setVisibility(View.GONE);
 
-        if (lastMessage != null) {
-            String text = lastMessage.getTextContent();
+        if (summary.hasLastMessage()) {
+            String text = summary.getLastMessageText();
             if (text != null && text.length() > 0) {
                 lastMessageView.setVisibility(View.VISIBLE);
                 lastMessageView.setText(text);
             }
-            date.setText(LinphoneUtils.timestampToHumanDate(mContext, mRoom.getLastUpdateTime(), R.string.messages_list_date_format));
-            for (Content c : lastMessage.getContents()) {
-                if (c.isFile() || c.isFileTransfer()) {
-                    lastMessageFileTransfer.setVisibility(View.VISIBLE);
-                }
+            date.setText(LinphoneUtils.timestampToHumanDate(mContext, summary.getLastUpdateTime(), R.string.messages_list_date_format));
+            if (summary.lastMessageHasFile()) {
+                lastMessageFileTransfer.setVisibility(View.VISIBLE);
             }
         }
 
-        lastMessageSenderView.setText(getSender(mRoom));
-        displayName.setText(getContact(mRoom));
-        unreadMessages.setText(String.valueOf(LinphoneManager.getInstance().getUnreadCountForChatRoom(mRoom)));
-        getAvatar(mRoom);
+        lastMessageSenderView.setText(summary.getLastMessageSender());
+        displayName.setText(summary.getDisplayName());
+        unreadMessages.setText(String.valueOf(summary.getUnreadCount()));
+        bindAvatar(summary);
     }
 
     public void onClick(View v) {
@@ -116,48 +108,12 @@ public class ChatRoomViewHolder extends RecyclerView.ViewHolder implements View.
         return false;
     }
 
-    public String getSender(ChatRoom mRoom) {
-        if (mRoom.getLastMessageInHistory() != null) {
-            LinphoneContact contact = ContactsManager.getInstance().findContactFromAddress(mRoom.getLastMessageInHistory().getFromAddress());
-            if (contact != null) {
-                return (contact.getFullName() + mContext.getString(R.string.separator));
-            }
-            return (LinphoneUtils.getAddressDisplayName(mRoom.getLastMessageInHistory().getFromAddress()) + mContext.getString(R.string.separator));
-        }
-        return null;
-    }
-
-    public String getContact(ChatRoom mRoom) {
-        Address contactAddress = mRoom.getPeerAddress();
-        if (mRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt()) && mRoom.getParticipants().length > 0) {
-            contactAddress = mRoom.getParticipants()[0].getAddress();
-        }
-
-        if (mRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
-            LinphoneContact contact;
-            if (mRoom.getParticipants().length > 0) {
-                contact = ContactsManager.getInstance().findContactFromAddress(mRoom.getParticipants()[0].getAddress());
-                if (contact != null) {
-                    return (contact.getFullName());
-                }
-                return (LinphoneUtils.getAddressDisplayName(mRoom.getParticipants()[0].getAddress()));
-            } else {
-                contact = ContactsManager.getInstance().findContactFromAddress(contactAddress);
-                if (contact != null) {
-                    return (contact.getFullName());
-                }
-                return (LinphoneUtils.getAddressDisplayName(contactAddress));
-            }
-        }
-        return (mRoom.getSubject());
-    }
-
-    public void getAvatar(ChatRoom mRoom) {
-        LinphoneContact contact = ContactsManager.getInstance().findContactFromAddress(mRoom.getPeerAddress());
-        if (contact != null) {
-            LinphoneUtils.setThumbnailPictureFromUri(LinphoneActivity.instance(), contactPicture, ContactsManager.getInstance().findContactFromAddress(mRoom.getPeerAddress()).getThumbnailUri());
+    private void bindAvatar(ChatRoomSummary summary) {
+        if (summary.isPeerContact()) {
+            LinphoneUtils.setThumbnailPictureFromUri(LinphoneActivity.instance(), contactPicture, summary.getAvatarUri());
         } else {
-            if (mRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt()))
+            ImageLoader.getInstance(mContext).cancel(contactPicture);
+            if (summary.isOneToOne())
                 contactPicture.setImageBitmap(mDefaultBitmap);
             else
                 contactPicture.setImageBitmap(mDefaultGroupBitmap);
@@ -24,6 +24,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneManager;
 import org.linphone.core.ChatRoom;
 import org.linphone.ui.SelectableAdapter;
@@ -37,16 +38,25 @@ import java.util.List;
 
 public class ChatRoomsAdapter extends SelectableAdapter<ChatRoomViewHolder> {
     private Context mContext;
-    public List<ChatRoom> mRooms;
+    private List<ChatRoomSummary> mRooms; // Most recently updated first
     private int mItemResource;
     private ChatRoomViewHolder.ClickListener mClickListener;
 
+    private static final Comparator<ChatRoomSummary> LAST_UPDATE_COMPARATOR = new Comparator<ChatRoomSummary>() {
+        public int compare(ChatRoomSummary cr1, ChatRoomSummary cr2) {
+            long timeDiff = cr1.getLastUpdateTime() - cr2.getLastUpdateTime();
+            if (timeDiff > 0) return -1;
+            else if (timeDiff == 0) return 0;
+            return 1;
+        }
+    };
+
     public ChatRoomsAdapter(Context context, int itemResource, List<ChatRoom> rooms, ChatRoomViewHolder.ClickListener clickListener, SelectableHelper helper) {
         super(helper);
         mClickListener = clickListener;
-        mRooms = rooms;
         mContext = context;
         mItemResource = itemResource;
+        mRooms = createSummaries(rooms);
     }
 
     @Override
@@ -56,33 +66,93 @@ public class ChatRoomsAdapter extends SelectableAdapter<ChatRoomViewHolder> {
         return new ChatRoomViewHolder(mContext, view, mClickListener);
     }
 
+    @Override
+    public void onViewRecycled(ChatRoomViewHolder holder) {
+        ImageLoader.getInstance(mContext).cancel(holder.contactPicture);
+        super.onViewRecycled(holder);
+    }
+
     @Override
     public void onBindViewHolder(ChatRoomViewHolder holder, int position) {
-        ChatRoom room = mRooms.get(position);
+        ChatRoomSummary summary = mRooms.get(position);
         holder.delete.setVisibility(isEditionEnabled() ? View.VISIBLE : View.INVISIBLE);
-        holder.unreadMessages.setVisibility(isEditionEnabled() ? View.INVISIBLE : (room.getUnreadMessagesCount() > 0 ? View.VISIBLE : View.INVISIBLE));
+        holder.unreadMessages.setVisibility(isEditionEnabled() ? View.INVISIBLE : (summary.hasUnreadMessages() ? View.VISIBLE : View.INVISIBLE));
         holder.delete.setChecked(isSelected(position));
-        holder.bindChatRoom(room);
+        holder.bindChatRoom(summary);
     }
 
+    /**
+     * Reloads all the chat rooms, for when some were created or deleted.
+     */
     public void refresh() {
-        mRooms = new ArrayList<>(Arrays.asList(LinphoneManager.getLc().getChatRooms()));
-        Collections.sort(mRooms, new Comparator<ChatRoom>() {
-            public int compare(ChatRoom cr1, ChatRoom cr2) {
-                long timeDiff = cr1.getLastUpdateTime() - cr2.getLastUpdateTime();
-                if (timeDiff > 0) return -1;
-                else if (timeDiff == 0) return 0;
-                return 1;
-            }
-        });
+        mRooms = createSummaries(Arrays.asList(LinphoneManager.getLc().getChatRooms()));
         notifyDataSetChanged();
     }
 
+    /**
+     * Updates the summary of this room only and moves it to its new place, usually the top.
+     */
+    public void refreshChatRoom(ChatRoom room) {
+        int oldPosition = -1;
+        for (int i = 0; i < mRooms.size(); i++) {
+            if (mRooms.get(i).getChatRoom() == room) {
+                oldPosition = i;
+                break;
+            }
+        }
+
+        ChatRoomSummary summary;
+        if (oldPosition >= 0) {
+            summary = mRooms.remove(oldPosition);
+            summary.update(mContext);
+        } else {
+            summary = new ChatRoomSummary(mContext, room);
+        }
+
+        int newPosition = 0;
+        while (newPosition < mRooms.size() && mRooms.get(newPosition).getLastUpdateTime() > summary.getLastUpdateTime()) {
+            newPosition++;
+        }
+        mRooms.add(newPosition, summary);
+
+        // Selection is kept by position, it has to follow the rooms
+        if (oldPosition < 0) {
+            notifySelectionItemInserted(newPosition);
+            notifyItemInserted(newPosition);
+        } else {
+            if (oldPosition != newPosition) {
+                notifySelectionItemMoved(oldPosition, newPosition);
+                notifyItemMoved(oldPosition, newPosition);
+            }
+            notifyItemChanged(newPosition);
+        }
+    }
+
+    /**
+     * Contacts changed, names and avatars have to be read again but the order stays the same.
+     */
+    public void refreshContacts() {
+        for (ChatRoomSummary summary : mRooms) {
+            summary.update(mContext);
+        }
+        notifyItemRangeChanged(0, mRooms.size());
+    }
+
     public void clear() {
         mRooms.clear();
         notifyDataSetChanged();
     }
 
+    private List<ChatRoomSummary> createSummaries(List<ChatRoom> rooms) {
+        List<ChatRoomSummary> summaries = new ArrayList<>(rooms.size());
+        for (ChatRoom room : rooms) {
+            summaries.add(new ChatRoomSummary(mContext, room));
+        }
+        // Last update time is read once per room instead of twice per comparison
+        Collections.sort(summaries, LAST_UPDATE_COMPARATOR);
+        return summaries;
+    }
+
     /**
      * Adapter's methods
      */
@@ -94,7 +164,7 @@ public class ChatRoomsAdapter extends SelectableAdapter<ChatRoomViewHolder> {
 
     @Override
     public Object getItem(int position) {
-        return mRooms.get(position);
+        return mRooms.get(position).getChatRoom();
     }
 
     @Override
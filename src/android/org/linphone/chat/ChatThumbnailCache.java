@@ -0,0 +1,231 @@
+package org.linphone.chat;
+
+/*
+ChatThumbnailCache.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import org.linphone.ImageLoader;
+import org.linphone.mediastream.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Square thumbnails of the images exchanged in chat rooms.<br />
+ * Images are decoded with a sample size close to the thumbnail size, rotated using their EXIF orientation once small,
+ * then cropped. Generated thumbnails are kept in memory and on disk, keyed by path and modification time,
+ * so a bubble bound again (or the same conversation opened later) doesn't decode the full picture again.
+ */
+public class ChatThumbnailCache {
+    public static final int SIZE_SMALL = 500;
+    private static final String DISK_CACHE_DIR = "chat_thumbnails";
+    private static final long DISK_CACHE_SIZE = 30 * 1024 * 1024;
+    private static final int MEMORY_CACHE_SIZE = 8 * 1024 * 1024;
+
+    // Thumbnails decoding shouldn't queue behind (or block) every other AsyncTask of the application
+    public static final Executor EXECUTOR = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ChatThumbnail-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    static {
+        ((ThreadPoolExecutor) EXECUTOR).allowCoreThreadTimeOut(true);
+    }
+
+    private static final LruCache<String, Bitmap> sMemoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    /**
+     * @return the thumbnail if it's in memory, null otherwise. Can be called from the UI thread.
+     */
+    public static Bitmap getCachedThumbnail(String path) {
+        return sMemoryCache.get(getKey(path));
+    }
+
+    /**
+     * Loads the thumbnail from the disk cache or generates it. Must not be called from the UI thread.
+     */
+    public static Bitmap getThumbnail(Context context, String path) {
+        String key = getKey(path);
+        Bitmap thumbnail = sMemoryCache.get(key);
+        if (thumbnail != null) return thumbnail;
+
+        File dir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        File cached = new File(dir, ImageLoader.hash(key));
+        if (cached.exists()) {
+            thumbnail = BitmapFactory.decodeFile(cached.getPath());
+            if (thumbnail != null) {
+                cached.setLastModified(System.currentTimeMillis());
+                sMemoryCache.put(key, thumbnail);
+                return thumbnail;
+            }
+        }
+
+        long start = SystemClock.uptimeMillis();
+        thumbnail = createThumbnail(context, path);
+        if (thumbnail == null) return null;
+        Log.d("[Chat Thumbnail] Generated thumbnail for " + path + " in " + (SystemClock.uptimeMillis() - start) + "ms");
+
+        sMemoryCache.put(key, thumbnail);
+        if (dir.exists() || dir.mkdirs()) {
+            writeThumbnail(thumbnail, cached);
+            ImageLoader.trimDirectory(dir, DISK_CACHE_SIZE);
+        }
+        return thumbnail;
+    }
+
+    private static String getKey(String path) {
+        long lastModified = path.startsWith("content") ? 0 : new File(path).lastModified();
+        return path + "#" + lastModified;
+    }
+
+    private static Bitmap createThumbnail(Context context, String path) {
+        boolean isContent = path.startsWith("content");
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, path, isContent, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inSampleSize = ImageLoader.computeSampleSize(options, SIZE_SMALL);
+        options.inJustDecodeBounds = false;
+        Bitmap bm = decode(context, path, isContent, options);
+        if (bm == null) return null;
+
+        // Rotate the bitmap if possible/needed, using EXIF data, now that it is small
+        int pictureOrientation = getExifOrientation(context, path, isContent);
+        if (pictureOrientation == ExifInterface.ORIENTATION_ROTATE_90
+                || pictureOrientation == ExifInterface.ORIENTATION_ROTATE_180
+                || pictureOrientation == ExifInterface.ORIENTATION_ROTATE_270) {
+            Matrix matrix = new Matrix();
+            if (pictureOrientation == ExifInterface.ORIENTATION_ROTATE_90) {
+                matrix.postRotate(90);
+            } else if (pictureOrientation == ExifInterface.ORIENTATION_ROTATE_180) {
+                matrix.postRotate(180);
+            } else {
+                matrix.postRotate(270);
+            }
+            Bitmap rotated = Bitmap.createBitmap(bm, 0, 0, bm.getWidth(), bm.getHeight(), matrix, true);
+            if (rotated != bm) {
+                bm.recycle();
+                bm = rotated;
+            }
+        }
+
+        Bitmap thumbnail = ThumbnailUtils.extractThumbnail(bm, SIZE_SMALL, SIZE_SMALL);
+        if (thumbnail != bm) {
+            bm.recycle();
+        }
+        return thumbnail;
+    }
+
+    private static Bitmap decode(Context context, String path, boolean isContent, BitmapFactory.Options options) {
+        if (!isContent) {
+            return BitmapFactory.decodeFile(path, options);
+        }
+        InputStream is = null;
+        try {
+            is = context.getContentResolver().openInputStream(Uri.parse(path));
+            return is != null ? BitmapFactory.decodeStream(is, null, options) : null;
+        } catch (IOException | SecurityException e) {
+            Log.e(e);
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static int getExifOrientation(Context context, String path, boolean isContent) {
+        InputStream is = null;
+        try {
+            ExifInterface exif;
+            if (!isContent) {
+                exif = new ExifInterface(path);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                is = context.getContentResolver().openInputStream(Uri.parse(path));
+                if (is == null) return ExifInterface.ORIENTATION_UNDEFINED;
+                exif = new ExifInterface(is);
+            } else {
+                return ExifInterface.ORIENTATION_UNDEFINED;
+            }
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        } catch (Exception e) {
+            Log.e(e);
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static void writeThumbnail(Bitmap thumbnail, File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                thumbnail.compress(thumbnail.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, 85, out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            Log.e(e);
+            tmp.delete();
+        }
+    }
+}
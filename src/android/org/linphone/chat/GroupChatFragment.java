@@ -31,8 +31,6 @@ import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.Parcelable;
 import android.provider.MediaStore;
 import android.support.v7.widget.LinearLayoutManager;
@@ -81,7 +79,6 @@ import org.linphone.ui.SelectableHelper;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static android.content.Context.INPUT_METHOD_SERVICE;
@@ -91,7 +88,6 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
     private static final int ADD_PHOTO = 1337;
     private static final int MESSAGES_PER_PAGE = 20;
 
-    private Handler mHandler = new Handler(Looper.getMainLooper());
     private ImageView mBackButton, mCallButton, mBackToCallButton, mGroupInfosButton;
     private ImageView mAttachImageButton, mSendMessageButton;
     private TextView mRoomLabel, mParticipantsLabel, mRemoteComposing;
@@ -110,7 +106,7 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
     private ArrayList<LinphoneContact> mParticipants;
     private LinearLayoutManager layoutManager;
     private int mContextMenuMessagePosition;
-    private ChatScrollListener mChatScrollListener;
+    private RecyclerView.OnScrollListener mChatScrollListener;
     private LinearLayout mTopBar;
 
     @Override
@@ -234,10 +230,12 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
         layoutManager = new LinearLayoutManager(mContext, LinearLayoutManager.VERTICAL, true);
         mChatEventsList.setLayoutManager(layoutManager);
 
-        mChatScrollListener = new ChatScrollListener(layoutManager) {
+        mChatScrollListener = new RecyclerView.OnScrollListener() {
             @Override
-            public void onLoadMore(int page, int totalItemsCount, RecyclerView view) {
-                loadMoreData(totalItemsCount);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mEventsAdapter != null) {
+                    mEventsAdapter.getHistory().onVisibleRangeChanged(layoutManager.findFirstVisibleItemPosition(), layoutManager.findLastVisibleItemPosition());
+                }
             }
         };
         mChatEventsList.addOnScrollListener(mChatScrollListener);
@@ -289,6 +287,12 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
         displayChatRoomHeader();
         displayChatRoomHistory();
         LinphoneManager.getInstance().setCurrentChatRoomAddress(mRemoteSipAddress);
+
+        if (getArguments() != null && getArguments().getString("MessageId") != null) {
+            // Opened from a notification, show its first message
+            scrollToMessage(getArguments().getString("MessageId"));
+            getArguments().remove("MessageId");
+        }
     }
 
     public void changeDisplayedChat(String sipUri) {
@@ -370,11 +374,7 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
             }
             eventLog.deleteFromDatabase();
         }
-        if (mChatRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
-            mEventsAdapter.refresh(mChatRoom.getHistoryMessageEvents(MESSAGES_PER_PAGE));
-        } else {
-            mEventsAdapter.refresh(mChatRoom.getHistoryEvents(MESSAGES_PER_PAGE));
-        }
+        mEventsAdapter.refresh(createHistoryPager());
     }
 
 
@@ -445,24 +445,6 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
         return super.onContextItemSelected(item);
     }
 
-    private void loadMoreData(final int totalItemsCount) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                int maxSize = mChatRoom.getHistoryEventsSize();
-                if (totalItemsCount < maxSize) {
-                    int upperBound = totalItemsCount + MESSAGES_PER_PAGE;
-                    if (upperBound > maxSize) {
-                        upperBound = maxSize;
-                    }
-                    EventLog[] newLogs = mChatRoom.getHistoryRangeEvents(totalItemsCount, upperBound);
-                    ArrayList<EventLog> logsList = new ArrayList<>(Arrays.asList(newLogs));
-                    mEventsAdapter.addAllToHistory(logsList);
-                }
-            }
-        });
-    }
-
     /**
      * Keyboard management
      */
@@ -610,20 +592,35 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
 
     private void displayChatRoomHistory() {
         if (mChatRoom == null) return;
-        if (mChatRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
-            mEventsAdapter = new ChatEventsAdapter(this, mSelectionHelper, R.layout.chat_bubble, mChatRoom.getHistoryMessageEvents(MESSAGES_PER_PAGE), mParticipants, this);
-        } else {
-            mEventsAdapter = new ChatEventsAdapter(this, mSelectionHelper, R.layout.chat_bubble, mChatRoom.getHistoryEvents(MESSAGES_PER_PAGE), mParticipants, this);
-        }
+        mEventsAdapter = new ChatEventsAdapter(this, mSelectionHelper, R.layout.chat_bubble, createHistoryPager(),
+                mChatRoom.hasCapability(ChatRoomCapabilities.OneToOne.toInt()), mParticipants, this);
         mSelectionHelper.setAdapter(mEventsAdapter);
         mChatEventsList.setAdapter(mEventsAdapter);
         scrollToBottom();
     }
 
+    private ChatHistoryPager createHistoryPager() {
+        // All the events, even in one to one rooms, so the pages fetched later use the same positions
+        return new ChatHistoryPager(mChatRoom, mChatRoom.getHistoryEvents(MESSAGES_PER_PAGE));
+    }
+
     public void scrollToBottom() {
         mChatEventsList.getLayoutManager().scrollToPosition(0);
     }
 
+    /**
+     * Scrolls to the message, loading the history up to it if needed.
+     */
+    public void scrollToMessage(String messageId) {
+        if (mEventsAdapter == null) return;
+        mEventsAdapter.getHistory().findMessage(messageId, new ChatHistoryPager.FindMessageListener() {
+            @Override
+            public void onMessageFound(int position) {
+                mChatEventsList.getLayoutManager().scrollToPosition(position);
+            }
+        });
+    }
+
     public String getRemoteSipUri() {
         return mRemoteSipUri;
     }
@@ -787,6 +784,7 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
         }
         // Set listener not required here anymore, message will be added to messages list and adapter will set the listener
         msg.send();
+        LinphoneManager.getInstance().getCoreScheduler().wakeUp();
 
         mFilesUploadLayout.removeAllViews();
         mAttachImageButton.setEnabled(true);
@@ -831,10 +829,10 @@ public class GroupChatFragment extends Fragment implements ChatRoomListener, Con
             if (!getResources().getBoolean(R.bool.disable_chat_message_notification)) {
                 if (contact != null) {
                     LinphoneService.instance().displayMessageNotification(from.asStringUriOnly(),
-                            contact.getFullName(), contact.getThumbnailUri(), getString(R.string.message_cant_be_decrypted_notif), cr.getLocalAddress().asString());
+                            contact.getFullName(), contact.getThumbnailUri(), getString(R.string.message_cant_be_decrypted_notif), cr.getLocalAddress().asString(), msg.getMessageId());
                 } else {
                     LinphoneService.instance().displayMessageNotification(from.asStringUriOnly(),
-                            from.getUsername(), null, getString(R.string.message_cant_be_decrypted_notif), cr.getLocalAddress().asString());
+                            from.getUsername(), null, getString(R.string.message_cant_be_decrypted_notif), cr.getLocalAddress().asString(), msg.getMessageId());
                 }
             }
         } else if (LinphoneManager.getLc().limeEnabled() == LimeState.Mandatory) {
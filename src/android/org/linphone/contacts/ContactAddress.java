@@ -105,6 +105,13 @@ public class ContactAddress implements Serializable {
         return null;
     }
 
+    /**
+     * @return a key identifying the row without going through the Core
+     */
+    public String getSearchKey() {
+        return (address != null && !address.isEmpty()) ? address : "tel:" + phoneNumber;
+    }
+
     public String getPhoneNumber() {
         return phoneNumber;
     }
@@ -31,6 +31,7 @@ import android.widget.LinearLayout;
 import android.widget.SectionIndexer;
 import android.widget.TextView;
 
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
@@ -115,6 +116,12 @@ public class ContactsListAdapter extends SelectableAdapter<ContactsListAdapter.V
         return new ViewHolder(v, mClickListener);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        ImageLoader.getInstance(holder.contactPicture.getContext()).cancel(holder.contactPicture);
+        super.onViewRecycled(holder);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, final int position) {
         LinphoneContact contact = (LinphoneContact) getItem(position);
@@ -0,0 +1,198 @@
+package org.linphone.contacts;
+
+/*
+ContactsLookupIndex.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.linphone.core.Address;
+import org.linphone.core.Friend;
+import org.linphone.core.ProxyConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In memory index of the contacts by SIP address (username@domain) and by phone number,
+ * so looking up the contact of a call log, chat room or message doesn't need to go through the Core.
+ * Reads are lock free, writes are serialized.
+ * When several contacts share a key, the first one indexed is returned, and the next one takes over when it is removed.
+ */
+public class ContactsLookupIndex {
+    private static final String SIP_PREFIX = "sip:";
+    private static final String TEL_PREFIX = "tel:";
+
+    private final ConcurrentHashMap<String, LinphoneContact> mContactsByKey;
+    private final Map<String, List<LinphoneContact>> mOwnersByKey; // in indexing order, the first one is in mContactsByKey
+    private final Map<LinphoneContact, List<String>> mKeysByContact; // LinphoneContact.equals() compares names, hence the identity map
+
+    public ContactsLookupIndex(int expectedSize) {
+        mContactsByKey = new ConcurrentHashMap<>(expectedSize * 2);
+        mOwnersByKey = new HashMap<>(expectedSize * 2);
+        mKeysByContact = new IdentityHashMap<>(expectedSize);
+    }
+
+    public int size() {
+        return mContactsByKey.size();
+    }
+
+    public LinphoneContact findFromSipAddress(String username, String domain) {
+        String key = getSipKey(username, domain);
+        if (key == null) return null;
+        return mContactsByKey.get(key);
+    }
+
+    public LinphoneContact findFromPhoneNumber(String number) {
+        String key = getPhoneKey(number);
+        if (key == null) return null;
+        return mContactsByKey.get(key);
+    }
+
+    /**
+     * Adds or refreshes the keys of a contact, removing the ones it doesn't have anymore.
+     * The keys it already had keep their rank among the contacts sharing them.
+     * @param lpc used to normalize phone numbers the same way incoming addresses will be, may be null
+     */
+    public synchronized void index(LinphoneContact contact, ProxyConfig lpc) {
+        List<String> keys = new ArrayList<>();
+        Friend friend = contact.getFriend();
+        if (friend != null) {
+            for (Address addr : friend.getAddresses()) {
+                if (addr != null) {
+                    addKey(keys, getSipKey(addr.getUsername(), addr.getDomain()), contact);
+                }
+            }
+        }
+
+        for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+            if (noa.isSIPAddress()) {
+                addKey(keys, getSipKey(noa.getValue()), contact);
+            } else {
+                addKey(keys, getPhoneKey(noa.getValue()), contact);
+                addKey(keys, getPhoneKey(noa.getNormalizedPhone()), contact);
+                if (lpc != null) {
+                    addKey(keys, getPhoneKey(lpc.normalizePhoneNumber(noa.getValue())), contact);
+                }
+            }
+        }
+
+        List<String> oldKeys = mKeysByContact.put(contact, keys);
+        if (oldKeys != null) {
+            for (String key : oldKeys) {
+                if (!keys.contains(key)) {
+                    removeOwner(key, contact);
+                }
+            }
+        }
+        for (String key : keys) {
+            if (oldKeys == null || !oldKeys.contains(key)) {
+                addOwner(key, contact);
+            }
+        }
+    }
+
+    public synchronized void remove(LinphoneContact contact) {
+        List<String> keys = mKeysByContact.remove(contact);
+        if (keys == null) return;
+        for (String key : keys) {
+            removeOwner(key, contact);
+        }
+    }
+
+    private void addKey(List<String> keys, String key, LinphoneContact contact) {
+        if (key == null || keys.contains(key)) return;
+        keys.add(key);
+    }
+
+    private void addOwner(String key, LinphoneContact contact) {
+        List<LinphoneContact> owners = mOwnersByKey.get(key);
+        if (owners == null) {
+            owners = new ArrayList<>(1);
+            mOwnersByKey.put(key, owners);
+        }
+        owners.add(contact);
+        if (owners.size() == 1) {
+            // First contact indexed for a key wins, as Core.findFriend() would return the first Friend matching
+            mContactsByKey.put(key, contact);
+        }
+    }
+
+    private void removeOwner(String key, LinphoneContact contact) {
+        List<LinphoneContact> owners = mOwnersByKey.get(key);
+        if (owners == null) return;
+        for (int i = 0; i < owners.size(); i++) {
+            if (owners.get(i) == contact) {
+                owners.remove(i);
+                break;
+            }
+        }
+        if (owners.isEmpty()) {
+            mOwnersByKey.remove(key);
+            mContactsByKey.remove(key);
+        } else {
+            mContactsByKey.put(key, owners.get(0));
+        }
+    }
+
+    static String getSipKey(String username, String domain) {
+        if (username == null || username.isEmpty() || domain == null) return null;
+        return SIP_PREFIX + username + "@" + domain.toLowerCase(Locale.US);
+    }
+
+    static String getSipKey(String uri) {
+        if (uri == null) return null;
+        String value = uri;
+        int scheme = value.indexOf(':');
+        if (value.startsWith("sip:") || value.startsWith("sips:")) {
+            value = value.substring(scheme + 1);
+        }
+        int params = value.indexOf(';');
+        if (params >= 0) {
+            value = value.substring(0, params);
+        }
+        int at = value.indexOf('@');
+        if (at <= 0) return null;
+        String domain = value.substring(at + 1);
+        int port = domain.indexOf(':');
+        if (port >= 0) {
+            domain = domain.substring(0, port);
+        }
+        return getSipKey(value.substring(0, at), domain);
+    }
+
+    static String getPhoneKey(String number) {
+        if (number == null) return null;
+        StringBuilder sb = new StringBuilder(TEL_PREFIX);
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            } else if (c == '+' && sb.length() == TEL_PREFIX.length()) {
+                sb.append(c);
+            } else if (Character.isLetter(c) || c == '@') {
+                return null; // Not a phone number
+            }
+        }
+        if (sb.length() == TEL_PREFIX.length()) return null;
+        return sb.toString();
+    }
+}
@@ -22,25 +22,31 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.LoaderManager;
 import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.content.Loader;
 import android.content.pm.PackageManager;
 import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.Data;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneManager;
 import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneService;
@@ -59,11 +65,16 @@ import org.linphone.core.ProxyConfig;
 import org.linphone.mediastream.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class ContactsManager extends ContentObserver implements FriendListListener, LoaderManager.LoaderCallbacks<Cursor> {
@@ -76,6 +87,12 @@ public class ContactsManager extends ContentObserver implements FriendListListen
     private HashMap<String, LinphoneContact> mAndroidContactsCache;
     private Bitmap defaultAvatar;
     private boolean mContactsFetchedOnce = false;
+    private volatile ContactsLookupIndex mLookupIndex;
+    private HashMap<String, LinphoneContact> mNativeContactsById;
+    private long mFullSyncStartTimestamp, mLastSyncTimestamp;
+    private DeltaSyncTask mDeltaSyncTask;
+    private boolean mDeltaSyncPending;
+    private ContactsSearchIndex mContactsSearchIndex, mSipContactsSearchIndex;
 
     private static ArrayList<ContactsUpdatedListener> contactsUpdatedListeners;
 
@@ -91,6 +108,7 @@ public class ContactsManager extends ContentObserver implements FriendListListen
         super(LinphoneService.instance().mHandler);
         defaultAvatar = BitmapFactory.decodeResource(LinphoneService.instance().getResources(), R.drawable.avatar);
         mAndroidContactsCache = new HashMap<>();
+        mNativeContactsById = new HashMap<>();
         contactsUpdatedListeners = new ArrayList<>();
         mContacts = new ArrayList<>();
         mSipContacts = new ArrayList<>();
@@ -130,7 +148,10 @@ public class ContactsManager extends ContentObserver implements FriendListListen
 
     @Override
     public void onChange(boolean selfChange, Uri uri) {
-        fetchContactsSync();
+        ImageLoader.getInstance(LinphoneService.instance()).evictContactsPhotos();
+        if (!startDeltaSync()) {
+            fetchContactsSync();
+        }
     }
 
     public static final ContactsManager getInstance() {
@@ -151,37 +172,23 @@ public class ContactsManager extends ContentObserver implements FriendListListen
     }
 
     public synchronized List<LinphoneContact> getContacts(String search) {
-        search = search.toLowerCase(Locale.getDefault());
-        List<LinphoneContact> searchContactsBegin = new ArrayList<LinphoneContact>();
-        List<LinphoneContact> searchContactsContain = new ArrayList<LinphoneContact>();
-        for (LinphoneContact contact : mContacts) {
-            if (contact.getFullName() != null) {
-                if (contact.getFullName().toLowerCase(Locale.getDefault()).startsWith(search)) {
-                    searchContactsBegin.add(contact);
-                } else if (contact.getFullName().toLowerCase(Locale.getDefault()).contains(search)) {
-                    searchContactsContain.add(contact);
-                }
-            }
+        if (mContactsSearchIndex == null) {
+            mContactsSearchIndex = new ContactsSearchIndex(mContacts);
         }
-        searchContactsBegin.addAll(searchContactsContain);
-        return searchContactsBegin;
+        return mContactsSearchIndex.search(search);
     }
 
     public synchronized List<LinphoneContact> getSIPContacts(String search) {
-        search = search.toLowerCase(Locale.getDefault());
-        List<LinphoneContact> searchContactsBegin = new ArrayList<LinphoneContact>();
-        List<LinphoneContact> searchContactsContain = new ArrayList<LinphoneContact>();
-        for (LinphoneContact contact : mSipContacts) {
-            if (contact.getFullName() != null) {
-                if (contact.getFullName().toLowerCase(Locale.getDefault()).startsWith(search)) {
-                    searchContactsBegin.add(contact);
-                } else if (contact.getFullName().toLowerCase(Locale.getDefault()).contains(search)) {
-                    searchContactsContain.add(contact);
-                }
-            }
+        if (mSipContactsSearchIndex == null) {
+            mSipContactsSearchIndex = new ContactsSearchIndex(mSipContacts);
         }
-        searchContactsBegin.addAll(searchContactsContain);
-        return searchContactsBegin;
+        return mSipContactsSearchIndex.search(search);
+    }
+
+    synchronized void invalidateSearchIndexes() {
+        // Rebuilt on next search
+        mContactsSearchIndex = null;
+        mSipContactsSearchIndex = null;
     }
 
     public void enableContactsAccess() {
@@ -235,18 +242,52 @@ public class ContactsManager extends ContentObserver implements FriendListListen
         }
     }
 
-    public synchronized LinphoneContact findContactFromAddress(Address address) {
+    public LinphoneContact findContactFromAddress(Address address) {
         if (address == null) return null;
+        ContactsLookupIndex index = mLookupIndex;
+        if (index == null) {
+            return findContactFromAddressInCore(address);
+        }
+
+        String username = address.getUsername();
+        LinphoneContact contact = index.findFromSipAddress(username, address.getDomain());
+        if (contact != null) {
+            return contact;
+        }
+        return findContactFromPhoneNumber(username);
+    }
+
+    public LinphoneContact findContactFromPhoneNumber(String phoneNumber) {
+        if (phoneNumber == null) return null;
+        ContactsLookupIndex index = mLookupIndex;
+        if (index == null) {
+            return findContactFromPhoneNumberInCore(phoneNumber);
+        }
+
+        LinphoneContact contact = index.findFromPhoneNumber(phoneNumber);
+        if (contact == null && ContactsLookupIndex.getPhoneKey(phoneNumber) != null) {
+            Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+            ProxyConfig lpc = lc != null ? lc.getDefaultProxyConfig() : null;
+            if (lpc != null) {
+                // Apply the dial prefix of the account, the same way the index was built
+                contact = index.findFromPhoneNumber(lpc.normalizePhoneNumber(phoneNumber));
+            }
+        }
+        return contact;
+    }
+
+    private synchronized LinphoneContact findContactFromAddressInCore(Address address) {
         Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc == null) return null;
         Friend lf = lc.findFriend(address);
         if (lf != null) {
             LinphoneContact contact = (LinphoneContact) lf.getUserData();
             return contact;
         }
-        return findContactFromPhoneNumber(address.getUsername());
+        return findContactFromPhoneNumberInCore(address.getUsername());
     }
 
-    public synchronized LinphoneContact findContactFromPhoneNumber(String phoneNumber) {
+    private synchronized LinphoneContact findContactFromPhoneNumberInCore(String phoneNumber) {
         Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
         ProxyConfig lpc = null;
         if (lc != null) {
@@ -269,11 +310,45 @@ public class ContactsManager extends ContentObserver implements FriendListListen
         return null;
     }
 
+    /**
+     * Updates the lookup index after a contact has been created or edited.
+     */
+    public void refreshLookupIndex(LinphoneContact contact) {
+        ContactsLookupIndex index = mLookupIndex;
+        if (index != null && contact != null) {
+            index.index(contact, getDefaultProxyConfig());
+        }
+    }
+
+    public void removeFromLookupIndex(LinphoneContact contact) {
+        ContactsLookupIndex index = mLookupIndex;
+        if (index != null && contact != null) {
+            index.remove(contact);
+        }
+    }
+
+    private void buildLookupIndex(List<LinphoneContact> contacts) {
+        long start = System.currentTimeMillis();
+        ProxyConfig lpc = getDefaultProxyConfig();
+        ContactsLookupIndex index = new ContactsLookupIndex(contacts.size());
+        for (LinphoneContact contact : contacts) {
+            index.index(contact, lpc);
+        }
+        mLookupIndex = index;
+        Log.i("[ContactsManager] Lookup index built with " + index.size() + " keys for " + contacts.size() + " contacts in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private ProxyConfig getDefaultProxyConfig() {
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        return lc != null ? lc.getDefaultProxyConfig() : null;
+    }
+
     public synchronized boolean refreshSipContact(Friend lf) {
         LinphoneContact contact = (LinphoneContact) lf.getUserData();
         if (contact != null && !mSipContacts.contains(contact)) {
             mSipContacts.add(contact);
             Collections.sort(mSipContacts);
+            invalidateSearchIndexes();
             return true;
         }
         return false;
@@ -357,6 +432,7 @@ public class ContactsManager extends ContentObserver implements FriendListListen
     @Override
     public void onPresenceReceived(FriendList list, Friend[] friends) {
         for (Friend lf : friends) {
+            refreshLookupIndex((LinphoneContact) lf.getUserData());
             boolean newContact = ContactsManager.getInstance().refreshSipContact(lf);
             if (newContact) {
                 for (ContactsUpdatedListener listener : contactsUpdatedListeners) {
@@ -404,6 +480,7 @@ public class ContactsManager extends ContentObserver implements FriendListListen
                 Log.w("[ContactsManager] Read contacts permission was denied");
                 return null;
             }
+            mFullSyncStartTimestamp = System.currentTimeMillis();
             return new CursorLoader(
                     mActivity,
                     ContactsContract.Data.CONTENT_URI,
@@ -421,6 +498,7 @@ public class ContactsManager extends ContentObserver implements FriendListListen
         mContactsFetchedOnce = true;
 
         Date contactsTime = new Date();
+        int rowsScanned = 0;
         List<LinphoneContact> contacts = new ArrayList<>();
         List<LinphoneContact> sipContacts = new ArrayList<>();
         mAndroidContactsCache.clear();
@@ -455,15 +533,11 @@ public class ContactsManager extends ContentObserver implements FriendListListen
         }
 
         if (c != null) {
-            List<String> nativeIds = new ArrayList<>();
+            Set<String> nativeIds = new HashSet<>();
             while (c.moveToNext()) {
+                rowsScanned++;
                 String id = c.getString(c.getColumnIndex(Data.CONTACT_ID));
                 String displayName = c.getString(c.getColumnIndex(Data.DISPLAY_NAME_PRIMARY));
-                String mime = c.getString(c.getColumnIndex(Data.MIMETYPE));
-                String data1 = c.getString(c.getColumnIndex("data1"));
-                String data2 = c.getString(c.getColumnIndex("data2"));
-                String data3 = c.getString(c.getColumnIndex("data3"));
-                String data4 = c.getString(c.getColumnIndex("data4"));
 
                 nativeIds.add(id);
                 LinphoneContact contact = mAndroidContactsCache.get(id);
@@ -473,19 +547,9 @@ public class ContactsManager extends ContentObserver implements FriendListListen
                     contact.setFullName(displayName);
                     mAndroidContactsCache.put(id, contact);
                 }
-                if (contact.getFullName() == null && displayName != null) {
-                    contact.setFullName(displayName);
-                }
-
-                if (ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE.equals(mime)) {
-                    contact.addNumberOrAddress(new LinphoneNumberOrAddress(data1, data4));
-                } else if (ContactsContract.CommonDataKinds.SipAddress.CONTENT_ITEM_TYPE.equals(mime) || getInstance().getString(R.string.sync_mimetype).equals(mime)) {
-                    contact.addNumberOrAddress(new LinphoneNumberOrAddress(data1, true));
-                } else if (ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE.equals(mime)) {
-                    contact.setOrganization(data1, false);
-                } else if (ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE.equals(mime)) {
-                    contact.setFirstNameAndLastName(data2, data3, false);
-                }
+                applyDataRow(contact, displayName, c.getString(c.getColumnIndex(Data.MIMETYPE)),
+                        c.getString(c.getColumnIndex("data1")), c.getString(c.getColumnIndex("data2")),
+                        c.getString(c.getColumnIndex("data3")), c.getString(c.getColumnIndex("data4")));
             }
 
             for (FriendList list : lc.getFriendsLists()) {
@@ -502,57 +566,134 @@ public class ContactsManager extends ContentObserver implements FriendListListen
             }
             nativeIds.clear();
 
+            // Contacts having the same name, used to detect exact duplicates without comparing each contact to all the others
+            Map<String, List<LinphoneContact>> contactsByName = new HashMap<>();
+            for (LinphoneContact contact : contacts) {
+                getContactsWithSameName(contactsByName, contact).add(contact);
+            }
             for (LinphoneContact contact : mAndroidContactsCache.values()) {
                 // Only add contact to contacts list once we are finished with it, helps prevent duplicates
-                int indexOf = contacts.indexOf(contact);
+                List<LinphoneContact> sameName = getContactsWithSameName(contactsByName, contact);
+                int indexOf = sameName.indexOf(contact);
                 if (indexOf < 0) {
+                    sameName.add(contact);
                     contacts.add(contact);
-                    if (contact.hasAddress()) {
-                        if (mActivity.getResources().getBoolean(R.bool.hide_sip_contacts_without_presence)) {
-                            if (contact.getFriend() != null) {
-                                for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
-                                    PresenceModel pm = contact.getFriend().getPresenceModelForUriOrTel(noa.getValue());
-                                    if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
-                                        sipContacts.add(contact);
-                                        break;
-                                    }
-                                }
-                            }
-                        } else {
-                            sipContacts.add(contact);
-                        }
+                    if (isSipContactToDisplay(contact)) {
+                        sipContacts.add(contact);
                     }
                 } else {
                     Log.w("Contact " + contact.getFullName() + " (" + contact.getAndroidId() +
-                            ") is an exact duplicate of " + contacts.get(indexOf).getAndroidId());
+                            ") is an exact duplicate of " + sameName.get(indexOf).getAndroidId());
                 }
             }
         }
 
+        mNativeContactsById.clear();
         for (LinphoneContact contact : contacts) {
             // Create the Friends matching the native contacts
-            if (contact.getFullName() == null) {
-                if (contact.hasAddress()) {
-                    for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
-                        if (noa.isSIPAddress()) {
-                            contact.setFullName(LinphoneUtils.getAddressDisplayName(noa.getValue()));
-                            Log.w("Couldn't find a display name for contact " + contact.getFullName() + ", used SIP address display name / username instead...");
-                            break;
-                        }
-                    }
-                }
-                if (contact.getFullName() == null) {
-                    Log.e("Couldn't find a display name for contact " + contact);
-                    continue;
-                }
+            if (!ensureDisplayName(contact)) {
+                continue;
             }
             contact.createOrUpdateFriendFromNativeContact();
+            if (contact.isAndroidContact()) {
+                mNativeContactsById.put(contact.getAndroidId(), contact);
+            }
         }
         mAndroidContactsCache.clear();
 
         setContacts(contacts);
         setSipContacts(sipContacts);
+        buildLookupIndex(getContacts());
+
+        updateFriendListsSubscriptions();
 
+        long timeElapsed = (new Date()).getTime() - contactsTime.getTime();
+        String time = String.format(Locale.getDefault(), "%02d:%02d:%03d",
+                TimeUnit.MILLISECONDS.toMinutes(timeElapsed),
+                TimeUnit.MILLISECONDS.toSeconds(timeElapsed) -
+                        TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(timeElapsed)),
+                TimeUnit.MILLISECONDS.toMillis(timeElapsed) -
+                        TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(timeElapsed)));
+        Log.i("[ContactsManager] Full sync: " + rowsScanned + " rows scanned for " + contacts.size() + " contacts: " + time + " elapsed since starting");
+
+        if (isDeltaSyncSupported()) {
+            // Next changes will be applied by the delta sync, stop the loader from reloading everything on each of them
+            mLastSyncTimestamp = mFullSyncStartTimestamp;
+            final Activity activity = mActivity;
+            LinphoneService.instance().mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    activity.getLoaderManager().destroyLoader(CONTACTS_LOADER);
+                }
+            });
+        }
+
+        for (ContactsUpdatedListener listener : contactsUpdatedListeners) {
+            listener.onContactsUpdated();
+        }
+    }
+
+    private void applyDataRow(LinphoneContact contact, String displayName, String mime, String data1, String data2, String data3, String data4) {
+        if (contact.getFullName() == null && displayName != null) {
+            contact.setFullName(displayName);
+        }
+
+        if (ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE.equals(mime)) {
+            contact.addNumberOrAddress(new LinphoneNumberOrAddress(data1, data4));
+        } else if (ContactsContract.CommonDataKinds.SipAddress.CONTENT_ITEM_TYPE.equals(mime) || getInstance().getString(R.string.sync_mimetype).equals(mime)) {
+            contact.addNumberOrAddress(new LinphoneNumberOrAddress(data1, true));
+        } else if (ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE.equals(mime)) {
+            contact.setOrganization(data1, false);
+        } else if (ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE.equals(mime)) {
+            contact.setFirstNameAndLastName(data2, data3, false);
+        }
+    }
+
+    private static List<LinphoneContact> getContactsWithSameName(Map<String, List<LinphoneContact>> contactsByName, LinphoneContact contact) {
+        String name = contact.getFullName() != null ? contact.getFullName().toUpperCase(Locale.getDefault()) : "";
+        List<LinphoneContact> sameName = contactsByName.get(name);
+        if (sameName == null) {
+            sameName = new ArrayList<>();
+            contactsByName.put(name, sameName);
+        }
+        return sameName;
+    }
+
+    private boolean isSipContactToDisplay(LinphoneContact contact) {
+        if (!contact.hasAddress()) return false;
+        if (!mActivity.getResources().getBoolean(R.bool.hide_sip_contacts_without_presence)) return true;
+
+        if (contact.getFriend() != null) {
+            for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+                PresenceModel pm = contact.getFriend().getPresenceModelForUriOrTel(noa.getValue());
+                if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean ensureDisplayName(LinphoneContact contact) {
+        if (contact.getFullName() == null) {
+            if (contact.hasAddress()) {
+                for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+                    if (noa.isSIPAddress()) {
+                        contact.setFullName(LinphoneUtils.getAddressDisplayName(noa.getValue()));
+                        Log.w("Couldn't find a display name for contact " + contact.getFullName() + ", used SIP address display name / username instead...");
+                        break;
+                    }
+                }
+            }
+            if (contact.getFullName() == null) {
+                Log.e("Couldn't find a display name for contact " + contact);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updateFriendListsSubscriptions() {
         if (LinphonePreferences.instance() != null && LinphonePreferences.instance().isFriendlistsubscriptionEnabled()) {
             String rls = mActivity.getString(R.string.rls_uri);
             for (FriendList list : LinphoneManager.getLc().getFriendsLists()) {
@@ -563,18 +704,184 @@ public class ContactsManager extends ContentObserver implements FriendListListen
                 list.updateSubscriptions();
             }
         }
+    }
 
-        long timeElapsed = (new Date()).getTime() - contactsTime.getTime();
-        String time = String.format(Locale.getDefault(), "%02d:%02d:%03d",
-                TimeUnit.MILLISECONDS.toMinutes(timeElapsed),
-                TimeUnit.MILLISECONDS.toSeconds(timeElapsed) -
-                        TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(timeElapsed)),
-                TimeUnit.MILLISECONDS.toMillis(timeElapsed) -
-                        TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(timeElapsed)));
-        Log.i("[ContactsManager] For " + contacts.size() + " contacts: " + time + " elapsed since starting");
+    private boolean isDeltaSyncSupported() {
+        // CONTACT_LAST_UPDATED_TIMESTAMP and DeletedContacts are only available starting Android 4.3
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
 
-        for (ContactsUpdatedListener listener : contactsUpdatedListeners) {
-            listener.onContactsUpdated();
+    /**
+     * Only fetches the native contacts changed or deleted since the last sync.
+     * @return false if a full sync is required instead
+     */
+    private boolean startDeltaSync() {
+        if (!isDeltaSyncSupported() || mLastSyncTimestamp == 0 || mActivity == null || !hasContactsAccess()) {
+            return false;
+        }
+        if (mDeltaSyncTask != null) {
+            mDeltaSyncPending = true;
+            return true;
+        }
+        mDeltaSyncPending = false;
+        mDeltaSyncTask = new DeltaSyncTask(mActivity.getContentResolver(), mLastSyncTimestamp);
+        mDeltaSyncTask.execute();
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void applyDeltaSync(DeltaSyncTask task) {
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc == null) return;
+
+        List<LinphoneContact> updated = new ArrayList<>();
+        for (Map.Entry<String, List<ContentValues>> entry : task.mChangedRows.entrySet()) {
+            String id = entry.getKey();
+            List<ContentValues> rows = entry.getValue();
+            LinphoneContact contact = mNativeContactsById.get(id);
+            String displayName = rows.get(0).getAsString(Data.DISPLAY_NAME_PRIMARY);
+            if (contact == null) {
+                contact = new LinphoneContact();
+                contact.setAndroidId(id);
+            } else {
+                contact.clearAddresses();
+            }
+            contact.setFullName(displayName);
+            for (ContentValues row : rows) {
+                applyDataRow(contact, displayName, row.getAsString(Data.MIMETYPE), row.getAsString("data1"),
+                        row.getAsString("data2"), row.getAsString("data3"), row.getAsString("data4"));
+            }
+            if (!ensureDisplayName(contact)) {
+                continue;
+            }
+            updated.add(contact);
+        }
+
+        // Friends are only created or updated for the contacts that did change
+        for (LinphoneContact contact : updated) {
+            contact.createOrUpdateFriendFromNativeContact();
+            LinphoneContact previous = mNativeContactsById.put(contact.getAndroidId(), contact);
+            synchronized (this) {
+                if (previous == null) {
+                    mContacts.add(contact);
+                }
+                removeByIdentity(mSipContacts, contact);
+                if (isSipContactToDisplay(contact)) {
+                    mSipContacts.add(contact);
+                }
+            }
+            refreshLookupIndex(contact);
+        }
+
+        for (String id : task.mDeletedIds) {
+            LinphoneContact contact = mNativeContactsById.remove(id);
+            if (contact != null) {
+                contact.deleteFriend();
+                removeFromLookupIndex(contact);
+                synchronized (this) {
+                    removeByIdentity(mContacts, contact);
+                    removeByIdentity(mSipContacts, contact);
+                }
+            }
+        }
+
+        synchronized (this) {
+            Collections.sort(mContacts);
+            Collections.sort(mSipContacts);
+            invalidateSearchIndexes();
+        }
+        if (!updated.isEmpty() || !task.mDeletedIds.isEmpty()) {
+            updateFriendListsSubscriptions();
+        }
+
+        mLastSyncTimestamp = Math.max(mLastSyncTimestamp, task.mMaxTimestamp);
+        Log.i("[ContactsManager] Delta sync: " + task.mRowsScanned + " rows scanned, " + updated.size() + " contacts updated, "
+                + task.mDeletedIds.size() + " deleted in " + (System.currentTimeMillis() - task.mStartTime) + "ms");
+
+        if (!updated.isEmpty() || !task.mDeletedIds.isEmpty()) {
+            for (ContactsUpdatedListener listener : contactsUpdatedListeners) {
+                listener.onContactsUpdated();
+            }
+        }
+    }
+
+    private static void removeByIdentity(List<LinphoneContact> list, LinphoneContact contact) {
+        // LinphoneContact.equals() compares names and numbers, which may just have changed
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == contact) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private class DeltaSyncTask extends AsyncTask<Void, Void, Void> {
+        private final ContentResolver mResolver;
+        private final long mSince;
+        private final long mStartTime;
+        private long mMaxTimestamp;
+        private int mRowsScanned;
+        private Map<String, List<ContentValues>> mChangedRows = new LinkedHashMap<>();
+        private List<String> mDeletedIds = new ArrayList<>();
+
+        DeltaSyncTask(ContentResolver resolver, long since) {
+            mResolver = resolver;
+            mSince = since;
+            mStartTime = System.currentTimeMillis();
+            mMaxTimestamp = since;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            String[] args = new String[]{String.valueOf(mSince)};
+            String[] projection = Arrays.copyOf(PROJECTION, PROJECTION.length + 1);
+            projection[PROJECTION.length] = Data.CONTACT_LAST_UPDATED_TIMESTAMP;
+
+            Cursor c = mResolver.query(Data.CONTENT_URI, projection,
+                    Data.IN_VISIBLE_GROUP + " == 1 AND " + Data.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?", args, null);
+            if (c != null) {
+                while (c.moveToNext()) {
+                    mRowsScanned++;
+                    ContentValues row = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(c, row);
+                    String id = row.getAsString(Data.CONTACT_ID);
+                    List<ContentValues> rows = mChangedRows.get(id);
+                    if (rows == null) {
+                        rows = new ArrayList<>();
+                        mChangedRows.put(id, rows);
+                    }
+                    rows.add(row);
+                    Long timestamp = row.getAsLong(Data.CONTACT_LAST_UPDATED_TIMESTAMP);
+                    if (timestamp != null && timestamp > mMaxTimestamp) mMaxTimestamp = timestamp;
+                }
+                c.close();
+            }
+
+            c = mResolver.query(ContactsContract.DeletedContacts.CONTENT_URI,
+                    new String[]{ContactsContract.DeletedContacts.CONTACT_ID, ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP},
+                    ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?", args, null);
+            if (c != null) {
+                while (c.moveToNext()) {
+                    mRowsScanned++;
+                    mDeletedIds.add(c.getString(0));
+                    long timestamp = c.getLong(1);
+                    if (timestamp > mMaxTimestamp) mMaxTimestamp = timestamp;
+                }
+                c.close();
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            mDeltaSyncTask = null;
+            if (instance != ContactsManager.this) return; // Destroyed in the meantime
+
+            applyDeltaSync(this);
+            if (mDeltaSyncPending) {
+                startDeltaSync();
+            }
         }
     }
 
@@ -594,6 +901,7 @@ public class ContactsManager extends ContentObserver implements FriendListListen
             }
         }
         Collections.sort(mContacts);
+        invalidateSearchIndexes();
     }
 
     public synchronized void setSipContacts(List<LinphoneContact> c) {
@@ -607,5 +915,6 @@ public class ContactsManager extends ContentObserver implements FriendListListen
             }
         }
        Collections.sort(mSipContacts);
+        invalidateSearchIndexes();
     }
 }
@@ -0,0 +1,259 @@
+package org.linphone.contacts;
+
+/*
+ContactsSearchIndex.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.linphone.mediastream.Log;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Search index over a contacts list, built once per list.<br />
+ * Names are lower cased and accent folded, SIP usernames and phone numbers are indexed without separators.
+ * Candidates come from a bigram index (or from the previous results when the query grows), then are ranked:
+ * name starting with the query first, then a word of the name, then a SIP username or a number,
+ * then names containing the query. Inside a rank, contacts keep the order of the list.
+ * Plain Java with no Android dependency, so it can be unit tested.
+ */
+public class ContactsSearchIndex {
+    private static final int RANK_NAME = 0;
+    private static final int RANK_WORD = 1;
+    private static final int RANK_ADDRESS = 2;
+    private static final int RANK_CONTAINS = 3;
+    private static final int RANKS = 4;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static class Entry {
+        LinphoneContact contact;
+        String name;
+        String[] words;
+        String[] addresses;
+    }
+
+    private final Entry[] mEntries;
+    private final int[] mBigrams; // sorted, for binary search
+    private final int[][] mBigramEntries; // entries containing each bigram, sorted
+    private String mLastQuery;
+    private String mLastCompactQuery;
+    private int[] mLastMatches;
+
+    public ContactsSearchIndex(List<LinphoneContact> contacts) {
+        long start = System.currentTimeMillis();
+        mEntries = new Entry[contacts.size()];
+        HashMap<Integer, IntList> bigrams = new HashMap<>();
+
+        for (int i = 0; i < mEntries.length; i++) {
+            LinphoneContact contact = contacts.get(i);
+            Entry entry = new Entry();
+            entry.contact = contact;
+            entry.name = normalize(contact.getFullName());
+            entry.words = entry.name.split(" ");
+
+            List<String> addresses = new ArrayList<>();
+            for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+                String value = noa.getValue();
+                if (value == null) continue;
+                if (noa.isSIPAddress()) {
+                    if (value.startsWith("sip:")) value = value.substring(4);
+                    int at = value.indexOf('@');
+                    if (at > 0) value = value.substring(0, at);
+                }
+                addresses.add(compact(normalize(value)));
+            }
+            entry.addresses = addresses.toArray(new String[addresses.size()]);
+            mEntries[i] = entry;
+
+            addBigrams(bigrams, entry.name, i);
+            for (String address : entry.addresses) {
+                addBigrams(bigrams, address, i);
+            }
+        }
+
+        mBigrams = new int[bigrams.size()];
+        int i = 0;
+        for (Integer bigram : bigrams.keySet()) {
+            mBigrams[i++] = bigram;
+        }
+        Arrays.sort(mBigrams);
+        mBigramEntries = new int[mBigrams.length][];
+        for (i = 0; i < mBigrams.length; i++) {
+            mBigramEntries[i] = bigrams.get(mBigrams[i]).toArray();
+        }
+        Log.i("[Contacts Search] Index built for " + mEntries.length + " contacts with " + mBigrams.length + " bigrams in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public synchronized List<LinphoneContact> search(String search) {
+        String query = normalize(search);
+        String compactQuery = compact(query);
+        if (query.isEmpty()) {
+            mLastQuery = null;
+            mLastCompactQuery = null;
+            mLastMatches = null;
+            List<LinphoneContact> all = new ArrayList<>(mEntries.length);
+            for (Entry entry : mEntries) {
+                all.add(entry.contact);
+            }
+            return all;
+        }
+
+        int[] candidates = getCandidates(query);
+        if (!compactQuery.equals(query)) {
+            candidates = union(candidates, getCandidates(compactQuery));
+        }
+        if (mLastQuery != null && query.startsWith(mLastQuery)
+                && !mLastCompactQuery.isEmpty() && compactQuery.startsWith(mLastCompactQuery)
+                && (candidates == null || mLastMatches.length < candidates.length)) {
+            // Query is growing, only the previous results can still match.
+            // Addresses are matched on the compact query, which must be growing too.
+            candidates = mLastMatches;
+        }
+
+        List<List<LinphoneContact>> ranked = new ArrayList<>(RANKS);
+        for (int i = 0; i < RANKS; i++) {
+            ranked.add(new ArrayList<LinphoneContact>());
+        }
+        IntList matches = new IntList();
+        int count = candidates != null ? candidates.length : mEntries.length;
+        for (int i = 0; i < count; i++) {
+            int index = candidates != null ? candidates[i] : i;
+            int rank = getRank(mEntries[index], query, compactQuery);
+            if (rank >= 0) {
+                ranked.get(rank).add(mEntries[index].contact);
+                matches.add(index);
+            }
+        }
+        mLastQuery = query;
+        mLastCompactQuery = compactQuery;
+        mLastMatches = matches.toArray();
+
+        List<LinphoneContact> result = new ArrayList<>(mLastMatches.length);
+        for (List<LinphoneContact> contacts : ranked) {
+            result.addAll(contacts);
+        }
+        return result;
+    }
+
+    private static int getRank(Entry entry, String query, String compactQuery) {
+        if (entry.name.startsWith(query)) return RANK_NAME;
+        for (String word : entry.words) {
+            if (word.startsWith(query)) return RANK_WORD;
+        }
+        if (!compactQuery.isEmpty()) {
+            for (String address : entry.addresses) {
+                if (address.startsWith(compactQuery)) return RANK_ADDRESS;
+            }
+        }
+        if (entry.name.contains(query)) return RANK_CONTAINS;
+        return -1;
+    }
+
+    /**
+     * @return the entries containing all bigrams of the query, sorted, or null if the query is too short to use the index
+     */
+    private int[] getCandidates(String query) {
+        if (query.length() < 2) return null;
+
+        int[] smallest = null;
+        for (int i = 0; i < query.length() - 1; i++) {
+            int bigram = Arrays.binarySearch(mBigrams, getBigram(query, i));
+            if (bigram < 0) return new int[0];
+            int[] entries = mBigramEntries[bigram];
+            if (smallest == null || entries.length < smallest.length) {
+                smallest = entries;
+            }
+        }
+        return smallest;
+    }
+
+    private static int[] union(int[] first, int[] second) {
+        if (first == null || second == null) return null;
+        int[] result = new int[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length || j < second.length) {
+            int value;
+            if (j >= second.length || (i < first.length && first[i] < second[j])) {
+                value = first[i++];
+            } else if (i >= first.length || second[j] < first[i]) {
+                value = second[j++];
+            } else {
+                value = first[i++];
+                j++;
+            }
+            result[k++] = value;
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    private static void addBigrams(HashMap<Integer, IntList> bigrams, String value, int index) {
+        for (int i = 0; i < value.length() - 1; i++) {
+            int bigram = getBigram(value, i);
+            IntList entries = bigrams.get(bigram);
+            if (entries == null) {
+                entries = new IntList();
+                bigrams.put(bigram, entries);
+            }
+            if (entries.size == 0 || entries.values[entries.size - 1] != index) {
+                entries.add(index);
+            }
+        }
+    }
+
+    private static int getBigram(String value, int index) {
+        return (value.charAt(index) << 16) | value.charAt(index + 1);
+    }
+
+    static String normalize(String value) {
+        if (value == null) return "";
+        String folded = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(folded).replaceAll("").toLowerCase(Locale.getDefault());
+    }
+
+    private static String compact(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
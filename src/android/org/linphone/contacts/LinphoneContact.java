@@ -540,9 +540,13 @@ public class LinphoneContact implements Serializable, Comparable<LinphoneContact
         }
 
         createOrUpdateFriend();
+        ContactsManager.getInstance().refreshLookupIndex(this);
+        ContactsManager.getInstance().invalidateSearchIndexes();
     }
 
     public void delete() {
+        ContactsManager.getInstance().removeFromLookupIndex(this);
+        ContactsManager.getInstance().invalidateSearchIndexes();
         if (isAndroidContact()) {
             ContactsManager.getInstance().delete(getAndroidId());
         }
@@ -562,6 +566,7 @@ public class LinphoneContact implements Serializable, Comparable<LinphoneContact
 
     public void clearAddresses() {
         addresses.clear();
+        hasSipAddress = false;
     }
 
     public void refresh() {
@@ -19,7 +19,11 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 
 package org.linphone.contacts;
 
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -29,11 +33,13 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import org.linphone.LinphoneManager;
+import org.linphone.ImageLoader;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.core.Address;
 import org.linphone.core.Factory;
+import org.linphone.core.MagicSearch;
 import org.linphone.core.PresenceBasicStatus;
 import org.linphone.core.PresenceModel;
 import org.linphone.core.ProxyConfig;
@@ -41,11 +47,13 @@ import org.linphone.core.SearchResult;
 import org.linphone.mediastream.Log;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 public class SearchContactsListAdapter extends RecyclerView.Adapter<SearchContactsListAdapter.ViewHolder> {
     @SuppressWarnings("unused")
     private static final String TAG = SearchContactsListAdapter.class.getSimpleName();
+    private static final int SEARCH_DELAY = 150;
 
     public static class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         public TextView name;
@@ -85,6 +93,19 @@ public class SearchContactsListAdapter extends RecyclerView.Adapter<SearchContac
     private ProgressBar progressBar;
     private boolean mOnlySipContact = false;
     private ViewHolder.ClickListener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private String mPendingSearch;
+    private String mLastSearch;
+    private boolean mLastOnlySipContact;
+    private int mSearchGeneration;
+    private DiffTask mDiffTask;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runSearch(mPendingSearch);
+        }
+    };
 
     public List<ContactAddress> getContacts() {
         return contacts;
@@ -112,6 +133,12 @@ public class SearchContactsListAdapter extends RecyclerView.Adapter<SearchContac
         return new ViewHolder(v, mListener);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        ImageLoader.getInstance(holder.avatar.getContext()).cancel(holder.avatar);
+        super.onViewRecycled(holder);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         ContactAddress contact = getItem(position);
@@ -248,15 +275,61 @@ public class SearchContactsListAdapter extends RecyclerView.Adapter<SearchContac
         return contacts.size();
     }
 
+    /**
+     * Forces the next search to start from a fresh MagicSearch cache (contacts or filter changed).
+     */
+    public void resetSearchCache() {
+        mLastSearch = null;
+    }
+
+    public void cancelSearch() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mSearchGeneration++;
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+            mDiffTask = null;
+        }
+    }
+
+    /**
+     * Debounced: only the last query typed within SEARCH_DELAY is run, superseded results are dropped.
+     */
     public void searchContacts(String search, RecyclerView resultContactsSearch) {
-        List<ContactAddress> result = new ArrayList<>();
+        if (resultContactsSearch.getAdapter() != this) {
+            resultContactsSearch.setAdapter(this);
+        }
+        mPendingSearch = search;
+        mSearchGeneration++;
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY);
+    }
+
+    private void runSearch(String search) {
+        MagicSearch magicSearch = ContactsManager.getInstance().getMagicSearch();
+        if (mLastSearch == null || !search.startsWith(mLastSearch) || mLastOnlySipContact != mOnlySipContact) {
+            // MagicSearch results for a longer query are filtered from the cached ones, keep them while narrowing
+            magicSearch.resetSearchCache();
+        }
+        mLastSearch = search;
+        mLastOnlySipContact = mOnlySipContact;
 
+        // MagicSearch and Addresses belong to the Core, so this part stays on the main thread
+        List<ContactAddress> result = new ArrayList<>();
+        HashSet<String> keys = new HashSet<>();
         String domain = "";
         ProxyConfig prx = LinphoneManager.getLc().getDefaultProxyConfig();
         if (prx != null) domain = prx.getDomain();
-        SearchResult[] results = ContactsManager.getInstance().getMagicSearch().getContactListFromFilter(search, mOnlySipContact ? domain : "");
+        boolean hideWithoutPresence = LinphoneActivity.instance().getResources().getBoolean(R.bool.hide_sip_contacts_without_presence);
+        SearchResult[] results = magicSearch.getContactListFromFilter(search, mOnlySipContact ? domain : "");
         for (SearchResult sr : results) {
-            boolean found = false;
+            String uri = sr.getAddress() != null ? sr.getAddress().asStringUriOnly() : null;
+            String phoneNumber = sr.getPhoneNumber();
+            String normalizedPhoneNumber = (phoneNumber != null && prx != null) ? prx.normalizePhoneNumber(phoneNumber) : phoneNumber;
+            if ((uri != null && keys.contains("sip:" + uri))
+                    || (normalizedPhoneNumber != null && keys.contains("tel:" + normalizedPhoneNumber))) {
+                continue;
+            }
+
             LinphoneContact contact = ContactsManager.getInstance().findContactFromAddress(sr.getAddress());
             if (contact == null) {
                 contact = new LinphoneContact();
@@ -265,44 +338,78 @@ public class SearchContactsListAdapter extends RecyclerView.Adapter<SearchContac
                     contact.refresh();
                 }
             }
-            if (sr.getAddress() != null || sr.getPhoneNumber() != null) {
-                for (ContactAddress ca : result) {
-                    String normalizedPhoneNumber = (ca != null && ca.getPhoneNumber() != null && prx != null) ? prx.normalizePhoneNumber(ca.getPhoneNumber()) : null;
-                    if ((sr.getAddress() != null && ca.getAddress() != null
-                            && ca.getAddress().asStringUriOnly().equals(sr.getAddress().asStringUriOnly()))
-                            || (sr.getPhoneNumber() != null && normalizedPhoneNumber != null
-                            && sr.getPhoneNumber().equals(normalizedPhoneNumber))) {
-                        found = true;
-                        break;
-                    }
-                }
+            if (hideWithoutPresence && !hasOpenPresence(contact)) {
+                continue;
             }
-            if (!found) {
-                if (LinphoneActivity.instance().getResources().getBoolean(R.bool.hide_sip_contacts_without_presence)) {
-                    if (contact.getFriend() != null) {
-                        for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
-                            PresenceModel pm = contact.getFriend().getPresenceModelForUriOrTel(noa.getValue());
-                            if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
-                                result.add(new ContactAddress(contact,
-                                        (sr.getAddress() != null) ? sr.getAddress().asStringUriOnly() : "",
-                                        sr.getPhoneNumber(),
-                                        contact.isFriend()));
-                                break;
-                            }
-                        }
-                    }
-                } else {
-                    result.add(new ContactAddress(contact,
-                            (sr.getAddress() != null) ? sr.getAddress().asStringUriOnly() : "",
-                            sr.getPhoneNumber(),
-                            contact.isFriend()));
-                }
+
+            result.add(new ContactAddress(contact, (uri != null) ? uri : "", phoneNumber, contact.isFriend()));
+            if (uri != null) keys.add("sip:" + uri);
+            if (normalizedPhoneNumber != null) keys.add("tel:" + normalizedPhoneNumber);
+        }
+
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+        }
+        mDiffTask = new DiffTask(mSearchGeneration, contacts, result);
+        mDiffTask.execute();
+    }
+
+    private boolean hasOpenPresence(LinphoneContact contact) {
+        if (contact.getFriend() == null) return false;
+        for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+            PresenceModel pm = contact.getFriend().getPresenceModelForUriOrTel(noa.getValue());
+            if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * Computes the changes between the displayed list and the new results in background,
+     * so only the rows that did change are rebound.
+     */
+    private class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        private final int mGeneration;
+        private final List<ContactAddress> mOldList, mNewList;
+
+        DiffTask(int generation, List<ContactAddress> oldList, List<ContactAddress> newList) {
+            mGeneration = generation;
+            mOldList = oldList;
+            mNewList = newList;
+        }
 
-        contacts = result;
-        resultContactsSearch.setAdapter(this);
-        notifyDataSetChanged();
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return mOldList.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return mNewList.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return mOldList.get(oldItemPosition).getSearchKey().equals(mNewList.get(newItemPosition).getSearchKey());
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    return mOldList.get(oldItemPosition).getContact() == mNewList.get(newItemPosition).getContact();
+                }
+            }, false);
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diff) {
+            if (isCancelled() || mGeneration != mSearchGeneration || contacts != mOldList) return;
+            mDiffTask = null;
+            contacts = mNewList;
+            diff.dispatchUpdatesTo(SearchContactsListAdapter.this);
+        }
     }
 }
-
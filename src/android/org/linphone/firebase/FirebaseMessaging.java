@@ -19,16 +19,10 @@ along with this program; if not, write to the Free Software
 Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 */
 
-import android.content.Intent;
-
 import com.google.firebase.messaging.FirebaseMessagingService;
 import com.google.firebase.messaging.RemoteMessage;
 
-import org.linphone.LinphoneManager;
-import org.linphone.LinphoneService;
-import org.linphone.LinphoneUtils;
-
-import static android.content.Intent.ACTION_MAIN;
+import org.linphone.PushWakeUp;
 
 public class FirebaseMessaging extends FirebaseMessagingService {
     public FirebaseMessaging() {
@@ -37,20 +31,6 @@ public class FirebaseMessaging extends FirebaseMessagingService {
     @Override
     public void onMessageReceived(RemoteMessage remoteMessage) {
         android.util.Log.i("FirebaseMessaging", "[Push Notification] Received");
-
-        if (!LinphoneService.isReady()) {
-            android.util.Log.i("FirebaseMessaging", "[Push Notification] Starting Service");
-            startService(new Intent(ACTION_MAIN).setClass(this, LinphoneService.class));
-        } else if (LinphoneManager.isInstanciated() && LinphoneManager.getLc().getCallsNb() == 0) {
-            LinphoneUtils.dispatchOnUIThread(new Runnable() {
-                @Override
-                public void run() {
-                    if (LinphoneManager.isInstanciated() && LinphoneManager.getLc().getCallsNb() == 0) {
-                        LinphoneManager.getLc().setNetworkReachable(false);
-                        LinphoneManager.getLc().setNetworkReachable(true);
-                    }
-                }
-            });
-        }
+        PushWakeUp.onPushReceived(this);
     }
 }
@@ -21,6 +21,7 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 import android.app.ProgressDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.CheckBoxPreference;
 import android.preference.EditTextPreference;
 import android.preference.ListPreference;
@@ -66,6 +67,7 @@ public class AccountPreferencesFragment extends PreferencesListFragment implemen
 
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        long start = SystemClock.uptimeMillis();
 
         PreferenceScreen screen = getPreferenceScreen();
         n = getArguments().getInt("Account", 0);
@@ -74,6 +76,7 @@ public class AccountPreferencesFragment extends PreferencesListFragment implemen
             builder = new AccountBuilder(LinphoneManager.getLc());
         }
         initAccountPreferencesFields(screen);
+        Log.i("[Account Settings] Initialized in " + (SystemClock.uptimeMillis() - start) + " ms, preferences cache: " + mPrefs.getCacheStats());
 
         // Force hide keyboard
         getActivity().getWindow().setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_ALWAYS_HIDDEN);
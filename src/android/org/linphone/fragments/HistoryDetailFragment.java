@@ -19,9 +19,14 @@ along with this program; if not, write to the Free Software
 Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 */
 
+import android.app.AlertDialog;
 import android.app.Fragment;
+import android.content.ActivityNotFoundException;
+import android.content.DialogInterface;
+import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.v4.content.FileProvider;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -29,12 +34,14 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import org.linphone.LinphoneManager;
 import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
+import org.linphone.call.CallQualityRecorder;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.LinphoneContact;
 import org.linphone.core.Address;
@@ -45,12 +52,14 @@ import org.linphone.core.Factory;
 import org.linphone.core.ProxyConfig;
 import org.linphone.mediastream.Log;
 
+import java.io.File;
+
 public class HistoryDetailFragment extends Fragment implements OnClickListener {
     private ImageView dialBack, chat, addToContacts, goToContact, back;
     private View view;
     private ImageView contactPicture, callDirection;
-    private TextView contactName, contactAddress, time, date;
-    private String sipUri, displayName, pictureUri;
+    private TextView contactName, contactAddress, time, date, exportQuality;
+    private String sipUri, displayName, pictureUri, callId;
     private RelativeLayout mWaitLayout;
     private LinphoneContact contact;
     private ChatRoom mChatRoom;
@@ -65,6 +74,7 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
         String status = getArguments().getString("Call.Status");
         String callTime = getArguments().getString("CallTime");
         String callDate = getArguments().getString("CallDate");
+        callId = getArguments().getString("CallId");
 
         view = inflater.inflate(R.layout.history_detail, container, false);
 
@@ -102,6 +112,9 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
         time = view.findViewById(R.id.time);
         date = view.findViewById(R.id.date);
 
+        exportQuality = view.findViewById(R.id.export_quality);
+        exportQuality.setOnClickListener(this);
+
         displayHistory(status, callTime, callDate);
 
         mChatRoomCreationListener = new ChatRoomListenerStub() {
@@ -142,6 +155,19 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
         Long longDate = Long.parseLong(callDate);
         date.setText(LinphoneUtils.timestampToHumanDate(getActivity(), longDate, getString(R.string.history_detail_date_format)));
 
+        exportQuality.setVisibility(View.GONE);
+        CallQualityRecorder recorder = LinphoneManager.isInstanciated() ? LinphoneManager.getInstance().getCallQualityRecorder() : null;
+        if (recorder != null && callId != null) {
+            recorder.checkTimeline(callId, new CallQualityRecorder.TimelineListener() {
+                @Override
+                public void onTimelineChecked(String checkedCallId, boolean exists) {
+                    if (checkedCallId.equals(callId)) { // Another call may be displayed by now
+                        exportQuality.setVisibility(exists ? View.VISIBLE : View.GONE);
+                    }
+                }
+            });
+        }
+
         Address lAddress = Factory.instance().createAddress(sipUri);
 
         if (lAddress != null) {
@@ -164,7 +190,7 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
         }
     }
 
-    public void changeDisplayedHistory(String sipUri, String displayName, String pictureUri, String status, String callTime, String callDate) {
+    public void changeDisplayedHistory(String sipUri, String displayName, String pictureUri, String status, String callTime, String callDate, String callId) {
         if (displayName == null) {
             displayName = LinphoneUtils.getUsernameFromAddress(sipUri);
         }
@@ -172,6 +198,7 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
         this.sipUri = sipUri;
         this.displayName = displayName;
         this.pictureUri = pictureUri;
+        this.callId = callId;
         displayHistory(status, callTime, callDate);
     }
 
@@ -221,6 +248,54 @@ public class HistoryDetailFragment extends Fragment implements OnClickListener {
                 LinphoneActivity.instance().displayContactsForEdition(uri);
         } else if (id == R.id.goto_contact) {
             LinphoneActivity.instance().displayContact(contact, false);
+        } else if (id == R.id.export_quality) {
+            chooseQualityExportFormat();
+        }
+    }
+
+    private void chooseQualityExportFormat() {
+        String[] formats = {getString(R.string.call_quality_export_csv), getString(R.string.call_quality_export_json)};
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.call_quality_export)
+                .setItems(formats, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        exportQuality(which == 1);
+                    }
+                })
+                .show();
+    }
+
+    private void exportQuality(boolean json) {
+        // Shared through the file provider, which only exposes the external storage
+        File outputDirectory = getActivity().getExternalCacheDir();
+        if (outputDirectory == null || !LinphoneManager.isInstanciated()) {
+            Toast.makeText(getActivity(), R.string.call_quality_export_failed, Toast.LENGTH_SHORT).show();
+            return;
         }
+
+        final String mimeType = json ? "application/json" : "text/csv";
+        LinphoneManager.getInstance().getCallQualityRecorder().export(callId, new File(outputDirectory, "call_quality"), json, new CallQualityRecorder.ExportListener() {
+            @Override
+            public void onExported(File file) {
+                if (!isAdded()) return;
+                if (file == null) {
+                    Toast.makeText(getActivity(), R.string.call_quality_export_failed, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                Uri uri = FileProvider.getUriForFile(getActivity(), getString(R.string.file_provider), file);
+                Intent intent = new Intent(Intent.ACTION_SEND);
+                intent.setType(mimeType);
+                intent.putExtra(Intent.EXTRA_SUBJECT, file.getName());
+                intent.putExtra(Intent.EXTRA_STREAM, uri);
+                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                try {
+                    startActivity(Intent.createChooser(intent, getString(R.string.call_quality_export)));
+                } catch (ActivityNotFoundException e) {
+                    Log.e(e);
+                }
+            }
+        });
     }
 }
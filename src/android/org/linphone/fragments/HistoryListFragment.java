@@ -22,6 +22,7 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
 import android.app.Fragment;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -38,16 +39,19 @@ import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.call.CallHistoryAdapter;
+import org.linphone.call.CallHistoryModel;
+import org.linphone.call.CallQualityRecorder;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.ContactsUpdatedListener;
 import org.linphone.core.Address;
 import org.linphone.core.Call;
 import org.linphone.core.CallLog;
+import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
+import org.linphone.mediastream.Log;
 import org.linphone.ui.SelectableHelper;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Set;
 
 public class HistoryListFragment extends Fragment implements OnClickListener, OnItemClickListener, CallHistoryAdapter.ViewHolder.ClickListener, ContactsUpdatedListener, SelectableHelper.DeleteListener {
     private RecyclerView historyList;
@@ -55,7 +59,8 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
     private ImageView missedCalls, allCalls, edit;
     private View allCallsSelected, missedCallsSelected;
     private boolean mOnlyDisplayMissedCalls;
-    private List<CallLog> mLogs;
+    private CallHistoryModel mModel;
+    private CoreListenerStub mListener;
     private CallHistoryAdapter mHistoryAdapter;
     private LinearLayoutManager mLayoutManager;
     private Context mContext;
@@ -96,45 +101,79 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
 
         edit = view.findViewById(R.id.edit);
 
+        mModel = new CallHistoryModel(mContext);
+        mModel.setListener(new CallHistoryModel.Listener() {
+            @Override
+            public void onMissedCallsFound(int position, int count) {
+                if (!mOnlyDisplayMissedCalls) return;
+                if (mHistoryAdapter != null && position > 0) {
+                    mHistoryAdapter.notifyItemRangeInserted(position, count);
+                } else {
+                    displayLogs();
+                }
+            }
+
+            @Override
+            public void onMissedCallsScanned() {
+                if (mOnlyDisplayMissedCalls && mHistoryAdapter == null) {
+                    displayLogs();
+                }
+            }
+        });
+        historyList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mHistoryAdapter != null) {
+                    mModel.onVisibleRangeChanged(mLayoutManager.findFirstVisibleItemPosition(), mLayoutManager.findLastVisibleItemPosition(), mHistoryAdapter.isMissedOnly());
+                }
+            }
+        });
+        mListener = new CoreListenerStub() {
+            @Override
+            public void onCallLogUpdated(Core lc, CallLog newcl) {
+                if (!mModel.add(newcl)) return;
+                if (mOnlyDisplayMissedCalls && newcl.getStatus() != Call.Status.Missed) return;
+                if (mHistoryAdapter != null) {
+                    mHistoryAdapter.onLogAdded();
+                } else {
+                    displayLogs();
+                }
+            }
+        };
+
         return view;
     }
 
     public void refresh() {
-        mLogs = Arrays.asList(LinphoneManager.getLc().getCallLogs());
+        mModel.refresh(LinphoneManager.getLc());
+        displayLogs();
     }
 
     public void displayFirstLog() {
-        if (mLogs != null && mLogs.size() > 0) {
-            CallLog log = mLogs.get(0);
-            String addr;
-            if (log.getDir() == Call.Dir.Incoming) {
-                addr = log.getFromAddress().asString();
-            } else {
-                addr = log.getToAddress().asString();
-            }
-            LinphoneActivity.instance().displayHistoryDetail(addr, log);
+        if (mModel != null && mModel.size(false) > 0) {
+            CallHistoryModel.Entry entry = mModel.get(0, false);
+            LinphoneActivity.instance().displayHistoryDetail(entry.getSipUri(), entry.getLog());
         } else {
             LinphoneActivity.instance().displayEmptyFragment();
         }
     }
 
-    private void removeNotMissedCallsFromLogs() {
-        if (mOnlyDisplayMissedCalls) {
-            List<CallLog> missedCalls = new ArrayList<CallLog>();
-            for (CallLog log : mLogs) {
-                if (log.getStatus() == Call.Status.Missed) {
-                    missedCalls.add(log);
-                }
-            }
-            mLogs = missedCalls;
+    private void displayLogs() {
+        if (!hideHistoryListAndDisplayMessageIfEmpty()) {
+            mHistoryAdapter = new CallHistoryAdapter(mContext, mModel, mOnlyDisplayMissedCalls, this, mSelectionHelper);
+            historyList.setAdapter(mHistoryAdapter);
+            mSelectionHelper.setAdapter(mHistoryAdapter);
+            mSelectionHelper.setDialogMessage(R.string.chat_room_delete_dialog);
+        } else {
+            mHistoryAdapter = null;
         }
     }
 
     private boolean hideHistoryListAndDisplayMessageIfEmpty() {
-        removeNotMissedCallsFromLogs();
-        if (mLogs.isEmpty()) {
+        if (mModel.size(mOnlyDisplayMissedCalls) == 0) {
             if (mOnlyDisplayMissedCalls) {
-                noMissedCallHistory.setVisibility(View.VISIBLE);
+                // Missed calls may not all have been found yet
+                noMissedCallHistory.setVisibility(mModel.isMissedCallsScanComplete() ? View.VISIBLE : View.GONE);
             } else {
                 noCallHistory.setVisibility(View.VISIBLE);
             }
@@ -161,18 +200,21 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
             LinphoneActivity.instance().displayMissedCalls(0);
         }
 
-        mLogs = Arrays.asList(LinphoneManager.getLc().getCallLogs());
-        if (!hideHistoryListAndDisplayMessageIfEmpty()) {
-            mHistoryAdapter = new CallHistoryAdapter(getActivity().getApplicationContext(), mLogs, this, mSelectionHelper);
-            historyList.setAdapter(mHistoryAdapter);
-            mSelectionHelper.setAdapter(mHistoryAdapter);
-            mSelectionHelper.setDialogMessage(R.string.chat_room_delete_dialog);
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc != null) {
+            lc.addListener(mListener);
+            refresh();
         }
     }
 
     @Override
     public void onPause() {
         ContactsManager.removeContactsListener(this);
+        Core lc = LinphoneManager.getLcIfManagerNotDestroyedOrNull();
+        if (lc != null) {
+            lc.removeListener(mListener);
+        }
+        mModel.cancel();
         super.onPause();
     }
 
@@ -180,6 +222,7 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
     public void onContactsUpdated() {
         if (!LinphoneActivity.isInstanciated() || LinphoneActivity.instance().getCurrentFragment() != FragmentsAvailable.HISTORY_LIST)
             return;
+        mModel.onContactsUpdated();
         CallHistoryAdapter adapter = (CallHistoryAdapter) historyList.getAdapter();
         if (adapter != null) {
             adapter.notifyDataSetChanged();
@@ -196,7 +239,6 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
             missedCallsSelected.setVisibility(View.INVISIBLE);
             missedCalls.setEnabled(true);
             mOnlyDisplayMissedCalls = false;
-            refresh();
         }
         if (id == R.id.missed_calls) {
             allCalls.setEnabled(true);
@@ -205,33 +247,43 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
             missedCalls.setEnabled(false);
             mOnlyDisplayMissedCalls = true;
         }
-        if (!hideHistoryListAndDisplayMessageIfEmpty()) {
-//			historyList.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
-            mHistoryAdapter = new CallHistoryAdapter(mContext, mLogs, this, mSelectionHelper);
-            historyList.setAdapter(mHistoryAdapter);
-            mSelectionHelper.setAdapter(mHistoryAdapter);
-            mSelectionHelper.setDialogMessage(R.string.chat_room_delete_dialog);
-        }
-
+        displayLogs();
     }
 
     @Override
     public void onItemClick(AdapterView<?> adapter, View view, int position, long id) {
         if (mHistoryAdapter.isEditionEnabled()) {
-            CallLog log = mLogs.get(position);
+            CallLog log = (CallLog) mHistoryAdapter.getItem(position);
             LinphoneManager.getLc().removeCallLog(log);
-            mLogs = Arrays.asList(LinphoneManager.getLc().getCallLogs());
+            LinphoneManager.getInstance().getCallQualityRecorder().delete(log.getCallId());
+            Set<CallLog> removed = CallHistoryModel.newLogSet();
+            removed.add(log);
+            mModel.removeAll(removed);
+            displayLogs();
         }
     }
 
     @Override
     public void onDeleteSelection(Object[] objectsToDelete) {
-        int size = mHistoryAdapter.getSelectedItemCount();
-        for (int i = 0; i < size; i++) {
-            CallLog log = (CallLog) objectsToDelete[i];
-            LinphoneManager.getLc().removeCallLog(log);
-            onResume();
+        Core lc = LinphoneManager.getLc();
+        CallQualityRecorder recorder = LinphoneManager.getInstance().getCallQualityRecorder();
+        long start = SystemClock.uptimeMillis();
+        if (objectsToDelete.length == mModel.size(false)) {
+            lc.clearCallLogs();
+            recorder.deleteAll();
+            mModel.clear();
+        } else {
+            Set<CallLog> removed = CallHistoryModel.newLogSet();
+            for (Object object : objectsToDelete) {
+                CallLog log = (CallLog) object;
+                lc.removeCallLog(log);
+                recorder.delete(log.getCallId());
+                removed.add(log);
+            }
+            mModel.removeAll(removed);
         }
+        Log.i("[Call History] Deleted " + objectsToDelete.length + " call logs in " + (SystemClock.uptimeMillis() - start) + "ms");
+        displayLogs();
     }
 
     @Override
@@ -240,13 +292,7 @@ public class HistoryListFragment extends Fragment implements OnClickListener, On
             mHistoryAdapter.toggleSelection(position);
         } else {
             if (LinphoneActivity.isInstanciated()) {
-                CallLog log = mLogs.get(position);
-                Address address;
-                if (log.getDir() == Call.Dir.Incoming) {
-                    address = log.getFromAddress();
-                } else {
-                    address = log.getToAddress();
-                }
+                Address address = mHistoryAdapter.getEntry(position).getAddress();
                 LinphoneActivity.instance().setAddresGoToDialerAndCall(address.asStringUriOnly(), address.getDisplayName(), null);
             }
         }
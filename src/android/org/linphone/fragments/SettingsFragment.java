@@ -30,6 +30,7 @@ import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.CheckBoxPreference;
 import android.preference.EditTextPreference;
 import android.preference.ListPreference;
@@ -96,6 +97,7 @@ public class SettingsFragment extends PreferencesListFragment {
     @Override
     public void onCreate(Bundle bundle) {
         super.onCreate(bundle);
+        long start = SystemClock.uptimeMillis();
 
         mPrefs = LinphonePreferences.instance();
         removePreviousPreferencesFile(); // Required when updating the preferences order
@@ -134,6 +136,7 @@ public class SettingsFragment extends PreferencesListFragment {
         initSettings();
         setListeners();
         hideSettings();
+        Log.i("[Settings] Initialized in " + (SystemClock.uptimeMillis() - start) + " ms, preferences cache: " + mPrefs.getCacheStats());
     }
 
     private void removePreviousPreferencesFile() {
@@ -26,7 +26,6 @@ import android.content.Context;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v4.content.ContextCompat;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -44,6 +43,7 @@ import org.linphone.R;
 import org.linphone.activities.LinphoneActivity;
 import org.linphone.assistant.AssistantActivity;
 import org.linphone.call.CallActivity;
+import org.linphone.call.CallStatsSampler;
 import org.linphone.core.Call;
 import org.linphone.core.Content;
 import org.linphone.core.Core;
@@ -55,10 +55,9 @@ import org.linphone.core.RegistrationState;
 import org.linphone.mediastream.Log;
 
 public class StatusFragment extends Fragment {
-    private Handler refreshHandler = new Handler();
     private TextView statusText, voicemailCount;
     private ImageView statusLed, callQuality, encryption, menu, voicemail;
-    private Runnable mCallQualityUpdater;
+    private CallStatsSampler.Listener mCallQualityListener;
     private boolean isInCall, isAttached = false, isZrtpAsk;
     private CoreListenerStub mListener;
     private Dialog ZRTPdialog = null;
@@ -252,24 +251,25 @@ public class StatusFragment extends Fragment {
     //INCALL STATUS BAR
     private void startCallQuality() {
         callQuality.setVisibility(View.VISIBLE);
-        refreshHandler.postDelayed(mCallQualityUpdater = new Runnable() {
-            Call mCurrentCall = LinphoneManager.getLc()
-                    .getCurrentCall();
-
-            public void run() {
-                if (mCurrentCall == null) {
-                    mCallQualityUpdater = null;
-                    return;
+        if (mCallQualityListener == null) {
+            mCallQualityListener = new CallStatsSampler.Listener() {
+                @Override
+                public void onCallStatsSampled(Call call, CallStatsSampler.Sample sample) {
+                    if (!isInCall) {
+                        stopCallQuality();
+                        return;
+                    }
+                    updateQualityOfSignalIcon(sample.getQuality());
                 }
-                float newQuality = mCurrentCall.getCurrentQuality();
-                updateQualityOfSignalIcon(newQuality);
+            };
+        }
+        CallStatsSampler.getInstance().addListener(mCallQualityListener);
+    }
 
-                if (isInCall) {
-                    refreshHandler.postDelayed(this, 1000);
-                } else
-                    mCallQualityUpdater = null;
-            }
-        }, 1000);
+    private void stopCallQuality() {
+        if (mCallQualityListener != null) {
+            CallStatsSampler.getInstance().removeListener(mCallQualityListener);
+        }
     }
 
     void updateQualityOfSignalIcon(float quality) {
@@ -346,10 +346,7 @@ public class StatusFragment extends Fragment {
             lc.removeListener(mListener);
         }
 
-        if (mCallQualityUpdater != null) {
-            refreshHandler.removeCallbacks(mCallQualityUpdater);
-            mCallQualityUpdater = null;
-        }
+        stopCallQuality();
     }
 
     public void refreshStatusItems(final Call call, boolean isVideoEnabled) {
@@ -31,6 +31,7 @@ import org.linphone.LinphonePreferences;
 import org.linphone.LinphoneService;
 import org.linphone.LinphoneUtils;
 import org.linphone.R;
+import org.linphone.RegisterRefresher;
 import org.linphone.compatibility.Compatibility;
 import org.linphone.core.Core;
 import org.linphone.mediastream.Log;
@@ -51,21 +52,15 @@ public class KeepAliveReceiver extends BroadcastReceiver {
 
             String action = intent.getAction();
             if (action == null) {
-                Log.i("[KeepAlive] Refresh registers");
-                lc.refreshRegisters();
-                //make sure iterate will have enough time, device will not sleep until exit from this method
-                try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException e) {
-                    Log.e("Cannot sleep for 2s", e);
-                } finally {
-                    //make sure the application will at least wakes up every 10 mn
-                    Intent newIntent = new Intent(context, KeepAliveReceiver.class);
-                    PendingIntent keepAlivePendingIntent = PendingIntent.getBroadcast(context, 0, newIntent, PendingIntent.FLAG_ONE_SHOT);
+                // Returns right away, the device is kept awake until the registers are refreshed
+                RegisterRefresher.getInstance().refresh(context);
 
-                    AlarmManager alarmManager = ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE));
-                    Compatibility.scheduleAlarm(alarmManager, AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + 600000, keepAlivePendingIntent);
-                }
+                //make sure the application will at least wakes up every 10 mn
+                Intent newIntent = new Intent(context, KeepAliveReceiver.class);
+                PendingIntent keepAlivePendingIntent = PendingIntent.getBroadcast(context, 0, newIntent, PendingIntent.FLAG_ONE_SHOT);
+
+                AlarmManager alarmManager = ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE));
+                Compatibility.scheduleAlarm(alarmManager, AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + 600000, keepAlivePendingIntent);
             } else if (action.equalsIgnoreCase(Intent.ACTION_SCREEN_ON)) {
                 Log.i("[KeepAlive] Screen is on, enable");
                 lc.enableKeepAlive(true);
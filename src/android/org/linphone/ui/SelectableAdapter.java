@@ -67,7 +67,7 @@ public abstract class SelectableAdapter<VH extends RecyclerView.ViewHolder> exte
         } else {
             mSelectedItems.put(position, true);
         }
-        mListHelper.updateSelectionButtons(getSelectedItemCount() == 0, getSelectedItemCount() == getItemCount());
+        mListHelper.updateSelectionButtons(getSelectedItemCount() == 0, getSelectedItemCount() == getSelectableItemCount());
 
         notifyItemChanged(position);
     }
@@ -96,10 +96,12 @@ public abstract class SelectableAdapter<VH extends RecyclerView.ViewHolder> exte
 
     public void selectAll() {
         for (Integer i = 0; i < getItemCount(); i++) {
-            mSelectedItems.put(i, true);
-            notifyDataSetChanged();
+            if (isSelectable(i)) {
+                mSelectedItems.put(i, true);
+            }
         }
-        mListHelper.updateSelectionButtons(false, true);
+        notifyDataSetChanged();
+        mListHelper.updateSelectionButtons(getSelectedItemCount() == 0, true);
     }
 
     public void deselectAll() {
@@ -108,5 +110,54 @@ public abstract class SelectableAdapter<VH extends RecyclerView.ViewHolder> exte
         notifyDataSetChanged();
     }
 
+    /**
+     * Keeps the selection on the same items when one moved, to be called along with notifyItemMoved
+     */
+    protected void notifySelectionItemMoved(int fromPosition, int toPosition) {
+        remapSelection(fromPosition, toPosition);
+    }
+
+    /**
+     * Keeps the selection on the same items when one was inserted, to be called along with notifyItemInserted
+     */
+    protected void notifySelectionItemInserted(int position) {
+        remapSelection(-1, position);
+    }
+
+    /**
+     * @param removed position the item was removed from, or -1 if it's a new item
+     * @param inserted position the item was inserted at
+     */
+    private void remapSelection(int removed, int inserted) {
+        if (mSelectedItems.size() == 0) return;
+        SparseBooleanArray selection = new SparseBooleanArray(mSelectedItems.size());
+        for (int i = 0; i < mSelectedItems.size(); i++) {
+            int position = mSelectedItems.keyAt(i);
+            if (position == removed) {
+                position = inserted;
+            } else {
+                if (removed >= 0 && position > removed) position--;
+                if (position >= inserted) position++;
+            }
+            selection.put(position, true);
+        }
+        mSelectedItems = selection;
+        mListHelper.updateSelectionButtons(getSelectedItemCount() == 0, getSelectedItemCount() == getSelectableItemCount());
+    }
+
+    /**
+     * Indicates if the item at position position can be selected, selectAll skips the ones that can't
+     */
+    protected boolean isSelectable(int position) {
+        return true;
+    }
+
+    /**
+     * Count the items that can be selected, the selection is full when they all are
+     */
+    protected int getSelectableItemCount() {
+        return getItemCount();
+    }
+
     public abstract Object getItem(int position);
 }
@@ -0,0 +1,233 @@
+package org.linphone;
+
+/*
+CoreSchedulerBenchmark.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.linphone.core.Core;
+import org.linphone.core.ProxyConfig;
+import org.linphone.mediastream.Log;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the former fixed 20 ms timer posting Core.iterate() to the looper with the CoreScheduler, on a looper
+ * also running frames of a busy list: iterate intervals (jitter), frame time and dropped frames.
+ * The Core is a stand-in whose iterate() takes ITERATE_WORK, so only the scheduling is measured.
+ */
+public class CoreSchedulerBenchmark extends TestCase {
+	private static final long DURATION = 6000; // in ms
+	private static final long FRAME_PERIOD = 16;
+	private static final long FRAME_WORK = 10; // binding and layout of a busy list
+	private static final long ITERATE_WORK = 1;
+
+	private static class Result {
+		long mIterations, mLastIterate;
+		long mIntervals, mMinInterval = Long.MAX_VALUE, mMaxInterval;
+		long mFrames, mDroppedFrames, mFrameTime, mMaxFrameTime;
+
+		void onIterate() {
+			long now = SystemClock.uptimeMillis();
+			if (mIterations > 0) {
+				long interval = now - mLastIterate;
+				mIntervals += interval;
+				mMinInterval = Math.min(mMinInterval, interval);
+				mMaxInterval = Math.max(mMaxInterval, interval);
+			}
+			mLastIterate = now;
+			mIterations++;
+		}
+
+		void onFrame(long time) {
+			mFrames++;
+			mFrameTime += time;
+			mMaxFrameTime = Math.max(mMaxFrameTime, time);
+		}
+
+		@Override
+		public String toString() {
+			return mIterations + " iterations, interval min " + mMinInterval + " avg " + (mIterations > 1 ? mIntervals / (mIterations - 1) : 0)
+					+ " max " + mMaxInterval + " ms; " + mFrames + " frames, time avg " + (mFrames > 0 ? mFrameTime / mFrames : 0)
+					+ " max " + mMaxFrameTime + " ms, " + mDroppedFrames + " dropped";
+		}
+	}
+
+	private HandlerThread mThread;
+	private Handler mHandler;
+
+	@Override
+	public void setUp() throws Exception {
+		mThread = new HandlerThread("CoreSchedulerBenchmark");
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper());
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		mThread.quit();
+	}
+
+	public void testInCallWithBusyList() throws InterruptedException {
+		Result timer = run(false, 1, true);
+		Result scheduler = run(true, 1, true);
+		report("In call, busy list", timer, scheduler);
+
+		// Next iteration is planned once the previous one ran, they don't pile up behind the frames
+		Assert.assertTrue(scheduler.toString(), scheduler.mMinInterval >= CoreScheduler.ITERATE_PERIOD - 2);
+	}
+
+	public void testIdle() throws InterruptedException {
+		Result timer = run(false, 0, false);
+		Result scheduler = run(true, 0, false);
+		report("Idle", timer, scheduler);
+
+		Assert.assertTrue(scheduler.mIterations < timer.mIterations * 3 / 4);
+	}
+
+	private void report(String scenario, Result timer, Result scheduler) {
+		String report = "[Core Scheduler Benchmark] " + scenario + ": fixed timer " + timer + " / scheduler " + scheduler;
+		Log.i(report);
+		System.out.println(report);
+	}
+
+	private Result run(boolean useScheduler, int calls, boolean busyList) throws InterruptedException {
+		final Result result = new Result();
+		final Core core = createCore(calls, result);
+		final CoreScheduler scheduler = useScheduler ? new CoreScheduler(mThread.getLooper()) : null;
+		Timer timer = null;
+
+		if (scheduler != null) {
+			runOnLooper(new Runnable() {
+				@Override
+				public void run() {
+					scheduler.start(core);
+				}
+			});
+		} else {
+			// What LinphoneManager used to do
+			timer = new Timer("Linphone scheduler");
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					mHandler.post(new Runnable() {
+						@Override
+						public void run() {
+							core.iterate();
+						}
+					});
+				}
+			}, 0, CoreScheduler.ITERATE_PERIOD);
+		}
+
+		final long end = SystemClock.uptimeMillis() + DURATION;
+		if (busyList) {
+			mHandler.post(new Runnable() {
+				private long mFrameTime = SystemClock.uptimeMillis();
+
+				@Override
+				public void run() {
+					busy(FRAME_WORK);
+					long now = SystemClock.uptimeMillis();
+					result.onFrame(now - mFrameTime);
+					mFrameTime += FRAME_PERIOD;
+					while (mFrameTime + FRAME_PERIOD <= now) {
+						mFrameTime += FRAME_PERIOD;
+						result.mDroppedFrames++;
+					}
+					if (now < end) {
+						mHandler.postAtTime(this, mFrameTime);
+					}
+				}
+			});
+		}
+
+		Thread.sleep(DURATION);
+		if (timer != null) {
+			timer.cancel();
+		}
+		runOnLooper(new Runnable() {
+			@Override
+			public void run() {
+				if (scheduler != null) {
+					scheduler.stop();
+				}
+				mHandler.removeCallbacksAndMessages(null);
+			}
+		});
+		return result;
+	}
+
+	private void runOnLooper(final Runnable runnable) throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(1);
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				runnable.run();
+				done.countDown();
+			}
+		});
+		done.await();
+	}
+
+	private static Core createCore(final int calls, final Result result) {
+		return (Core) Proxy.newProxyInstance(Core.class.getClassLoader(), new Class<?>[]{Core.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("iterate")) {
+					result.onIterate();
+					busy(ITERATE_WORK);
+					return null;
+				}
+				if (name.equals("getCallsNb")) return calls;
+				if (name.equals("getProxyConfigList")) return new ProxyConfig[0];
+				if (name.equals("equals")) return proxy == args[0];
+				if (name.equals("hashCode")) return System.identityHashCode(proxy);
+				return getDefaultValue(method.getReturnType());
+			}
+		});
+	}
+
+	private static Object getDefaultValue(Class<?> type) {
+		if (type == boolean.class) return false;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == float.class) return 0f;
+		if (type == double.class) return 0d;
+		return null;
+	}
+
+	private static void busy(long duration) {
+		long end = SystemClock.uptimeMillis() + duration;
+		while (SystemClock.uptimeMillis() < end) {
+			// Spinning, like binding or iterating would
+		}
+	}
+}
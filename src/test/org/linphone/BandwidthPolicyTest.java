@@ -0,0 +1,114 @@
+package org.linphone;
+
+/*
+BandwidthPolicyTest.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+/**
+ * Replays the call statistics traces of the traces directory, in the CallQualityRecorder CSV export format,
+ * through a BandwidthPolicy and checks the profile changes it decides.
+ */
+public class BandwidthPolicyTest {
+
+    @Test
+    public void testEvaluateThresholds() {
+        Assert.assertEquals(BandwidthPolicy.HIGH_RESOLUTION, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 2.9f, 399, 501));
+        Assert.assertEquals(BandwidthPolicy.HIGH_RESOLUTION, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 0, 0, 0));
+        Assert.assertEquals(BandwidthPolicy.LOW_RESOLUTION, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 3, 0, 0));
+        Assert.assertEquals(BandwidthPolicy.LOW_RESOLUTION, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 0, 400, 0));
+        Assert.assertEquals(BandwidthPolicy.LOW_RESOLUTION, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 0, 0, 499));
+        Assert.assertEquals(BandwidthPolicy.LOW_BANDWIDTH, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 10, 0, 0));
+        Assert.assertEquals(BandwidthPolicy.LOW_BANDWIDTH, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 0, 800, 0));
+        Assert.assertEquals(BandwidthPolicy.LOW_BANDWIDTH, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_FAST, 0, 0, 149));
+        Assert.assertEquals(BandwidthPolicy.LOW_BANDWIDTH, BandwidthPolicy.evaluate(BandwidthPolicy.NETWORK_SLOW, 0, 0, 0));
+    }
+
+    /**
+     * Three bad samples at 8 s don't change anything, four from 20 s do. They ask for different profiles,
+     * the call goes to the highest one all of them asked for.
+     */
+    @Test
+    public void testDegradeAfterBadSamples() throws IOException {
+        List<BandwidthTraceReplay.Decision> decisions = replay("degrade.csv");
+        Assert.assertEquals(1, decisions.size());
+        assertDecision(decisions.get(0), 23000, BandwidthPolicy.LOW_RESOLUTION);
+    }
+
+    /**
+     * Down to low bandwidth at 3 s, then good samples only interrupted by a bad one at 10 s:
+     * back up one profile at a time, after 15 good samples in a row each.
+     */
+    @Test
+    public void testUpgradeAfterGoodSamples() throws IOException {
+        List<BandwidthTraceReplay.Decision> decisions = replay("upgrade.csv");
+        Assert.assertEquals(3, decisions.size());
+        assertDecision(decisions.get(0), 3000, BandwidthPolicy.LOW_BANDWIDTH);
+        assertDecision(decisions.get(1), 25000, BandwidthPolicy.LOW_RESOLUTION);
+        assertDecision(decisions.get(2), 40000, BandwidthPolicy.HIGH_RESOLUTION);
+    }
+
+    /**
+     * Low resolution at 3 s, then low bandwidth samples from 4 s: enough of them at 7 s,
+     * but the change waits for the minimum interval.
+     */
+    @Test
+    public void testMinimumChangeInterval() throws IOException {
+        List<BandwidthTraceReplay.Decision> decisions = replay("interval.csv");
+        Assert.assertEquals(2, decisions.size());
+        assertDecision(decisions.get(0), 3000, BandwidthPolicy.LOW_RESOLUTION);
+        assertDecision(decisions.get(1), 3000 + BandwidthPolicy.MIN_CHANGE_INTERVAL, BandwidthPolicy.LOW_BANDWIDTH);
+    }
+
+    /**
+     * Low resolution at 3 s, then a slow network from 6 s to 20 s with good statistics: low bandwidth right away,
+     * despite the minimum interval, and no step up until the network is fast again.
+     */
+    @Test
+    public void testSlowNetwork() throws IOException {
+        List<BandwidthTraceReplay.Decision> decisions = replay("slow_network.csv");
+        Assert.assertEquals(3, decisions.size());
+        assertDecision(decisions.get(0), 3000, BandwidthPolicy.LOW_RESOLUTION);
+        assertDecision(decisions.get(1), 6000, BandwidthPolicy.LOW_BANDWIDTH);
+        assertDecision(decisions.get(2), 34000, BandwidthPolicy.LOW_RESOLUTION);
+    }
+
+    private static void assertDecision(BandwidthTraceReplay.Decision decision, long time, int profile) {
+        Assert.assertEquals(decision.toString(), time, decision.mTime);
+        Assert.assertEquals(decision.toString(), profile, decision.mProfile);
+    }
+
+    private List<BandwidthTraceReplay.Decision> replay(String trace) throws IOException {
+        InputStream stream = getClass().getResourceAsStream("traces/" + trace);
+        Assert.assertNotNull("Missing trace " + trace, stream);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            return BandwidthTraceReplay.replay(reader, new BandwidthPolicy());
+        } finally {
+            reader.close();
+        }
+    }
+}
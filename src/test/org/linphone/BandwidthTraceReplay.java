@@ -0,0 +1,110 @@
+package org.linphone;
+
+/*
+BandwidthTraceReplay.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a recorded call statistics trace through a BandwidthPolicy, to check its decisions without a network.<br />
+ * Traces are the CSV timelines exported from the call history (see CallQualityRecorder). An optional "network"
+ * column (fast, slow or unknown) simulates connectivity changes during the call.
+ */
+public class BandwidthTraceReplay {
+    public static class Decision {
+        public final long mTime; // elapsed, in ms
+        public final int mProfile;
+        public final String mReason;
+
+        Decision(long time, int profile, String reason) {
+            mTime = time;
+            mProfile = profile;
+            mReason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return mTime + " ms: " + BandwidthPolicy.getProfileName(mProfile) + " (" + mReason + ")";
+        }
+    }
+
+    /**
+     * @return the profile changes decided while replaying the trace, in order
+     */
+    public static List<Decision> replay(BufferedReader trace, BandwidthPolicy policy) throws IOException {
+        List<Decision> decisions = new ArrayList<>();
+        String header = trace.readLine();
+        if (header == null) return decisions;
+
+        String[] columns = header.split(",");
+        int elapsed = indexOf(columns, "elapsed_ms");
+        int rtt = indexOf(columns, "audio_rtt_ms");
+        int estimated = indexOf(columns, "video_estimated_download_kbps");
+        int network = indexOf(columns, "network");
+        int[] losses = {
+                indexOf(columns, "audio_sender_loss_percent"), indexOf(columns, "audio_receiver_loss_percent"),
+                indexOf(columns, "video_sender_loss_percent"), indexOf(columns, "video_receiver_loss_percent")
+        };
+        if (elapsed < 0) throw new IOException("Missing elapsed_ms column");
+
+        String line;
+        while ((line = trace.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String[] values = line.split(",");
+            long time = Long.parseLong(values[elapsed]);
+
+            if (network >= 0 && policy.onNetworkChanged(parseNetwork(values[network]), time)) {
+                decisions.add(new Decision(time, policy.getProfile(), "network " + values[network]));
+            }
+
+            float loss = 0;
+            for (int column : losses) {
+                loss = Math.max(loss, getFloat(values, column));
+            }
+            float roundTrip = getFloat(values, rtt);
+            float bandwidth = getFloat(values, estimated);
+            if (policy.onSample(time, loss, roundTrip, bandwidth)) {
+                decisions.add(new Decision(time, policy.getProfile(),
+                        "loss " + loss + "%, rtt " + roundTrip + " ms, estimated " + bandwidth + " kbits/s"));
+            }
+        }
+        return decisions;
+    }
+
+    private static int parseNetwork(String value) {
+        if ("slow".equals(value)) return BandwidthPolicy.NETWORK_SLOW;
+        if ("fast".equals(value)) return BandwidthPolicy.NETWORK_FAST;
+        return BandwidthPolicy.NETWORK_UNKNOWN;
+    }
+
+    private static int indexOf(String[] columns, String name) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].trim().equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static float getFloat(String[] values, int column) {
+        if (column < 0 || column >= values.length || values[column].isEmpty()) return 0;
+        return Float.parseFloat(values[column]);
+    }
+}
@@ -0,0 +1,193 @@
+package org.linphone;
+
+/*
+PreferenceCacheBenchmark.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.linphone.core.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opening the settings while the Core isn't running: every preference the settings read, through LinphonePreferences
+ * as it was (default config read from the raw resource and parsed again for each preference) and as it is
+ * (parsed once, values kept in a PreferenceCache).
+ * The config is a stand-in parsing linphonerc_default, counting parses and reads (JNI calls on a device).
+ */
+public class PreferenceCacheBenchmark {
+    private static final File DEFAULT_CONFIG = new File("res/raw/linphonerc_default");
+    private static final int OPENS = 20;
+
+    // Section, key, type and default of the preferences read by LinphonePreferences
+    private static final String[][] PREFERENCES = {
+            {"app", "auto_answer", "b", "false"}, {"app", "auto_start", "b", "false"}, {"app", "background_mode", "b", "true"},
+            {"app", "bis_feature", "b", "true"}, {"app", "debug", "b", "false"}, {"app", "device_ringtone", "b", "true"},
+            {"app", "display_overlay", "b", "false"}, {"app", "first_launch", "b", "true"}, {"app", "front_camera_default", "b", "true"},
+            {"app", "java_logger", "b", "false"}, {"app", "native_dialer_call", "b", "false"}, {"app", "prefer_basic_chat_room", "b", "false"},
+            {"app", "push_notification", "b", "true"}, {"app", "random_port", "b", "true"}, {"app", "show_service_notification", "b", "false"},
+            {"app", "friendlist_subscription_enabled", "b", "false"}, {"app", "auto_answer_delay", "i", "0"},
+            {"app", "activation_code_length", "i", "0"}, {"app", "incoming_call_activity", "s", "org.linphone.activities.LinphoneActivity"},
+            {"app", "ringtone", "s", "content://settings/system/ringtone"}, {"app", "tunnel", "s", null}, {"app", "voice_mail", "s", null},
+            {"app", "server_url", "s", null}, {"app", "push_notification_regid", "s", null}, {"assistant", "xmlrpc_url", "s", null},
+            {"in-app-purchase", "server_url", "s", null}, {"audio", "codec_bitrate_limit", "i", "36"}, {"sound", "ec_delay", "i", "-1"},
+            {"video", "size", "s", "qvga"}, {"misc", "store_friends", "b", "true"}
+    };
+
+    private int mParses, mReads;
+
+    @Test
+    public void testSettingsOpen() throws IOException {
+        Assert.assertTrue("Run from the module directory", DEFAULT_CONFIG.exists());
+        openSettings(false, 1); // warm up
+        openSettings(true, 1);
+
+        long start = System.nanoTime();
+        mParses = mReads = 0;
+        openSettings(false, OPENS);
+        report("former", start);
+
+        start = System.nanoTime();
+        mParses = mReads = 0;
+        int firstOpenReads = openSettings(true, OPENS);
+        report("cached", start);
+        Assert.assertEquals(1, mParses);
+        // Then only the sections the Core writes and the missing strings without default (null can't be cached)
+        // are read again
+        Map<String, String> values = parse();
+        int uncached = 0;
+        for (String[] preference : PREFERENCES) {
+            boolean appSection = preference[0].equals("app") || preference[0].equals("assistant") || preference[0].equals("in-app-purchase");
+            if (!appSection || (preference[3] == null && !values.containsKey(preference[0] + "/" + preference[1]))) uncached++;
+        }
+        Assert.assertEquals(firstOpenReads + (OPENS - 1) * uncached, mReads);
+    }
+
+    @Test
+    public void testWriteThrough() throws IOException {
+        PreferenceCache cache = new PreferenceCache();
+        Config config = createConfig(parse());
+        Assert.assertEquals("disabled", cache.getString(config, "app", "tunnel", null));
+        cache.setString(config, "app", "tunnel", "auto");
+        Assert.assertEquals("auto", config.getString("app", "tunnel", null));
+        Assert.assertEquals("auto", cache.getString(config, "app", "tunnel", null));
+
+        // Values are cached per default, a missing entry reads as its default
+        Assert.assertEquals(5, cache.getInt(config, "app", "missing", 5));
+        Assert.assertEquals(6, cache.getInt(config, "app", "missing", 6));
+        cache.setInt(config, "app", "missing", 7);
+        Assert.assertEquals(7, cache.getInt(config, "app", "missing", 5));
+    }
+
+    /**
+     * @return the config reads of the first open
+     */
+    private int openSettings(boolean cached, int opens) throws IOException {
+        PreferenceCache cache = new PreferenceCache();
+        Config config = cached ? createConfig(parse()) : null;
+        int firstOpenReads = 0;
+        for (int open = 0; open < opens; open++) {
+            for (String[] preference : PREFERENCES) {
+                if (!cached) {
+                    // What getConfig() did without a Core, for each preference
+                    config = createConfig(parse());
+                }
+                String section = preference[0], key = preference[1], defaultValue = preference[3];
+                switch (preference[2].charAt(0)) {
+                    case 'b':
+                        if (cached) cache.getBool(config, section, key, Boolean.parseBoolean(defaultValue));
+                        else config.getBool(section, key, Boolean.parseBoolean(defaultValue));
+                        break;
+                    case 'i':
+                        if (cached) cache.getInt(config, section, key, Integer.parseInt(defaultValue));
+                        else config.getInt(section, key, Integer.parseInt(defaultValue));
+                        break;
+                    default:
+                        if (cached) cache.getString(config, section, key, defaultValue);
+                        else config.getString(section, key, defaultValue);
+                }
+            }
+            if (open == 0) firstOpenReads = mReads;
+        }
+        return firstOpenReads;
+    }
+
+    private void report(String name, long start) {
+        System.out.println("[Preferences Benchmark] " + name + ": settings opened " + OPENS + " times in " + (System.nanoTime() - start) / 1000
+                + " us, " + mParses + " config parses, " + mReads + " config reads");
+    }
+
+    /**
+     * Reads the default config line by line, like LinphonePreferences did from the raw resource.
+     */
+    private Map<String, String> parse() throws IOException {
+        mParses++;
+        Map<String, String> values = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(DEFAULT_CONFIG), "UTF-8"));
+        try {
+            String section = "";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    section = line.substring(1, line.length() - 1);
+                } else if (line.indexOf('=') > 0 && !line.startsWith("#")) {
+                    int equal = line.indexOf('=');
+                    values.put(section + "/" + line.substring(0, equal).trim(), line.substring(equal + 1).trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return values;
+    }
+
+    private Config createConfig(final Map<String, String> values) {
+        return (Config) Proxy.newProxyInstance(Config.class.getClassLoader(), new Class<?>[]{Config.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("equals")) return proxy == args[0];
+                if (name.equals("hashCode")) return System.identityHashCode(proxy);
+                if (name.equals("toString")) return "Config";
+
+                mReads++;
+                String key = args[0] + "/" + args[1];
+                if (name.startsWith("set")) {
+                    values.put(key, args[2] instanceof Boolean ? ((Boolean) args[2] ? "1" : "0") : String.valueOf(args[2]));
+                    return null;
+                }
+                String value = values.get(key);
+                if (name.equals("getBool")) return value != null ? Integer.parseInt(value) != 0 : args[2];
+                if (name.equals("getInt")) return value != null ? Integer.parseInt(value) : args[2];
+                if (name.equals("getString")) return value != null ? value : args[2];
+                return null;
+            }
+        });
+    }
+}
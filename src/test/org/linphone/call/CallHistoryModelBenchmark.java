@@ -0,0 +1,174 @@
+package org.linphone.call;
+
+/*
+CallHistoryModelBenchmark.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.linphone.core.Address;
+import org.linphone.core.Call;
+import org.linphone.core.CallLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Rendering a 10k entries history through the CallHistoryModel, compared with what the adapter and the fragment
+ * did before: opening it, switching to the missed calls and scrolling to the end, a screen of rows at a time.
+ * Each CallLog read is a JNI call on a device, so they are counted along with the time.
+ * Day labels and contacts need resources and a ContactsManager, they are left out on both sides.
+ */
+public class CallHistoryModelBenchmark {
+    private static final int LOGS = 10000;
+    private static final int SCREEN = 10; // rows displayed at once
+
+    private static int sConsumed; // what was read, so it isn't optimized away
+
+    private final int[] mReads = new int[1];
+    private long mStart;
+    private int mStartReads;
+
+    @Test
+    public void testRendering() {
+        List<CallLog> logs = CallHistoryModelTest.createLogs(LOGS, mReads);
+        CallLog[] array = logs.toArray(new CallLog[logs.size()]);
+
+        renderFormer(array, false); // warm up
+        renderModel(array, false);
+
+        long[] former = renderFormer(array, true);
+        long[] model = renderModel(array, true);
+        Assert.assertTrue("Rows are read once while scrolling", model[5] < former[5]);
+    }
+
+    /**
+     * @return time (in us) and reads of opening, missed calls and scrolling
+     */
+    private long[] renderFormer(CallLog[] array, boolean report) {
+        long[] results = new long[6];
+
+        begin();
+        List<CallLog> logs = Arrays.asList(array);
+        bindScreen(logs, 0);
+        end(results, 0);
+
+        begin();
+        List<CallLog> missed = new ArrayList<>();
+        for (CallLog log : logs) {
+            if (log.getStatus() == Call.Status.Missed) {
+                missed.add(log);
+            }
+        }
+        bindScreen(missed, 0);
+        end(results, 2);
+
+        begin();
+        for (int first = 0; first < logs.size(); first += SCREEN) {
+            bindScreen(logs, first);
+        }
+        end(results, 4);
+
+        if (report) report("former", results);
+        return results;
+    }
+
+    private long[] renderModel(CallLog[] array, boolean report) {
+        long[] results = new long[6];
+        CallHistoryModel model = new CallHistoryModel(null);
+
+        begin();
+        model.load(array);
+        bindScreen(model, 0, false);
+        end(results, 0);
+
+        begin();
+        while (model.scanStep()) {
+            // The idle handler would run it in several passes
+        }
+        bindScreen(model, 0, true);
+        end(results, 2);
+
+        begin();
+        for (int first = 0; first < model.size(false); first += SCREEN) {
+            bindScreen(model, first, false);
+        }
+        end(results, 4);
+
+        if (report) report("model", results);
+        return results;
+    }
+
+    /**
+     * What CallHistoryAdapter.onBindViewHolder() read before the model, for each row.
+     */
+    private static void bindScreen(List<CallLog> logs, int first) {
+        for (int position = first; position < first + SCREEN && position < logs.size(); position++) {
+            CallLog log = logs.get(position);
+            Calendar logTime = Calendar.getInstance();
+            logTime.setTimeInMillis(log.getStartDate() * 1000);
+            boolean separator = true;
+            if (position > 0) {
+                Calendar previousLogTime = Calendar.getInstance();
+                previousLogTime.setTimeInMillis(logs.get(position - 1).getStartDate() * 1000);
+                separator = previousLogTime.get(Calendar.YEAR) != logTime.get(Calendar.YEAR)
+                        || previousLogTime.get(Calendar.DAY_OF_YEAR) != logTime.get(Calendar.DAY_OF_YEAR);
+            }
+            Address address;
+            boolean missed = false;
+            if (log.getDir() == Call.Dir.Incoming) {
+                address = log.getFromAddress();
+                missed = log.getStatus() == Call.Status.Missed;
+            } else {
+                address = log.getToAddress();
+            }
+            consume(separator, missed, address);
+        }
+    }
+
+    private static void bindScreen(CallHistoryModel model, int first, boolean missedOnly) {
+        int last = Math.min(first + SCREEN, model.size(missedOnly)) - 1;
+        for (int position = first; position <= last; position++) {
+            CallHistoryModel.Entry entry = model.get(position, missedOnly);
+            consume(model.isFirstOfDay(position, missedOnly), entry.isMissed(), entry.getAddress());
+        }
+        model.onVisibleRangeChanged(first, last, missedOnly);
+    }
+
+    private static void consume(boolean separator, boolean missed, Address address) {
+        sConsumed += (separator ? 1 : 0) + (missed ? 2 : 0) + (address != null ? 4 : 0);
+    }
+
+    private void begin() {
+        mStart = System.nanoTime();
+        mStartReads = mReads[0];
+    }
+
+    private void end(long[] results, int index) {
+        results[index] = (System.nanoTime() - mStart) / 1000;
+        results[index + 1] = mReads[0] - mStartReads;
+    }
+
+    private static void report(String name, long[] results) {
+        System.out.println("[Call History Benchmark] " + name + " with " + LOGS + " logs: open " + results[0] + " us (" + results[1]
+                + " reads), missed calls " + results[2] + " us (" + results[3] + " reads), scroll to the end " + results[4]
+                + " us (" + results[5] + " reads)");
+    }
+}
@@ -0,0 +1,248 @@
+package org.linphone.call;
+
+/*
+CallHistoryModelTest.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linphone.core.Call;
+import org.linphone.core.CallLog;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Call logs are stand-ins counting how many times they are read, the Core isn't needed.
+ */
+public class CallHistoryModelTest {
+    private static final int MISSED_EVERY = 7;
+
+    private CallHistoryModel mModel;
+    private final int[] mReads = new int[1];
+    private final List<int[]> mFound = new ArrayList<>();
+    private boolean mScanned;
+
+    @Before
+    public void setUp() {
+        mModel = new CallHistoryModel(null);
+        mModel.setListener(new CallHistoryModel.Listener() {
+            @Override
+            public void onMissedCallsFound(int position, int count) {
+                mFound.add(new int[]{position, count});
+            }
+
+            @Override
+            public void onMissedCallsScanned() {
+                mScanned = true;
+            }
+        });
+    }
+
+    @Test
+    public void testScan() {
+        List<CallLog> logs = createLogs(500);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+        Assert.assertEquals(0, mModel.size(true));
+        Assert.assertEquals(0, mReads[0]);
+
+        int steps = 1;
+        while (mModel.scanStep()) {
+            steps++;
+        }
+        Assert.assertEquals((500 + CallHistoryModel.SCAN_PAGE_SIZE - 1) / CallHistoryModel.SCAN_PAGE_SIZE, steps);
+        Assert.assertTrue(mScanned);
+        Assert.assertTrue(mModel.isMissedCallsScanComplete());
+        assertMissed(logs);
+
+        // Missed calls were announced in order, each batch following the previous one
+        int position = 0;
+        for (int[] found : mFound) {
+            Assert.assertEquals(position, found[0]);
+            position += found[1];
+        }
+        Assert.assertEquals(mModel.size(true), position);
+    }
+
+    @Test
+    public void testRemoveAllReadsNothing() {
+        List<CallLog> logs = createLogs(1000);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+        Set<CallLog> removed = CallHistoryModel.newLogSet();
+        for (int i = 0; i < logs.size(); i += 2) {
+            removed.add(logs.get(i));
+        }
+        mModel.removeAll(removed);
+        logs.removeAll(removed);
+
+        Assert.assertEquals(0, mReads[0]);
+        Assert.assertEquals(logs.size(), mModel.size(false));
+        for (int i = 0; i < logs.size(); i++) {
+            Assert.assertSame(logs.get(i), mModel.getLog(i, false));
+        }
+    }
+
+    @Test
+    public void testRemoveAllAfterScan() {
+        List<CallLog> logs = createLogs(300);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+        scanAll();
+
+        // Every third log, some of them missed calls
+        Set<CallLog> removed = CallHistoryModel.newLogSet();
+        for (int i = 0; i < logs.size(); i += 3) {
+            removed.add(logs.get(i));
+        }
+        mModel.removeAll(removed);
+        logs.removeAll(removed);
+
+        Assert.assertEquals(logs.size(), mModel.size(false));
+        Assert.assertTrue(mModel.isMissedCallsScanComplete());
+        assertMissed(logs);
+    }
+
+    @Test
+    public void testRemoveAllDuringScan() {
+        List<CallLog> logs = createLogs(500);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+        Assert.assertTrue(mModel.scanStep());
+
+        // Around the scan position: some logs already scanned, others not yet
+        Set<CallLog> removed = CallHistoryModel.newLogSet();
+        for (int i = CallHistoryModel.SCAN_PAGE_SIZE / 2; i < CallHistoryModel.SCAN_PAGE_SIZE * 3 / 2; i += 2) {
+            removed.add(logs.get(i));
+        }
+        mModel.removeAll(removed);
+        logs.removeAll(removed);
+
+        scanAll();
+        Assert.assertEquals(logs.size(), mModel.size(false));
+        assertMissed(logs);
+    }
+
+    @Test
+    public void testAdd() {
+        List<CallLog> logs = createLogs(300);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+        Assert.assertTrue(mModel.scanStep());
+
+        CallLog missed = createLog(1000, true);
+        CallLog answered = createLog(1001, false);
+        Assert.assertTrue(mModel.add(missed));
+        Assert.assertTrue(mModel.add(answered));
+        Assert.assertFalse(mModel.add(answered));
+        logs.add(0, missed);
+        logs.add(0, answered);
+
+        scanAll();
+        Assert.assertEquals(logs.size(), mModel.size(false));
+        Assert.assertSame(answered, mModel.getLog(0, false));
+        Assert.assertSame(missed, mModel.getLog(0, true));
+        assertMissed(logs);
+    }
+
+    @Test
+    public void testWindow() {
+        List<CallLog> logs = createLogs(1000);
+        mModel.load(logs.toArray(new CallLog[logs.size()]));
+
+        // Only the rows around the one displayed are read
+        Assert.assertSame(logs.get(0), mModel.get(0, false).getLog());
+        int reads = mReads[0];
+        Assert.assertTrue(reads > 0 && reads <= CallHistoryModel.PAGE_SIZE * 3);
+
+        // Already loaded, nothing read again
+        mModel.get(5, false);
+        Assert.assertEquals(reads, mReads[0]);
+
+        // Scrolled far away, the first rows are released and read again when displayed again
+        mModel.get(900, false);
+        mModel.onVisibleRangeChanged(900, 910, false);
+        reads = mReads[0];
+        mModel.get(0, false);
+        Assert.assertTrue(mReads[0] > reads);
+    }
+
+    private void scanAll() {
+        while (mModel.scanStep()) {
+            // Until the whole history was looked through
+        }
+    }
+
+    /**
+     * Checks the missed calls list against the logs, in order.
+     */
+    private void assertMissed(List<CallLog> logs) {
+        List<CallLog> expected = new ArrayList<>();
+        for (CallLog log : logs) {
+            if (log.getStatus() == Call.Status.Missed) expected.add(log);
+        }
+        Assert.assertEquals(expected.size(), mModel.size(true));
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertSame("Missed call " + i, expected.get(i), mModel.getLog(i, true));
+            Assert.assertTrue(mModel.get(i, true).isMissed());
+        }
+    }
+
+    /**
+     * @return logs newest first, one every minute, every MISSED_EVERY one a missed call
+     */
+    private List<CallLog> createLogs(int count) {
+        return createLogs(count, mReads);
+    }
+
+    private CallLog createLog(int id, boolean missed) {
+        return createLog(id, missed, mReads);
+    }
+
+    static List<CallLog> createLogs(int count, int[] reads) {
+        List<CallLog> logs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            logs.add(createLog(i, i % MISSED_EVERY == 0, reads));
+        }
+        return logs;
+    }
+
+    /**
+     * @param reads incremented each time something is read from the log
+     */
+    static CallLog createLog(final int id, final boolean missed, final int[] reads) {
+        final long startDate = 1539680000L - id * 60L; // in s
+        return (CallLog) Proxy.newProxyInstance(CallLog.class.getClassLoader(), new Class<?>[]{CallLog.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("equals")) return proxy == args[0];
+                if (name.equals("hashCode")) return id;
+                if (name.equals("toString")) return "CallLog " + id;
+
+                reads[0]++;
+                if (name.equals("getDir")) return missed || id % 2 == 0 ? Call.Dir.Incoming : Call.Dir.Outgoing;
+                if (name.equals("getStatus")) return missed ? Call.Status.Missed : Call.Status.Success;
+                if (name.equals("getStartDate")) return startDate;
+                if (name.equals("getCallId")) return "call-" + id;
+                return null;
+            }
+        });
+    }
+}
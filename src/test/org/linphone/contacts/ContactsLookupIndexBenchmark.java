@@ -0,0 +1,120 @@
+package org.linphone.contacts;
+
+/*
+ContactsLookupIndexBenchmark.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lookups in a ContactsLookupIndex of 10k contacts, from one thread then from several at once, compared with
+ * the same lookups serialized like the former synchronized ContactsManager methods were.
+ * The former path itself (Core.findFriend) is native and can't run on the JVM.
+ */
+public class ContactsLookupIndexBenchmark {
+    private static final int CONTACTS = 10000;
+    private static final int LOOKUPS = 200000;
+    private static final int THREADS = 4;
+
+    private interface Lookup {
+        LinphoneContact find(int i);
+    }
+
+    @Test
+    public void testLookups() throws InterruptedException {
+        // Half of the lookups miss, like addresses of people who aren't contacts
+        final String[] usernames = new String[2 * CONTACTS];
+        final String[] numbers = new String[2 * CONTACTS];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = "user" + i;
+            numbers[i] = String.format(Locale.US, "+33 6 %02d %02d %02d %02d", i / 1000000 % 100, i / 10000 % 100, i / 100 % 100, i % 100);
+        }
+        List<LinphoneContact> contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            contacts.add(ContactsLookupIndexTest.createContact("Contact " + i, "sip:" + usernames[i] + "@sip.example.org", numbers[i]));
+        }
+
+        long start = System.nanoTime();
+        final ContactsLookupIndex index = new ContactsLookupIndex(CONTACTS);
+        for (LinphoneContact contact : contacts) {
+            index.index(contact, null);
+        }
+        report("index of " + CONTACTS + " contacts built", System.nanoTime() - start, 1);
+
+        Lookup lockFree = new Lookup() {
+            @Override
+            public LinphoneContact find(int i) {
+                int contact = i % usernames.length;
+                return i % 2 == 0 ? index.findFromSipAddress(usernames[contact], "sip.example.org") : index.findFromPhoneNumber(numbers[contact]);
+            }
+        };
+        final Lookup unlocked = lockFree;
+        Lookup serialized = new Lookup() {
+            @Override
+            public LinphoneContact find(int i) {
+                synchronized (this) {
+                    return unlocked.find(i);
+                }
+            }
+        };
+
+        run("warm up", lockFree, 1);
+        Assert.assertEquals(LOOKUPS / 2, run("lock free", lockFree, 1));
+        Assert.assertEquals(LOOKUPS / 2, run("lock free", lockFree, THREADS));
+        Assert.assertEquals(LOOKUPS / 2, run("serialized", serialized, THREADS));
+    }
+
+    private static int run(String name, final Lookup lookup, int threads) throws InterruptedException {
+        final AtomicInteger found = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            final int step = threads;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    for (int i = first; i < LOOKUPS; i += step) {
+                        if (lookup.find(i) != null) count++;
+                    }
+                    found.addAndGet(count);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(name + ", " + LOOKUPS + " lookups on " + threads + " thread(s)", System.nanoTime() - start, LOOKUPS);
+        return found.get();
+    }
+
+    private static void report(String what, long nanos, int operations) {
+        System.out.println("[Contacts Lookup Benchmark] " + what + " in " + nanos / 1000000 + " ms"
+                + (operations > 1 ? " (" + nanos / operations + " ns each)" : ""));
+    }
+}
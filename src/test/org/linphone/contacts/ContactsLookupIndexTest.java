@@ -0,0 +1,152 @@
+package org.linphone.contacts;
+
+/*
+ContactsLookupIndexTest.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContactsLookupIndexTest {
+
+    @Test
+    public void testSipKey() {
+        Assert.assertEquals("sip:alice@example.org", ContactsLookupIndex.getSipKey("alice", "Example.ORG"));
+        Assert.assertEquals("sip:alice@example.org", ContactsLookupIndex.getSipKey("sip:alice@Example.org"));
+        Assert.assertEquals("sip:alice@example.org", ContactsLookupIndex.getSipKey("sips:alice@example.org:5061;transport=tls"));
+        Assert.assertEquals("sip:alice@example.org", ContactsLookupIndex.getSipKey("alice@example.org"));
+        // Usernames are case sensitive, domains aren't
+        Assert.assertEquals("sip:Alice@example.org", ContactsLookupIndex.getSipKey("sip:Alice@example.org"));
+        Assert.assertNull(ContactsLookupIndex.getSipKey("sip:example.org"));
+        Assert.assertNull(ContactsLookupIndex.getSipKey("sip:@example.org"));
+        Assert.assertNull(ContactsLookupIndex.getSipKey("", "example.org"));
+        Assert.assertNull(ContactsLookupIndex.getSipKey("alice", null));
+        Assert.assertNull(ContactsLookupIndex.getSipKey(null));
+    }
+
+    @Test
+    public void testPhoneKey() {
+        Assert.assertEquals("tel:+33612345678", ContactsLookupIndex.getPhoneKey("+33 6 12-34.56 78"));
+        Assert.assertEquals("tel:5551234", ContactsLookupIndex.getPhoneKey("(555) 1234"));
+        // Only a leading + is kept
+        Assert.assertEquals("tel:123", ContactsLookupIndex.getPhoneKey("12+3"));
+        Assert.assertNull(ContactsLookupIndex.getPhoneKey("alice"));
+        Assert.assertNull(ContactsLookupIndex.getPhoneKey("123@example.org"));
+        Assert.assertNull(ContactsLookupIndex.getPhoneKey("- ."));
+        Assert.assertNull(ContactsLookupIndex.getPhoneKey(null));
+    }
+
+    @Test
+    public void testFind() {
+        ContactsLookupIndex index = new ContactsLookupIndex(1);
+        LinphoneContact alice = createContact("Alice", "sip:alice@Example.org;transport=tcp", "+33 6 12 34 56 78");
+        index.index(alice, null);
+
+        Assert.assertSame(alice, index.findFromSipAddress("alice", "example.org"));
+        Assert.assertSame(alice, index.findFromPhoneNumber("+33612345678"));
+        Assert.assertSame(alice, index.findFromPhoneNumber("+33 (6) 12.34.56.78"));
+        Assert.assertNull(index.findFromSipAddress("Alice", "example.org"));
+        Assert.assertNull(index.findFromSipAddress("alice", "example.com"));
+        Assert.assertNull(index.findFromPhoneNumber("0612345678"));
+        Assert.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testIndexAgainDropsOldKeys() {
+        ContactsLookupIndex index = new ContactsLookupIndex(1);
+        LinphoneContact alice = createContact("Alice", "sip:alice@example.org", "0612345678");
+        index.index(alice, null);
+
+        alice.getNumbersOrAddresses().clear();
+        alice.addNumberOrAddress(new LinphoneNumberOrAddress("0698765432", null));
+        index.index(alice, null);
+
+        Assert.assertNull(index.findFromSipAddress("alice", "example.org"));
+        Assert.assertNull(index.findFromPhoneNumber("0612345678"));
+        Assert.assertSame(alice, index.findFromPhoneNumber("0698765432"));
+        Assert.assertEquals(1, index.size());
+
+        index.remove(alice);
+        Assert.assertNull(index.findFromPhoneNumber("0698765432"));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testFirstContactWins() {
+        ContactsLookupIndex index = new ContactsLookupIndex(2);
+        LinphoneContact first = createContact("First", null, "0612345678");
+        LinphoneContact second = createContact("Second", null, "06 12 34 56 78");
+        index.index(first, null);
+        index.index(second, null);
+        Assert.assertSame(first, index.findFromPhoneNumber("0612345678"));
+
+        // Indexing the first one again doesn't give its key away
+        index.index(first, null);
+        Assert.assertSame(first, index.findFromPhoneNumber("0612345678"));
+
+        // Nor does removing the second one, which never owned it
+        index.remove(second);
+        Assert.assertSame(first, index.findFromPhoneNumber("0612345678"));
+
+        // Back in the index, the second one waits behind the first one
+        index.index(second, null);
+        Assert.assertSame(first, index.findFromPhoneNumber("0612345678"));
+
+        // Then takes over the key when the first one is removed
+        index.remove(first);
+        Assert.assertSame(second, index.findFromPhoneNumber("0612345678"));
+
+        // Indexed again after it, the first one only gets the key back once the second one is gone
+        index.index(first, null);
+        Assert.assertSame(second, index.findFromPhoneNumber("0612345678"));
+        index.remove(second);
+        Assert.assertSame(first, index.findFromPhoneNumber("0612345678"));
+    }
+
+    @Test
+    public void testKeyDroppedByOwner() {
+        ContactsLookupIndex index = new ContactsLookupIndex(2);
+        LinphoneContact first = createContact("First", null, "0612345678");
+        LinphoneContact second = createContact("Second", null, "0612345678");
+        index.index(first, null);
+        index.index(second, null);
+
+        // The first one's number changed, the second one takes over the old one
+        first.getNumbersOrAddresses().clear();
+        first.addNumberOrAddress(new LinphoneNumberOrAddress("0698765432", null));
+        index.index(first, null);
+        Assert.assertSame(second, index.findFromPhoneNumber("0612345678"));
+        Assert.assertSame(first, index.findFromPhoneNumber("0698765432"));
+
+        index.remove(second);
+        Assert.assertNull(index.findFromPhoneNumber("0612345678"));
+        Assert.assertEquals(1, index.size());
+    }
+
+    static LinphoneContact createContact(String name, String sipAddress, String number) {
+        LinphoneContact contact = new LinphoneContact();
+        contact.setFullName(name);
+        if (sipAddress != null) {
+            contact.addNumberOrAddress(new LinphoneNumberOrAddress(sipAddress, true));
+        }
+        if (number != null) {
+            contact.addNumberOrAddress(new LinphoneNumberOrAddress(number, null));
+        }
+        return contact;
+    }
+}
@@ -0,0 +1,110 @@
+package org.linphone.contacts;
+
+/*
+ContactsSearchIndexBenchmark.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Typing latency over 20k synthetic contacts: each keystroke of a few queries, through a ContactsSearchIndex
+ * and through the former linear scan of ContactsManager.getContacts(String).
+ */
+public class ContactsSearchIndexBenchmark {
+    private static final int CONTACTS = 20000;
+    private static final String[] FIRST_NAMES = {"Anne", "Beno\u00eet", "Camille", "David", "\u00c9lodie", "Fran\u00e7ois", "Ga\u00eblle", "Hugo",
+            "In\u00e8s", "Julien", "Karim", "L\u00e9a", "Marc", "Nathalie", "Olivier", "Pauline", "Quentin", "Romain", "Sophie", "Thomas"};
+    private static final String[] LAST_NAMES = {"Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard", "Petit", "Durand",
+            "Leroy", "Moreau", "Simon", "Laurent", "Lef\u00e8vre", "Michel", "Garcia", "David", "Bertrand", "Roux", "Vincent", "Fournier"};
+    private static final String[] QUERIES = {"martin", "elodie", "0612", "zzz"};
+
+    @Test
+    public void testTyping() {
+        Random random = new Random(42);
+        List<LinphoneContact> contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + i;
+            String number = String.format(Locale.US, "06 %02d %02d %02d %02d", random.nextInt(100), random.nextInt(100), random.nextInt(100), random.nextInt(100));
+            contacts.add(ContactsLookupIndexTest.createContact(name, "sip:user" + i + "@sip.example.org", number));
+        }
+
+        long start = System.nanoTime();
+        ContactsSearchIndex index = new ContactsSearchIndex(contacts);
+        System.out.println("[Contacts Search Benchmark] Index of " + CONTACTS + " contacts built in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        type(index, contacts); // warm up
+        for (String query : QUERIES) {
+            long indexed = 0, scanned = 0, maxIndexed = 0, maxScanned = 0;
+            for (int i = 1; i <= query.length(); i++) {
+                String typed = query.substring(0, i);
+                start = System.nanoTime();
+                List<LinphoneContact> results = index.search(typed);
+                long time = System.nanoTime() - start;
+                indexed += time;
+                maxIndexed = Math.max(maxIndexed, time);
+
+                start = System.nanoTime();
+                List<LinphoneContact> former = scan(contacts, typed);
+                time = System.nanoTime() - start;
+                scanned += time;
+                maxScanned = Math.max(maxScanned, time);
+
+                // The index finds at least what the name scan finds
+                Assert.assertTrue(typed, results.containsAll(former));
+            }
+            System.out.println("[Contacts Search Benchmark] \"" + query + "\" typed: index avg " + indexed / query.length() / 1000
+                    + " us max " + maxIndexed / 1000 + " us per keystroke, former scan avg " + scanned / query.length() / 1000
+                    + " us max " + maxScanned / 1000 + " us");
+        }
+    }
+
+    private static void type(ContactsSearchIndex index, List<LinphoneContact> contacts) {
+        for (String query : QUERIES) {
+            for (int i = 1; i <= query.length(); i++) {
+                index.search(query.substring(0, i));
+                scan(contacts, query.substring(0, i));
+            }
+        }
+    }
+
+    /**
+     * What ContactsManager.getContacts(String) did before the index.
+     */
+    private static List<LinphoneContact> scan(List<LinphoneContact> contacts, String search) {
+        search = search.toLowerCase(Locale.getDefault());
+        List<LinphoneContact> searchContactsBegin = new ArrayList<>();
+        List<LinphoneContact> searchContactsContain = new ArrayList<>();
+        for (LinphoneContact contact : contacts) {
+            if (contact.getFullName() != null) {
+                if (contact.getFullName().toLowerCase(Locale.getDefault()).startsWith(search)) {
+                    searchContactsBegin.add(contact);
+                } else if (contact.getFullName().toLowerCase(Locale.getDefault()).contains(search)) {
+                    searchContactsContain.add(contact);
+                }
+            }
+        }
+        searchContactsBegin.addAll(searchContactsContain);
+        return searchContactsBegin;
+    }
+}
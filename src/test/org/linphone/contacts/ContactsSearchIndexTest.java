@@ -0,0 +1,109 @@
+package org.linphone.contacts;
+
+/*
+ContactsSearchIndexTest.java
+Copyright (C) 2018  Belledonne Communications, Grenoble, France
+
+This program is free software; you can redistribute it and/or
+modify it under the terms of the GNU General Public License
+as published by the Free Software Foundation; either version 2
+of the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+*/
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ContactsSearchIndexTest {
+    private LinphoneContact mMarc, mAnne, mBob, mEmma, mZoe, mEloise, mPaul;
+    private List<LinphoneContact> mContacts;
+
+    @Before
+    public void setUp() {
+        mMarc = ContactsLookupIndexTest.createContact("Marc Dupont", null, null);
+        mAnne = ContactsLookupIndexTest.createContact("Anne Martin", null, null);
+        mBob = ContactsLookupIndexTest.createContact("Bob", "sip:mat@sip.example.org", null);
+        mEmma = ContactsLookupIndexTest.createContact("Emma", null, null);
+        mZoe = ContactsLookupIndexTest.createContact("Zo\u00e9", null, "06.12.34.56.78");
+        mEloise = ContactsLookupIndexTest.createContact("\u00c9lo\u00efse \u00c7a", null, "+33 6 98 76 54 32");
+        mPaul = ContactsLookupIndexTest.createContact("Paul", null, "(06) 99-88-77-66");
+        // Not in rank order, to check the ranking doesn't depend on it
+        mContacts = Arrays.asList(mEmma, mBob, mAnne, mMarc, mZoe, mEloise, mPaul);
+    }
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("eloise ca", ContactsSearchIndex.normalize("  \u00c9lo\u00efse \u00c7A "));
+        Assert.assertEquals("", ContactsSearchIndex.normalize(null));
+    }
+
+    @Test
+    public void testRanking() {
+        ContactsSearchIndex index = new ContactsSearchIndex(mContacts);
+        // Name starting with the query, then a word of it, then an address, then names containing it
+        Assert.assertEquals(Arrays.asList(mMarc, mAnne, mBob, mEmma), index.search("ma"));
+        Assert.assertEquals(Arrays.asList(mMarc, mAnne, mBob, mEmma), index.search("MA"));
+    }
+
+    @Test
+    public void testAccentsAndSeparators() {
+        ContactsSearchIndex index = new ContactsSearchIndex(mContacts);
+        Assert.assertEquals(Arrays.asList(mEloise), index.search("elo"));
+        Assert.assertEquals(Arrays.asList(mEloise), index.search("\u00c9LO"));
+        Assert.assertEquals(Arrays.asList(mZoe), index.search("zoe"));
+        Assert.assertEquals(Arrays.asList(mZoe, mPaul), index.search("06"));
+        Assert.assertEquals(Arrays.asList(mZoe), index.search("06 12 34"));
+        Assert.assertEquals(Arrays.asList(mEloise), index.search("+336"));
+        Assert.assertEquals(Arrays.asList(mBob), index.search("mat"));
+    }
+
+    @Test
+    public void testEmptyQuery() {
+        ContactsSearchIndex index = new ContactsSearchIndex(mContacts);
+        Assert.assertEquals(mContacts, index.search(""));
+        Assert.assertEquals(mContacts, index.search("  "));
+        Assert.assertEquals(new ArrayList<LinphoneContact>(), index.search("xyz"));
+    }
+
+    /**
+     * Each query typed one character at a time must give what a fresh index gives.
+     */
+    @Test
+    public void testGrowingQuery() {
+        assertGrowing("anne martin");
+        assertGrowing("0612");
+        assertGrowing("+33 6 98");
+        // Nothing compact in the first query, the addresses weren't looked at yet
+        assertGrowing("(06");
+        assertGrowing("-06");
+    }
+
+    @Test
+    public void testShrinkingQuery() {
+        ContactsSearchIndex index = new ContactsSearchIndex(mContacts);
+        index.search("mar");
+        index.search("marc");
+        Assert.assertEquals(Arrays.asList(mMarc, mAnne, mBob, mEmma), index.search("ma"));
+    }
+
+    private void assertGrowing(String query) {
+        ContactsSearchIndex index = new ContactsSearchIndex(mContacts);
+        for (int i = 1; i <= query.length(); i++) {
+            String typed = query.substring(0, i);
+            Assert.assertEquals(typed, new ContactsSearchIndex(mContacts).search(typed), index.search(typed));
+        }
+    }
+}